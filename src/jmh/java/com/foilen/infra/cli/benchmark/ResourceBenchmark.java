@@ -0,0 +1,117 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.foilen.infra.api.model.resource.ResourceDetails;
+import com.foilen.infra.cli.services.InfraResourceUtils;
+import com.foilen.infra.resource.machine.Machine;
+import com.foilen.infra.resource.unixuser.UnixUser;
+import com.foilen.infra.resource.website.Website;
+import com.foilen.smalltools.tools.JsonTools;
+
+/**
+ * The per-resource work done on every resource received from the API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResourceBenchmark {
+
+    private static Map<String, Object> resource(int i, String resourceName) {
+        Map<String, Object> resource = new LinkedHashMap<>();
+        resource.put("internalId", String.valueOf(i));
+        resource.put("resourceName", resourceName);
+        resource.put("meta", Collections.singletonMap("UI_OWNER", "owner" + (i % 10)));
+        return resource;
+    }
+
+    @Param({ "1000" })
+    private int resources;
+
+    private List<ResourceDetails> websites;
+    private List<ResourceDetails> machines;
+    private List<ResourceDetails> unixUsers;
+
+    @Benchmark
+    public void cloneMachine(Blackhole blackhole) {
+        machines.forEach(it -> blackhole.consume(JsonTools.clone(it.getResource(), Machine.class)));
+    }
+
+    @Benchmark
+    public void cloneUnixUser(Blackhole blackhole) {
+        unixUsers.forEach(it -> blackhole.consume(JsonTools.clone(it.getResource(), UnixUser.class)));
+    }
+
+    @Benchmark
+    public void cloneWebsite(Blackhole blackhole) {
+        websites.forEach(it -> blackhole.consume(JsonTools.clone(it.getResource(), Website.class)));
+    }
+
+    @Benchmark
+    public void getOwner(Blackhole blackhole) {
+        websites.forEach(it -> blackhole.consume(InfraResourceUtils.getOwner(it)));
+    }
+
+    @Benchmark
+    public void getResourceId(Blackhole blackhole) {
+        websites.forEach(it -> blackhole.consume(InfraResourceUtils.getResourceId(it)));
+    }
+
+    @Benchmark
+    public void resourceDetailsToResource(Blackhole blackhole) {
+        websites.forEach(it -> blackhole.consume(InfraResourceUtils.resourceDetailsToResource(it, Website.class)));
+    }
+
+    @Setup
+    public void setup() {
+        websites = new ArrayList<>();
+        machines = new ArrayList<>();
+        unixUsers = new ArrayList<>();
+        for (int i = 0; i < resources; ++i) {
+            String domainName = "w" + i + ".example.com";
+            Map<String, Object> website = resource(i, domainName);
+            website.put("name", domainName);
+            website.put("domainNames", Collections.singletonList(domainName));
+            website.put("https", true);
+            websites.add(new ResourceDetails(Website.RESOURCE_TYPE, website));
+
+            String hostname = "m" + i + ".example.com";
+            Map<String, Object> machine = resource(i, hostname);
+            machine.put("name", hostname);
+            machine.put("publicIp", "10.0." + (i / 250) + "." + (i % 250));
+            machines.add(new ResourceDetails(Machine.RESOURCE_TYPE, machine));
+
+            String username = "user" + i;
+            Map<String, Object> unixUser = resource(i, username);
+            unixUser.put("name", username);
+            unixUser.put("id", 70000L + i);
+            unixUser.put("homeFolder", "/home/" + username);
+            unixUsers.add(new ResourceDetails(UnixUser.RESOURCE_TYPE, unixUser));
+        }
+    }
+
+}
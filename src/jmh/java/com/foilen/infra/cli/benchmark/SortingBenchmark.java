@@ -0,0 +1,132 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.foilen.infra.cli.commands.model.RawDnsEntry;
+import com.foilen.infra.cli.commands.model.WebsitesAccessible;
+import com.foilen.smalltools.listscomparator.ListComparatorHandler;
+import com.foilen.smalltools.listscomparator.ListsComparator;
+
+/**
+ * The sorting and diffing done on the lists shown by the commands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SortingBenchmark {
+
+    @Param({ "1000" })
+    private int items;
+
+    private List<String> currentlyInstalledOn;
+    private List<String> applicationInstalledOn;
+    private List<RawDnsEntry> rawDnsEntries;
+    private List<WebsitesAccessible> websitesAccessibles;
+
+    /**
+     * Like in MoveService.moveWebsiteCloser().
+     */
+    @Benchmark
+    public void listsComparator(Blackhole blackhole) {
+        ListsComparator.compareLists(currentlyInstalledOn, applicationInstalledOn, new ListComparatorHandler<String, String>() {
+
+            @Override
+            public void both(String left, String right) {
+                blackhole.consume(left);
+            }
+
+            @Override
+            public void leftOnly(String left) {
+                blackhole.consume(left);
+            }
+
+            @Override
+            public void rightOnly(String right) {
+                blackhole.consume(right);
+            }
+        });
+    }
+
+    /**
+     * Like in DnsCommands.
+     */
+    @Benchmark
+    public List<RawDnsEntry> rawDnsEntriesSortedDistinct() {
+        return rawDnsEntries.stream().sorted().distinct().collect(Collectors.toList());
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+
+        currentlyInstalledOn = new ArrayList<>();
+        applicationInstalledOn = new ArrayList<>();
+        for (int i = 0; i < items; ++i) {
+            String machineName = "m" + i + ".example.com";
+            if (random.nextBoolean()) {
+                currentlyInstalledOn.add(machineName);
+            }
+            if (random.nextBoolean()) {
+                applicationInstalledOn.add(machineName);
+            }
+        }
+        Collections.sort(currentlyInstalledOn);
+        Collections.sort(applicationInstalledOn);
+
+        // With duplicates since the same entries are found from different sub-domains
+        rawDnsEntries = new ArrayList<>();
+        for (int i = 0; i < items; ++i) {
+            int n = random.nextInt(items / 2 + 1);
+            rawDnsEntries.add(new RawDnsEntry() //
+                    .setName("d" + n + ".example.com") //
+                    .setType(n % 3 == 0 ? "MX" : "A") //
+                    .setDetails("10.0.0." + (n % 250)) //
+                    .setPriority(n % 3 == 0 ? 10 : null) //
+                    .setTtl(300));
+        }
+
+        websitesAccessibles = new ArrayList<>();
+        for (int i = 0; i < items; ++i) {
+            WebsitesAccessible websitesAccessible = new WebsitesAccessible("https://w" + i + ".example.com", "w" + i + ".example.com");
+            websitesAccessible.setSuccess(random.nextInt(10) != 0);
+            websitesAccessible.setHttpStatus(websitesAccessible.isSuccess() ? 200 : 502);
+            websitesAccessible.setExecutionTimeMs(random.nextInt(2000));
+            websitesAccessibles.add(websitesAccessible);
+        }
+    }
+
+    /**
+     * Like in CheckServiceImpl.checkWebsitesAccessible().
+     */
+    @Benchmark
+    public List<WebsitesAccessible> websitesAccessibleSort() {
+        List<WebsitesAccessible> sorted = new ArrayList<>(websitesAccessibles);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+}
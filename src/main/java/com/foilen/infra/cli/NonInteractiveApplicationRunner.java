@@ -9,6 +9,7 @@
  */
 package com.foilen.infra.cli;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.core.annotation.Order;
@@ -17,16 +18,22 @@ import org.springframework.shell.Shell;
 import org.springframework.shell.jline.InteractiveShellApplicationRunner;
 import org.springframework.stereotype.Component;
 
+import com.foilen.infra.cli.services.ApiStatsService;
+
 @Component
 @Order(InteractiveShellApplicationRunner.PRECEDENCE - 100)
 public class NonInteractiveApplicationRunner implements ApplicationRunner {
 
     private final Shell shell;
     private final ConfigurableEnvironment environment;
+    private final ApiStatsService apiStatsService;
+    private final boolean dumpApiStats;
 
-    public NonInteractiveApplicationRunner(Shell shell, ConfigurableEnvironment environment) {
+    public NonInteractiveApplicationRunner(Shell shell, ConfigurableEnvironment environment, ApiStatsService apiStatsService, @Value("${infra.api.stats.dumpOnExit:false}") boolean dumpApiStats) {
         this.shell = shell;
         this.environment = environment;
+        this.apiStatsService = apiStatsService;
+        this.dumpApiStats = dumpApiStats;
     }
 
     @Override
@@ -38,6 +45,10 @@ public class NonInteractiveApplicationRunner implements ApplicationRunner {
             if (result != null) {
                 System.out.println(result);
             }
+            if (dumpApiStats && !apiStatsService.isEmpty()) {
+                System.out.println();
+                apiStatsService.getReport().forEach(System.out::println);
+            }
             shell.evaluate(() -> "exit");
         }
     }
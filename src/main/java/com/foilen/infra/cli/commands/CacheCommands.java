@@ -0,0 +1,56 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.commands;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.shell.Availability;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellMethodAvailability;
+
+import com.foilen.infra.cli.model.ResourceGraph;
+import com.foilen.infra.cli.model.profile.ApiProfile;
+import com.foilen.infra.cli.services.ProfileService;
+import com.foilen.infra.cli.services.ResourceGraphCache;
+import com.foilen.smalltools.tools.AbstractBasics;
+
+@ShellComponent
+public class CacheCommands extends AbstractBasics {
+
+    @Autowired
+    private ProfileService profileService;
+    @Autowired
+    private ResourceGraphCache resourceGraphCache;
+
+    @ShellMethod("Reload all the resources of the target profile in the local cache")
+    public void cacheRefresh() {
+
+        ResourceGraph graph = resourceGraphCache.refreshTarget();
+        graph.getResourceTypes().stream().sorted().forEach(resourceType -> {
+            System.out.println(resourceType + ": " + graph.findAllByType(resourceType).size());
+        });
+
+    }
+
+    @ShellMethodAvailability
+    public Availability isAvailable() {
+
+        if (profileService.getTarget() == null) {
+            return Availability.unavailable("you did not specify a target profile");
+        }
+
+        if (profileService.getTarget() instanceof ApiProfile) {
+            return Availability.available();
+        }
+
+        return Availability.unavailable("the target profile is not of API type");
+    }
+
+}
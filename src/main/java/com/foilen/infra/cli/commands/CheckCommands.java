@@ -21,17 +21,19 @@ import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellMethodAvailability;
 import org.springframework.shell.standard.ShellOption;
 
-import com.foilen.infra.api.request.RequestChanges;
+import com.foilen.infra.api.model.resource.ResourceBucket;
 import com.foilen.infra.api.request.RequestResourceSearch;
-import com.foilen.infra.api.response.ResponseResourceAppliedChanges;
 import com.foilen.infra.api.response.ResponseResourceBuckets;
 import com.foilen.infra.api.service.InfraApiService;
 import com.foilen.infra.cli.CliException;
 import com.foilen.infra.cli.commands.exec.model.ProgressionHook;
 import com.foilen.infra.cli.commands.model.WebsitesAccessible;
 import com.foilen.infra.cli.model.profile.ApiProfile;
+import com.foilen.infra.cli.services.ChangeBatchService;
+import com.foilen.infra.cli.services.ChangeBatcher;
 import com.foilen.infra.cli.services.CheckService;
 import com.foilen.infra.cli.services.ExceptionService;
+import com.foilen.infra.cli.services.InfraResourceUtils;
 import com.foilen.infra.cli.services.ProfileService;
 import com.foilen.infra.resource.apachephp.ApachePhp;
 import com.foilen.infra.resource.bind9.Bind9Server;
@@ -52,6 +54,8 @@ import com.foilen.smalltools.tools.JsonTools;
 @ShellComponent
 public class CheckCommands extends AbstractBasics {
 
+    @Autowired
+    private ChangeBatchService changeBatchService;
     @Autowired
     private CheckService checkService;
     @Autowired
@@ -59,12 +63,6 @@ public class CheckCommands extends AbstractBasics {
     @Autowired
     private ProfileService profileService;
 
-    private void apply(InfraApiService infraApiService, RequestChanges requestChanges) {
-        ResponseResourceAppliedChanges resourceAppliedChanges = infraApiService.getInfraResourceApiService().applyChanges(requestChanges);
-        exceptionService.displayResult(resourceAppliedChanges, "Applying refresh");
-        requestChanges.getResourcesToRefresh().clear();
-    }
-
     @ShellMethod("Refresh some resources to ensure the updates were propagated")
     public void checkAllResourcesWellConfigured() {
 
@@ -96,27 +94,25 @@ public class CheckCommands extends AbstractBasics {
             return;
         }
 
-        RequestChanges requestChanges = new RequestChanges();
-
-        resourceBuckets.getItems().stream() //
-                .forEach(resourceBucket -> {
-                    try {
-                        Map<String, Object> resource = (Map<String, Object>) resourceBucket.getResourceDetails().getResource();
-                        String resourceName = (String) resource.get("resourceName");
-                        System.out.println("-> " + resourceName);
-
-                        requestChanges.getResourcesToRefresh().add(resourceBucket.getResourceDetails());
-                        if (requestChanges.getResourcesToRefresh().size() >= 10) {
-                            apply(infraApiService, requestChanges);
-                        }
-
-                    } catch (Throwable e) {
-                        System.out.println("Problem: " + e.getMessage());
-                    }
+        // A batch with an error response is displayed and the next ones are still sent. An exception (e.g. the server not reachable) only stops this type
+        ChangeBatcher<ResourceBucket> batches = changeBatchService.create(infraApiService.getInfraResourceApiService(), "Applying refresh",
+                (changes, resourceBucket) -> changes.getResourcesToRefresh().add(resourceBucket.getResourceDetails()), //
+                InfraResourceUtils::getResourceAndLinkedIds);
+        try {
+            try {
+                resourceBuckets.getItems().forEach(resourceBucket -> {
+                    Map<String, Object> resource = (Map<String, Object>) resourceBucket.getResourceDetails().getResource();
+                    String resourceName = (String) resource.get("resourceName");
+                    System.out.println("-> " + resourceName);
+
+                    batches.add(resourceBucket);
                 });
-
-        if (!requestChanges.getResourcesToRefresh().isEmpty()) {
-            apply(infraApiService, requestChanges);
+            } finally {
+                batches.close();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Could not refresh the resources of type {}", resourceType, e);
+            System.out.println("[ERROR] Could not refresh the resources of type " + resourceType + ": " + e.getMessage());
         }
     }
 
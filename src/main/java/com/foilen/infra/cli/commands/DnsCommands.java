@@ -99,31 +99,34 @@ public class DnsCommands extends AbstractBasics {
         if (!resourceBuckets.isSuccess()) {
             throw new CliException(resourceBuckets.getError());
         }
+        List<String> unsortedTargetDnsEntries = new ArrayList<>();
+        resourceBuckets.getItems().forEach(resourceBucket -> {
+            DnsEntry dnsEntry = JsonTools.clone(resourceBucket.getResourceDetails().getResource(), DnsEntry.class);
+            if (!dnsEntry.getName().endsWith(hostname)) {
+                return;
+            }
 
-        List<String> targetDnsEntries = resourceBuckets.getItems().stream() //
-                .map(resourceBucket -> JsonTools.clone(resourceBucket.getResourceDetails().getResource(), DnsEntry.class)) //
-                .filter(dnsEntry -> dnsEntry.getName().endsWith(hostname)) //
-                .map(dnsEntry -> {
-                    RawDnsEntry rawDnsEntry = new RawDnsEntry() //
-                            .setName(dnsEntry.getName()) //
-                            .setType(dnsEntry.getType().name()) //
-                            .setDetails(dnsEntry.getDetails()) //
-                            .setTtl(300) //
-                    ;
-                    switch (dnsEntry.getType()) {
-                    case MX:
-                        rawDnsEntry.setPriority(dnsEntry.getPriority());
-                        break;
-                    case SRV:
-                        rawDnsEntry.setPriority(dnsEntry.getPriority());
-                        rawDnsEntry.setWeight(dnsEntry.getWeight());
-                        rawDnsEntry.setPort(dnsEntry.getPort());
-                        break;
-                    default:
-                    }
-                    return rawDnsEntry;
-                }) //
-                .map(rawDnsEntry -> asString(rawDnsEntry)) //
+            RawDnsEntry rawDnsEntry = new RawDnsEntry() //
+                    .setName(dnsEntry.getName()) //
+                    .setType(dnsEntry.getType().name()) //
+                    .setDetails(dnsEntry.getDetails()) //
+                    .setTtl(300) //
+            ;
+            switch (dnsEntry.getType()) {
+            case MX:
+                rawDnsEntry.setPriority(dnsEntry.getPriority());
+                break;
+            case SRV:
+                rawDnsEntry.setPriority(dnsEntry.getPriority());
+                rawDnsEntry.setWeight(dnsEntry.getWeight());
+                rawDnsEntry.setPort(dnsEntry.getPort());
+                break;
+            default:
+            }
+            unsortedTargetDnsEntries.add(asString(rawDnsEntry));
+        });
+
+        List<String> targetDnsEntries = unsortedTargetDnsEntries.stream() //
                 .sorted().distinct() //
                 .collect(Collectors.toList());
 
@@ -19,14 +19,14 @@ import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellMethodAvailability;
 
 import com.foilen.infra.api.model.resource.ResourceDetails;
-import com.foilen.infra.api.request.RequestChanges;
 import com.foilen.infra.api.request.RequestResourceSearch;
 import com.foilen.infra.api.request.RequestResourceToUpdate;
-import com.foilen.infra.api.response.ResponseResourceAppliedChanges;
 import com.foilen.infra.api.response.ResponseResourceBuckets;
 import com.foilen.infra.api.service.InfraApiService;
 import com.foilen.infra.api.service.InfraResourceApiService;
 import com.foilen.infra.cli.model.profile.ApiProfile;
+import com.foilen.infra.cli.services.ChangeBatchService;
+import com.foilen.infra.cli.services.ChangeBatcher;
 import com.foilen.infra.cli.services.ExceptionService;
 import com.foilen.infra.cli.services.ProfileService;
 import com.foilen.infra.resource.letsencrypt.plugin.LetsEncryptWebsiteCertificateEditor;
@@ -38,6 +38,8 @@ import com.foilen.smalltools.tools.JsonTools;
 @ShellComponent
 public class LetsEncryptCommands extends AbstractBasics {
 
+    @Autowired
+    private ChangeBatchService changeBatchService;
     @Autowired
     private ExceptionService exceptionService;
     @Autowired
@@ -67,7 +69,8 @@ public class LetsEncryptCommands extends AbstractBasics {
         ResponseResourceBuckets resourceBuckets = infraResourceApiService.resourceFindAllWithDetails(requestResourceSearch);
         exceptionService.displayResultAndThrow(resourceBuckets, "Find the WebsiteCertificate resources");
 
-        RequestChanges changes = new RequestChanges();
+        ChangeBatcher<RequestResourceToUpdate> batches = changeBatchService.create(infraResourceApiService, "Applying update",
+                (changes, resourceToUpdate) -> changes.getResourcesToUpdate().add(resourceToUpdate));
         resourceBuckets.getItems().stream() //
                 .map(resourceBucket -> JsonTools.clone(resourceBucket.getResourceDetails().getResource(), WebsiteCertificate.class)) //
                 .filter(websiteCertificate -> LetsEncryptWebsiteCertificateEditor.EDITOR_NAME.equals(websiteCertificate.getResourceEditorName())) //
@@ -78,21 +81,12 @@ public class LetsEncryptCommands extends AbstractBasics {
                     // Change the end date
                     websiteCertificate.setEnd(DateTools.addDate(Calendar.DAY_OF_YEAR, 1));
                     ResourceDetails resourceDetails = new ResourceDetails(WebsiteCertificate.RESOURCE_TYPE, websiteCertificate);
-                    changes.getResourcesToUpdate().add(new RequestResourceToUpdate(resourceDetails, resourceDetails));
-
-                    // Update in batch of 10
-                    if (changes.getResourcesToUpdate().size() >= 10) {
-                        ResponseResourceAppliedChanges resourceAppliedChanges = infraResourceApiService.applyChanges(changes);
-                        exceptionService.displayResult(resourceAppliedChanges, "Applying update");
-                        changes.getResourcesToUpdate().clear();
-                    }
+
+                    batches.add(new RequestResourceToUpdate(resourceDetails, resourceDetails));
                 });
 
-        // If some pending
-        if (!changes.getResourcesToUpdate().isEmpty()) {
-            ResponseResourceAppliedChanges resourceAppliedChanges = infraResourceApiService.applyChanges(changes);
-            exceptionService.displayResult(resourceAppliedChanges, "Applying update");
-        }
+        // Send the pending ones
+        batches.close();
 
     }
 
@@ -106,7 +100,8 @@ public class LetsEncryptCommands extends AbstractBasics {
         ResponseResourceBuckets resourceBuckets = infraResourceApiService.resourceFindAllWithDetails(requestResourceSearch);
         exceptionService.displayResultAndThrow(resourceBuckets, "Find the WebsiteCertificate resources");
 
-        RequestChanges changes = new RequestChanges();
+        ChangeBatcher<RequestResourceToUpdate> batches = changeBatchService.create(infraResourceApiService, "Applying update",
+                (changes, resourceToUpdate) -> changes.getResourcesToUpdate().add(resourceToUpdate));
         resourceBuckets.getItems().stream() //
                 .map(resourceBucket -> JsonTools.clone(resourceBucket.getResourceDetails().getResource(), WebsiteCertificate.class)) //
                 .filter(websiteCertificate -> LetsEncryptWebsiteCertificateEditor.EDITOR_NAME.equals(websiteCertificate.getResourceEditorName())) //
@@ -119,21 +114,12 @@ public class LetsEncryptCommands extends AbstractBasics {
                     // Change the end date
                     websiteCertificate.setEnd(newEndDate);
                     ResourceDetails resourceDetails = new ResourceDetails(WebsiteCertificate.RESOURCE_TYPE, websiteCertificate);
-                    changes.getResourcesToUpdate().add(new RequestResourceToUpdate(resourceDetails, resourceDetails));
-
-                    // Update in batch of 10
-                    if (changes.getResourcesToUpdate().size() >= 10) {
-                        ResponseResourceAppliedChanges resourceAppliedChanges = infraResourceApiService.applyChanges(changes);
-                        exceptionService.displayResult(resourceAppliedChanges, "Applying update");
-                        changes.getResourcesToUpdate().clear();
-                    }
+
+                    batches.add(new RequestResourceToUpdate(resourceDetails, resourceDetails));
                 });
 
-        // If some pending
-        if (!changes.getResourcesToUpdate().isEmpty()) {
-            ResponseResourceAppliedChanges resourceAppliedChanges = infraResourceApiService.applyChanges(changes);
-            exceptionService.displayResult(resourceAppliedChanges, "Applying update");
-        }
+        // Send the pending ones
+        batches.close();
 
     }
 
@@ -24,12 +24,11 @@ import org.springframework.shell.standard.ShellMethodAvailability;
 import com.foilen.infra.api.model.resource.PartialLinkDetails;
 import com.foilen.infra.api.model.resource.ResourceBucket;
 import com.foilen.infra.api.model.resource.ResourceDetails;
-import com.foilen.infra.api.request.RequestResourceSearch;
-import com.foilen.infra.api.response.ResponseResourceBucket;
-import com.foilen.infra.api.service.InfraApiService;
 import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.ResourceGraph;
 import com.foilen.infra.cli.services.InfraResourceUtils;
 import com.foilen.infra.cli.services.ProfileService;
+import com.foilen.infra.cli.services.ResourceGraphCache;
 import com.foilen.infra.plugin.v1.model.resource.LinkTypeConstants;
 import com.foilen.infra.resource.machine.Machine;
 import com.foilen.smalltools.tools.AbstractBasics;
@@ -42,6 +41,8 @@ public class MachineCommands extends AbstractBasics {
 
     @Autowired
     private ProfileService profileService;
+    @Autowired
+    private ResourceGraphCache resourceGraphCache;
 
     @ShellMethodAvailability
     public Availability isAvailable() {
@@ -59,18 +60,14 @@ public class MachineCommands extends AbstractBasics {
     ) {
 
         // Get the machine
-        InfraApiService infraApiService = profileService.getTargetInfraApiService();
-        RequestResourceSearch search = new RequestResourceSearch().setResourceType(Machine.RESOURCE_TYPE);
-        search.getProperties().put(Machine.PROPERTY_NAME, hostname);
+        ResourceGraph graph = resourceGraphCache.getTarget();
         logger.info("Getting machine {}", hostname);
-        ResponseResourceBucket responseResourceBucket = infraApiService.getInfraResourceApiService().resourceFindOne(search);
-
-        if (!responseResourceBucket.isSuccess()) {
-            throw new CliException(responseResourceBucket.getError());
+        ResourceBucket resourceBucket = graph.findOneByName(Machine.RESOURCE_TYPE, hostname);
+        if (resourceBucket == null) {
+            throw new CliException("Could not find the machine " + hostname);
         }
 
         // List what is installed
-        ResourceBucket resourceBucket = responseResourceBucket.getItem();
         Map<String, List<String>> resourcesByUnixUserName = new HashMap<>();
 
         resourceBucket.getLinksFrom().stream() //
@@ -78,19 +75,18 @@ public class MachineCommands extends AbstractBasics {
                 .map(link -> {
                     // Get the unix user if any
                     String linkedFromResourceId = InfraResourceUtils.getResourceId(link.getOtherResource());
-                    logger.info("Getting resource {}", linkedFromResourceId);
-                    ResponseResourceBucket resourceOnMachine = infraApiService.getInfraResourceApiService().resourceFindById(linkedFromResourceId);
-                    if (!resourceOnMachine.isSuccess()) {
-                        throw new CliException(responseResourceBucket.getError());
+                    ResourceBucket resourceOnMachine = graph.findById(linkedFromResourceId);
+                    if (resourceOnMachine == null) {
+                        throw new CliException("Could not find the resource " + linkedFromResourceId);
                     }
-                    Optional<PartialLinkDetails> unixUser = resourceOnMachine.getItem().getLinksTo().stream() //
+                    Optional<PartialLinkDetails> unixUser = resourceOnMachine.getLinksTo().stream() //
                             .filter(unixUserLink -> StringTools.safeEquals(LinkTypeConstants.RUN_AS, unixUserLink.getLinkType())) //
                             .findAny();
                     String unixUserName = "N/A";
                     if (unixUser.isPresent()) {
                         unixUserName = InfraResourceUtils.getResourceName(unixUser.get().getOtherResource());
                     }
-                    return new Tuple2<>(resourceOnMachine.getItem(), unixUserName);
+                    return new Tuple2<>(resourceOnMachine, unixUserName);
                 }) //
                 .forEach(resourceAndUnixUser -> {
                     ResourceDetails otherResource = resourceAndUnixUser.getA().getResourceDetails();
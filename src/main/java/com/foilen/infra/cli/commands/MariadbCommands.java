@@ -22,17 +22,19 @@ import org.springframework.shell.standard.ShellOption;
 
 import com.foilen.infra.api.model.resource.ResourceBucket;
 import com.foilen.infra.api.model.resource.ResourceDetails;
-import com.foilen.infra.api.request.RequestChanges;
 import com.foilen.infra.api.request.RequestResourceSearch;
 import com.foilen.infra.api.request.RequestResourceToUpdate;
-import com.foilen.infra.api.response.ResponseResourceAppliedChanges;
 import com.foilen.infra.api.response.ResponseResourceBuckets;
 import com.foilen.infra.api.service.InfraApiService;
 import com.foilen.infra.api.service.InfraResourceApiService;
-import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.ResourceGraph;
 import com.foilen.infra.cli.model.profile.ApiProfile;
+import com.foilen.infra.cli.services.ChangeBatchService;
+import com.foilen.infra.cli.services.ChangeBatcher;
 import com.foilen.infra.cli.services.ExceptionService;
 import com.foilen.infra.cli.services.ProfileService;
+import com.foilen.infra.cli.services.ResourceGraphCache;
+import com.foilen.infra.cli.services.ResourceProjections;
 import com.foilen.infra.plugin.v1.model.resource.LinkTypeConstants;
 import com.foilen.infra.resource.machine.Machine;
 import com.foilen.infra.resource.mariadb.MariaDBServer;
@@ -44,10 +46,14 @@ import com.foilen.smalltools.tuple.Tuple2;
 @ShellComponent
 public class MariadbCommands extends AbstractBasics {
 
+    @Autowired
+    private ChangeBatchService changeBatchService;
     @Autowired
     private ExceptionService exceptionService;
     @Autowired
     private ProfileService profileService;
+    @Autowired
+    private ResourceGraphCache resourceGraphCache;
 
     @ShellMethodAvailability
     public Availability isAvailable() {
@@ -67,14 +73,12 @@ public class MariadbCommands extends AbstractBasics {
     public void mariadbListServer() {
 
         // Get the list of applications
-        InfraApiService infraApiService = profileService.getTargetInfraApiService();
-        ResponseResourceBuckets resourceBuckets = infraApiService.getInfraResourceApiService().resourceFindAllWithDetails(new RequestResourceSearch().setResourceType(MariaDBServer.RESOURCE_TYPE));
-        if (!resourceBuckets.isSuccess()) {
-            throw new CliException(resourceBuckets.getError());
-        }
+        ResourceGraph graph = resourceGraphCache.getTarget();
+        List<ResourceBucket> resourceBuckets = graph.findAllByType(MariaDBServer.RESOURCE_TYPE);
+        ResourceProjections projections = graph.getProjections();
 
-        resourceBuckets.getItems().stream() //
-                .map(resourceBucket -> new Tuple2<>(resourceBucket, JsonTools.clone(resourceBucket.getResourceDetails().getResource(), MariaDBServer.class))) //
+        resourceBuckets.stream() //
+                .map(resourceBucket -> new Tuple2<>(resourceBucket, projections.get(resourceBucket.getResourceDetails(), MariaDBServer.class))) //
                 .sorted((a, b) -> a.getB().getName().compareTo(b.getB().getName())) //
                 .forEach(t -> {
                     MariaDBServer mariaDBServer = t.getB();
@@ -85,7 +89,7 @@ public class MariadbCommands extends AbstractBasics {
                             .filter(it -> LinkTypeConstants.INSTALLED_ON.equals(it.getLinkType())) //
                             .map(it -> it.getOtherResource()) //
                             .filter(it -> "Machine".equals(it.getResourceType())) //
-                            .map(it -> JsonTools.clone(it.getResource(), Machine.class)) //
+                            .map(it -> projections.get(it, Machine.class)) //
                             .sorted((a, b) -> a.getName().compareTo(b.getName())) //
                             .forEach(machine -> {
                                 System.out.println("\tMachine: " + machine.getName());
@@ -98,15 +102,13 @@ public class MariadbCommands extends AbstractBasics {
     public void mariadbListServerByVersion() {
 
         // Get the list of MariaDB applications
-        InfraApiService infraApiService = profileService.getTargetInfraApiService();
-        ResponseResourceBuckets resourceBuckets = infraApiService.getInfraResourceApiService().resourceFindAllWithDetails(new RequestResourceSearch().setResourceType(MariaDBServer.RESOURCE_TYPE));
-        if (!resourceBuckets.isSuccess()) {
-            throw new CliException(resourceBuckets.getError());
-        }
+        ResourceGraph graph = resourceGraphCache.getTarget();
+        List<ResourceBucket> resourceBuckets = graph.findAllByType(MariaDBServer.RESOURCE_TYPE);
+        ResourceProjections projections = graph.getProjections();
 
-        Map<String, List<ResourceBucket>> serversByVersion = resourceBuckets.getItems().stream() //
+        Map<String, List<ResourceBucket>> serversByVersion = resourceBuckets.stream() //
                 .collect(Collectors.groupingBy(resourceBucket -> {
-                    MariaDBServer mariaDBServer = JsonTools.clone(resourceBucket.getResourceDetails().getResource(), MariaDBServer.class);
+                    MariaDBServer mariaDBServer = projections.get(resourceBucket.getResourceDetails(), MariaDBServer.class);
                     return mariaDBServer.getVersion();
                 }));
 
@@ -116,7 +118,7 @@ public class MariadbCommands extends AbstractBasics {
                     String version = e.getKey();
                     System.out.println("---[ " + version + " ]---");
                     e.getValue().stream() //
-                            .map(resourceBucket -> new Tuple2<>(resourceBucket, JsonTools.clone(resourceBucket.getResourceDetails().getResource(), MariaDBServer.class))) //
+                            .map(resourceBucket -> new Tuple2<>(resourceBucket, projections.get(resourceBucket.getResourceDetails(), MariaDBServer.class))) //
                             .sorted((a, b) -> a.getB().getName().compareTo(b.getB().getName())) //
                             .forEach(t -> {
                                 MariaDBServer mariaDBServer = t.getB();
@@ -127,7 +129,7 @@ public class MariadbCommands extends AbstractBasics {
                                         .filter(it -> LinkTypeConstants.INSTALLED_ON.equals(it.getLinkType())) //
                                         .map(it -> it.getOtherResource()) //
                                         .filter(it -> "Machine".equals(it.getResourceType())) //
-                                        .map(it -> JsonTools.clone(it.getResource(), Machine.class)) //
+                                        .map(it -> projections.get(it, Machine.class)) //
                                         .sorted((a, b) -> a.getName().compareTo(b.getName())) //
                                         .forEach(machine -> {
                                             System.out.println("\t\tMachine: " + machine.getName());
@@ -156,7 +158,8 @@ public class MariadbCommands extends AbstractBasics {
         ResponseResourceBuckets resourceBuckets = infraResourceApiService.resourceFindAllWithDetails(requestResourceSearch);
         exceptionService.displayResultAndThrow(resourceBuckets, "Find the resources with MariaDB version " + fromVersion);
 
-        RequestChanges changes = new RequestChanges();
+        ChangeBatcher<RequestResourceToUpdate> batches = changeBatchService.create(infraResourceApiService, "Applying update",
+                (changes, resourceToUpdate) -> changes.getResourcesToUpdate().add(resourceToUpdate));
         resourceBuckets.getItems().stream() //
                 .map(resourceBucket -> JsonTools.clone(resourceBucket.getResourceDetails().getResource(), MariaDBServer.class)) //
                 .filter(mariaDBServer -> StringTools.safeEquals(fromVersion, mariaDBServer.getVersion())) // TODO Remove when can search directly
@@ -167,21 +170,12 @@ public class MariadbCommands extends AbstractBasics {
                     // Change the version
                     mariaDBServer.setVersion(toVersion);
                     ResourceDetails resourceDetails = new ResourceDetails(MariaDBServer.RESOURCE_TYPE, mariaDBServer);
-                    changes.getResourcesToUpdate().add(new RequestResourceToUpdate(resourceDetails, resourceDetails));
-
-                    // Update in batch of 10
-                    if (changes.getResourcesToUpdate().size() >= 10) {
-                        ResponseResourceAppliedChanges resourceAppliedChanges = infraResourceApiService.applyChanges(changes);
-                        exceptionService.displayResult(resourceAppliedChanges, "Applying update");
-                        changes.getResourcesToUpdate().clear();
-                    }
+
+                    batches.add(new RequestResourceToUpdate(resourceDetails, resourceDetails));
                 });
 
-        // If some pending
-        if (!changes.getResourcesToUpdate().isEmpty()) {
-            ResponseResourceAppliedChanges resourceAppliedChanges = infraResourceApiService.applyChanges(changes);
-            exceptionService.displayResult(resourceAppliedChanges, "Applying update");
-        }
+        // Send the pending ones
+        batches.close();
 
     }
 
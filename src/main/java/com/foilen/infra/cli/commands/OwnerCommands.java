@@ -32,7 +32,6 @@ import com.foilen.infra.api.model.permission.ResourceAction;
 import com.foilen.infra.api.model.permission.RoleEditForm;
 import com.foilen.infra.api.model.resource.ResourceBucketsWithPagination;
 import com.foilen.infra.api.model.resource.ResourceDetails;
-import com.foilen.infra.api.request.RequestChanges;
 import com.foilen.infra.api.request.RequestResourceSearch;
 import com.foilen.infra.api.request.RequestResourceToUpdate;
 import com.foilen.infra.api.response.ResponseResourceBucket;
@@ -42,10 +41,17 @@ import com.foilen.infra.api.service.InfraApiService;
 import com.foilen.infra.api.service.InfraResourceApiService;
 import com.foilen.infra.api.service.InfraRoleApiService;
 import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.ResourceGraph;
 import com.foilen.infra.cli.model.profile.ApiProfile;
+import com.foilen.infra.cli.services.ChangeBatchService;
+import com.foilen.infra.cli.services.ChangeBatcher;
 import com.foilen.infra.cli.services.ExceptionService;
+import com.foilen.infra.cli.services.ExecutionService;
 import com.foilen.infra.cli.services.InfraResourceUtils;
 import com.foilen.infra.cli.services.ProfileService;
+import com.foilen.infra.cli.services.ResourceGraphCache;
+import com.foilen.infra.cli.services.ResourcePagesIterator;
+import com.foilen.infra.cli.services.StreamingWorkers;
 import com.foilen.infra.plugin.v1.model.resource.LinkTypeConstants;
 import com.foilen.infra.resource.application.Application;
 import com.foilen.smalltools.restapi.model.FormResult;
@@ -54,10 +60,18 @@ import com.google.common.base.Strings;
 @ShellComponent
 public class OwnerCommands extends AbstractBasics {
 
+    private static final int DETAILS_MAX_PENDING = 100;
+
+    @Autowired
+    private ChangeBatchService changeBatchService;
     @Autowired
     private ExceptionService exceptionService;
     @Autowired
+    private ExecutionService executionService;
+    @Autowired
     private ProfileService profileService;
+    @Autowired
+    private ResourceGraphCache resourceGraphCache;
 
     @ShellMethodAvailability
     public Availability isAvailable() {
@@ -83,62 +97,38 @@ public class OwnerCommands extends AbstractBasics {
         InfraApiService infraApiService = profileService.getTargetInfraApiService();
         InfraResourceApiService infraResourceApiService = infraApiService.getInfraResourceApiService();
 
-        // Find all
-        ExecutorService executorService = Executors.newFixedThreadPool(10, ThreadTools.daemonThreadFactory());
-        Queue<ResourceDetails> resourceDetailsToUpdate = new ConcurrentLinkedQueue<>();
-        Queue<Future<?>> futures = new ConcurrentLinkedQueue<>();
-        int page = 1;
-        while (true) {
+        // Find all the ids first since changing the owner while going through the pages would move the resources out of them
+        List<String> resourceIds = new ArrayList<>();
+        new ResourcePagesIterator(executionService.getBackground(), page -> {
             ResourceBucketsWithPagination result = infraResourceApiService.resourceFindAll(page, fromOwner, false);
             exceptionService.displayResultAndThrow(result, "Get page " + page);
-            ++page;
-
-            // Check owner
-            result.getItems().forEach(partialResourceBucket -> {
-                ResourceDetails partialResourceDetails = partialResourceBucket.getResourceDetails();
-                String owner = InfraResourceUtils.getOwner(partialResourceDetails);
-                if (StringTools.safeEquals(owner, fromOwner)) {
-
-                    futures.add(executorService.submit(() -> {
-
-                        String resourceId = partialResourceDetails.getResourceId();
-                        ResponseResourceBucket responseResourceBucket = infraResourceApiService.resourceFindById(resourceId);
-                        exceptionService.displayResultAndThrow(responseResourceBucket, "Retrieve all the details of " + resourceId);
-
-                        ResourceDetails resourceDetails = responseResourceBucket.getItem().getResourceDetails();
-                        InfraResourceUtils.setOwner(resourceDetails, toOwner);
-                        resourceDetailsToUpdate.add(resourceDetails);
-
-                    }));
-
-                }
-            });
-
-            // Stop if at the end
-            if (result.getPagination().isLastPage()) {
-                break;
-            }
-        }
-
-        // Wait for all tasks to be processed
-        futures.forEach(f -> {
-            try {
-                f.get();
-            } catch (InterruptedException | ExecutionException e) {
-                throw new CliException("", e);
+            return result;
+        }).forEachRemaining(partialResourceBucket -> {
+            ResourceDetails partialResourceDetails = partialResourceBucket.getResourceDetails();
+            String owner = InfraResourceUtils.getOwner(partialResourceDetails);
+            if (StringTools.safeEquals(owner, fromOwner)) {
+                resourceIds.add(partialResourceDetails.getResourceId());
             }
         });
 
         // Update the resources if any
-        if (!resourceDetailsToUpdate.isEmpty()) {
-            System.out.println("Request the update of " + resourceDetailsToUpdate.size() + " resources in batches of 10");
-            BufferBatchesTools<ResourceDetails> batches = new BufferBatchesTools<>(10, resourcesInTheBatch -> {
-                RequestChanges changes = new RequestChanges();
-                resourcesInTheBatch.forEach(rdtu -> changes.getResourcesToUpdate().add(new RequestResourceToUpdate(rdtu, rdtu)));
-                exceptionService.displayResult(infraResourceApiService.applyChanges(changes), "Applying update");
-            });
-            batches.add(resourceDetailsToUpdate.stream().collect(Collectors.toList()));
-            batches.close();
+        if (!resourceIds.isEmpty()) {
+            System.out.println("Request the update of " + resourceIds.size() + " resources");
+            ChangeBatcher<ResourceBucket> batches = changeBatchService.create(infraResourceApiService, "Applying update",
+                    (changes, resourceBucket) -> changes.getResourcesToUpdate().add(new RequestResourceToUpdate(resourceBucket.getResourceDetails(), resourceBucket.getResourceDetails())), //
+                    InfraResourceUtils::getResourceAndLinkedIds);
+            try {
+                StreamingWorkers.process(resourceIds.iterator(), executionService.getApi(), DETAILS_MAX_PENDING, resourceId -> {
+                    ResponseResourceBucket responseResourceBucket = infraResourceApiService.resourceFindById(resourceId);
+                    exceptionService.displayResultAndThrow(responseResourceBucket, "Retrieve all the details of " + resourceId);
+
+                    ResourceBucket resourceBucket = responseResourceBucket.getItem();
+                    InfraResourceUtils.setOwner(resourceBucket.getResourceDetails(), toOwner);
+                    return resourceBucket;
+                }, batches::add);
+            } finally {
+                batches.close();
+            }
         }
 
     }
@@ -163,44 +153,43 @@ public class OwnerCommands extends AbstractBasics {
         exceptionService.displayResultAndThrow(allTypes, "Get all types");
 
         // Get all the matching resources
-        Queue<ResourceDetails> resourceDetailsToUpdate = new ConcurrentLinkedQueue<>();
+        Queue<ResourceBucket> resourceBucketsToUpdate = new ConcurrentLinkedQueue<>();
         Queue<Future<?>> futures = new ConcurrentLinkedQueue<>();
-        ExecutorService executorService = Executors.newFixedThreadPool(5, ThreadTools.daemonThreadFactory());
+        ExecutorService executorService = executionService.getApi();
         allTypes.getItems().forEach(type -> {
             futures.add(executorService.submit(() -> {
 
                 String resourceType = type.getResourceType();
                 ResponseResourceBuckets resourceBuckets = infraResourceApiService.resourceFindAllWithDetails(new RequestResourceSearch().setResourceType(resourceType));
                 exceptionService.displayResultAndThrow(resourceBuckets, "Get the matching resources of type " + resourceType);
-                resourceBuckets.getItems().stream() //
-                        .map(rB -> rB.getResourceDetails()) //
-                        .filter(resourceDetails -> {
-                            String resourceName = (String) ((Map<String, Object>) resourceDetails.getResource()).get("resourceName");
-                            if (resourceName == null) {
-                                return false;
-                            }
-                            boolean matches = nameStartsWith == null || resourceName.startsWith(nameStartsWith);
-                            matches &= nameContains == null || resourceName.contains(nameContains);
-                            matches &= nameEndsWith == null || resourceName.endsWith(nameEndsWith);
-                            return matches;
-                        }) //
-                        .forEach(resourceDetails -> {
-                            Map<String, Object> detailedResource = ((Map<String, Object>) resourceDetails.getResource());
-                            String resourceId = (String) detailedResource.get("internalId");
-                            System.out.println("\t" + detailedResource.get("resourceName") + " (" + resourceId + ")");
-
-                            // Check the owner
-                            Map<String, String> meta = (Map<String, String>) detailedResource.get("meta");
-                            String currentOwner = meta.get("UI_OWNER");
-                            if (StringTools.safeEquals(currentOwner, owner)) {
-                                System.out.println("\t\t[SKIP] Owner is already " + owner);
-                            } else {
-                                System.out.println("\t\t[CHANGE] Change owner " + currentOwner + " -> " + owner);
-                                meta.put("UI_OWNER", owner);
-                                resourceDetailsToUpdate.add(resourceDetails);
-                            }
-                        });
-                ;
+                resourceBuckets.getItems().forEach(resourceBucket -> {
+                    ResourceDetails resourceDetails = resourceBucket.getResourceDetails();
+                    Map<String, Object> detailedResource = ((Map<String, Object>) resourceDetails.getResource());
+                    String resourceName = (String) detailedResource.get("resourceName");
+                    if (resourceName == null) {
+                        return;
+                    }
+                    boolean matches = nameStartsWith == null || resourceName.startsWith(nameStartsWith);
+                    matches &= nameContains == null || resourceName.contains(nameContains);
+                    matches &= nameEndsWith == null || resourceName.endsWith(nameEndsWith);
+                    if (!matches) {
+                        return;
+                    }
+
+                    String resourceId = (String) detailedResource.get("internalId");
+                    System.out.println("\t" + resourceName + " (" + resourceId + ")");
+
+                    // Check the owner
+                    Map<String, String> meta = (Map<String, String>) detailedResource.get("meta");
+                    String currentOwner = meta.get("UI_OWNER");
+                    if (StringTools.safeEquals(currentOwner, owner)) {
+                        System.out.println("\t\t[SKIP] Owner is already " + owner);
+                    } else {
+                        System.out.println("\t\t[CHANGE] Change owner " + currentOwner + " -> " + owner);
+                        meta.put("UI_OWNER", owner);
+                        resourceBucketsToUpdate.add(resourceBucket);
+                    }
+                });
             }));
         });
 
@@ -214,15 +203,16 @@ public class OwnerCommands extends AbstractBasics {
         });
 
         // Update the resources if any
-        if (!resourceDetailsToUpdate.isEmpty()) {
-            System.out.println("Request the update of " + resourceDetailsToUpdate.size() + " resources in batches of 10");
-            BufferBatchesTools<ResourceDetails> batches = new BufferBatchesTools<>(10, resourcesInTheBatch -> {
-                RequestChanges changes = new RequestChanges();
-                resourcesInTheBatch.forEach(rdtu -> changes.getResourcesToUpdate().add(new RequestResourceToUpdate(rdtu, rdtu)));
-                exceptionService.displayResult(infraResourceApiService.applyChanges(changes), "Applying update");
-            });
-            batches.add(resourceDetailsToUpdate.stream().collect(Collectors.toList()));
-            batches.close();
+        if (!resourceBucketsToUpdate.isEmpty()) {
+            System.out.println("Request the update of " + resourceBucketsToUpdate.size() + " resources");
+            ChangeBatcher<ResourceBucket> batches = changeBatchService.create(infraResourceApiService, "Applying update",
+                    (changes, resourceBucket) -> changes.getResourcesToUpdate().add(new RequestResourceToUpdate(resourceBucket.getResourceDetails(), resourceBucket.getResourceDetails())), //
+                    InfraResourceUtils::getResourceAndLinkedIds);
+            try {
+                batches.addAll(resourceBucketsToUpdate);
+            } finally {
+                batches.close();
+            }
         }
 
     }
@@ -274,14 +264,15 @@ public class OwnerCommands extends AbstractBasics {
         InfraResourceApiService infraResourceApiService = infraApiService.getInfraResourceApiService();
 
         // Get all the applications
-        Queue<ResourceDetails> resourceDetailsToUpdate = new ConcurrentLinkedQueue<>();
+        Queue<ResourceBucket> resourceBucketsToUpdate = new ConcurrentLinkedQueue<>();
         Queue<Future<?>> futures = new ConcurrentLinkedQueue<>();
 
         System.out.println("Get all applications");
         ResponseResourceBuckets applicationsBuckets = infraResourceApiService.resourceFindAllWithDetails(new RequestResourceSearch().setResourceType(Application.RESOURCE_TYPE));
         exceptionService.displayResultAndThrow(applicationsBuckets, "Get the applications");
         System.out.println("Applications without owners");
-        ExecutorService executorService = Executors.newFixedThreadPool(5, ThreadTools.daemonThreadFactory());
+        ResourceGraph graph = resourceGraphCache.getTarget();
+        ExecutorService executorService = executionService.getCpu();
         applicationsBuckets.getItems().forEach(applicationBucket -> {
 
             ResourceDetails resourceDetails = applicationBucket.getResourceDetails();
@@ -311,15 +302,17 @@ public class OwnerCommands extends AbstractBasics {
 
                 for (ResourceDetails applicationManagedBy : applicationManagedBys) {
                     String managedByResourceId = InfraResourceUtils.getResourceId(applicationManagedBy);
-                    ResponseResourceBucket managedByResponseResourceBucket = infraResourceApiService.resourceFindById(managedByResourceId);
-                    exceptionService.displayResultAndThrow(managedByResponseResourceBucket, "Get the resource " + managedByResourceId);
+                    ResourceBucket managedByResourceBucket = graph.findById(managedByResourceId);
+                    if (managedByResourceBucket == null) {
+                        throw new CliException("Could not find the resource " + managedByResourceId);
+                    }
 
-                    String managedByResourceOwner = InfraResourceUtils.getOwner(managedByResponseResourceBucket.getItem().getResourceDetails());
+                    String managedByResourceOwner = InfraResourceUtils.getOwner(managedByResourceBucket.getResourceDetails());
                     if (!Strings.isNullOrEmpty(managedByResourceOwner)) {
                         System.out.println(resourceName + " will set owner " + managedByResourceOwner);
                         Map<String, String> meta = (Map<String, String>) detailedResource.get("meta");
                         meta.put("UI_OWNER", managedByResourceOwner);
-                        resourceDetailsToUpdate.add(resourceDetails);
+                        resourceBucketsToUpdate.add(applicationBucket);
                         System.out.println();
                         break;
                     }
@@ -339,15 +332,16 @@ public class OwnerCommands extends AbstractBasics {
         });
 
         // Update the resources if any
-        if (!resourceDetailsToUpdate.isEmpty()) {
-            System.out.println("Request the update of " + resourceDetailsToUpdate.size() + " resources in batches of 10");
-            BufferBatchesTools<ResourceDetails> batches = new BufferBatchesTools<>(10, resourcesInTheBatch -> {
-                RequestChanges changes = new RequestChanges();
-                resourcesInTheBatch.forEach(rdtu -> changes.getResourcesToUpdate().add(new RequestResourceToUpdate(rdtu, rdtu)));
-                exceptionService.displayResult(infraResourceApiService.applyChanges(changes), "Applying update");
-            });
-            batches.add(resourceDetailsToUpdate.stream().collect(Collectors.toList()));
-            batches.close();
+        if (!resourceBucketsToUpdate.isEmpty()) {
+            System.out.println("Request the update of " + resourceBucketsToUpdate.size() + " resources");
+            ChangeBatcher<ResourceBucket> batches = changeBatchService.create(infraResourceApiService, "Applying update",
+                    (changes, resourceBucket) -> changes.getResourcesToUpdate().add(new RequestResourceToUpdate(resourceBucket.getResourceDetails(), resourceBucket.getResourceDetails())), //
+                    InfraResourceUtils::getResourceAndLinkedIds);
+            try {
+                batches.addAll(resourceBucketsToUpdate);
+            } finally {
+                batches.close();
+            }
         }
 
     }
@@ -364,48 +358,24 @@ public class OwnerCommands extends AbstractBasics {
             InfraResourceApiService infraResourceApiService = infraApiService.getInfraResourceApiService();
 
             // Find all
-            Map<String, ResourceBucket> resourceBucketById = new ConcurrentHashMap<>();
-            ExecutorService executorService = Executors.newFixedThreadPool(10, ThreadTools.daemonThreadFactory());
-            Queue<Future<?>> futures = new ConcurrentLinkedQueue<>();
-            int page = 1;
-            while (true) {
+            Map<String, ResourceBucket> resourceBucketById = new HashMap<>();
+            Iterator<ResourceBucket> partialResourceBuckets = new ResourcePagesIterator(executionService.getBackground(), page -> {
                 ResourceBucketsWithPagination result = infraResourceApiService.resourceFindAll(page, owner, true);
                 exceptionService.displayResultAndThrow(result, "Get page " + page);
-                ++page;
-
-                // Go through all
-                result.getItems().forEach(partialResourceBucket -> {
-                    ResourceDetails partialResourceDetails = partialResourceBucket.getResourceDetails();
-                    String resourceOwner = InfraResourceUtils.getOwner(partialResourceDetails);
-                    if (StringTools.safeEquals(resourceOwner, owner)) {
-
-                        futures.add(executorService.submit(() -> {
-
-                            String resourceId = partialResourceDetails.getResourceId();
-                            ResponseResourceBucket responseResourceBucket = infraResourceApiService.resourceFindById(resourceId);
-                            exceptionService.displayResultAndThrow(responseResourceBucket, "Retrieve all the details of " + resourceId);
-
-                            ResourceBucket resourceBucket = responseResourceBucket.getItem();
-                            resourceBucketById.put(resourceBucket.getResourceDetails().getResourceId(), resourceBucket);
-                        }));
-
-                    }
-                });
-
-                // Stop if at the end
-                if (result.getPagination().isLastPage()) {
-                    break;
+                return result;
+            });
+            StreamingWorkers.process(partialResourceBuckets, executionService.getApi(), DETAILS_MAX_PENDING, partialResourceBucket -> {
+                ResourceDetails partialResourceDetails = partialResourceBucket.getResourceDetails();
+                String resourceOwner = InfraResourceUtils.getOwner(partialResourceDetails);
+                if (!StringTools.safeEquals(resourceOwner, owner)) {
+                    return null;
                 }
-            }
 
-            // Wait for all tasks to be processed
-            futures.forEach(f -> {
-                try {
-                    f.get();
-                } catch (InterruptedException | ExecutionException e) {
-                    throw new CliException("", e);
-                }
-            });
+                String resourceId = partialResourceDetails.getResourceId();
+                ResponseResourceBucket responseResourceBucket = infraResourceApiService.resourceFindById(resourceId);
+                exceptionService.displayResultAndThrow(responseResourceBucket, "Retrieve all the details of " + resourceId);
+                return responseResourceBucket.getItem();
+            }, resourceBucket -> resourceBucketById.put(resourceBucket.getResourceDetails().getResourceId(), resourceBucket));
 
             // List roots
             resourceBucketById.values().stream()
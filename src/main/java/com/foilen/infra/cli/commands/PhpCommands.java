@@ -22,17 +22,19 @@ import org.springframework.shell.standard.ShellOption;
 
 import com.foilen.infra.api.model.resource.ResourceBucket;
 import com.foilen.infra.api.model.resource.ResourceDetails;
-import com.foilen.infra.api.request.RequestChanges;
 import com.foilen.infra.api.request.RequestResourceSearch;
 import com.foilen.infra.api.request.RequestResourceToUpdate;
-import com.foilen.infra.api.response.ResponseResourceAppliedChanges;
 import com.foilen.infra.api.response.ResponseResourceBuckets;
 import com.foilen.infra.api.service.InfraApiService;
 import com.foilen.infra.api.service.InfraResourceApiService;
-import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.ResourceGraph;
 import com.foilen.infra.cli.model.profile.ApiProfile;
+import com.foilen.infra.cli.services.ChangeBatchService;
+import com.foilen.infra.cli.services.ChangeBatcher;
 import com.foilen.infra.cli.services.ExceptionService;
 import com.foilen.infra.cli.services.ProfileService;
+import com.foilen.infra.cli.services.ResourceGraphCache;
+import com.foilen.infra.cli.services.ResourceProjections;
 import com.foilen.infra.plugin.v1.model.resource.LinkTypeConstants;
 import com.foilen.infra.resource.apachephp.ApachePhp;
 import com.foilen.infra.resource.machine.Machine;
@@ -44,10 +46,14 @@ import com.foilen.smalltools.tools.StringTools;
 @ShellComponent
 public class PhpCommands extends AbstractBasics {
 
+    @Autowired
+    private ChangeBatchService changeBatchService;
     @Autowired
     private ExceptionService exceptionService;
     @Autowired
     private ProfileService profileService;
+    @Autowired
+    private ResourceGraphCache resourceGraphCache;
 
     @ShellMethodAvailability
     public Availability isAvailable() {
@@ -67,14 +73,12 @@ public class PhpCommands extends AbstractBasics {
     public void phpListApplication() {
 
         // Get the list of PHP applications
-        InfraApiService infraApiService = profileService.getTargetInfraApiService();
-        ResponseResourceBuckets resourceBuckets = infraApiService.getInfraResourceApiService().resourceFindAllWithDetails(new RequestResourceSearch().setResourceType(ApachePhp.RESOURCE_TYPE));
-        if (!resourceBuckets.isSuccess()) {
-            throw new CliException(resourceBuckets.getError());
-        }
+        ResourceGraph graph = resourceGraphCache.getTarget();
+        List<ResourceBucket> resourceBuckets = graph.findAllByType(ApachePhp.RESOURCE_TYPE);
+        ResourceProjections projections = graph.getProjections();
 
-        resourceBuckets.getItems().forEach(resourceBucket -> {
-            ApachePhp apachePhp = JsonTools.clone(resourceBucket.getResourceDetails().getResource(), ApachePhp.class);
+        resourceBuckets.forEach(resourceBucket -> {
+            ApachePhp apachePhp = projections.get(resourceBucket.getResourceDetails(), ApachePhp.class);
             System.out.println(apachePhp.getName() + " " + apachePhp.getVersion());
 
             // Show URL
@@ -83,7 +87,7 @@ public class PhpCommands extends AbstractBasics {
                     .map(it -> it.getOtherResource()) //
                     .filter(it -> Website.RESOURCE_TYPE.equals(it.getResourceType())) //
                     .forEach(it -> {
-                        Website website = JsonTools.clone(it.getResource(), Website.class);
+                        Website website = projections.get(it, Website.class);
 
                         website.getDomainNames().stream().sorted() //
                                 .forEach(domainName -> {
@@ -103,7 +107,7 @@ public class PhpCommands extends AbstractBasics {
                     .filter(it -> LinkTypeConstants.INSTALLED_ON.equals(it.getLinkType())) //
                     .map(it -> it.getOtherResource()) //
                     .filter(it -> "Machine".equals(it.getResourceType())) //
-                    .map(it -> JsonTools.clone(it.getResource(), Machine.class)) //
+                    .map(it -> projections.get(it, Machine.class)) //
                     .sorted((a, b) -> a.getName().compareTo(b.getName())) //
                     .forEach(machine -> {
                         System.out.println("\tMachine: " + machine.getName());
@@ -116,15 +120,13 @@ public class PhpCommands extends AbstractBasics {
     public void phpListApplicationByVersion() {
 
         // Get the list of PHP applications
-        InfraApiService infraApiService = profileService.getTargetInfraApiService();
-        ResponseResourceBuckets resourceBuckets = infraApiService.getInfraResourceApiService().resourceFindAllWithDetails(new RequestResourceSearch().setResourceType(ApachePhp.RESOURCE_TYPE));
-        if (!resourceBuckets.isSuccess()) {
-            throw new CliException(resourceBuckets.getError());
-        }
+        ResourceGraph graph = resourceGraphCache.getTarget();
+        List<ResourceBucket> resourceBuckets = graph.findAllByType(ApachePhp.RESOURCE_TYPE);
+        ResourceProjections projections = graph.getProjections();
 
-        Map<String, List<ResourceBucket>> sitesByVersion = resourceBuckets.getItems().stream() //
+        Map<String, List<ResourceBucket>> sitesByVersion = resourceBuckets.stream() //
                 .collect(Collectors.groupingBy(resourceBucket -> {
-                    ApachePhp apachePhp = JsonTools.clone(resourceBucket.getResourceDetails().getResource(), ApachePhp.class);
+                    ApachePhp apachePhp = projections.get(resourceBucket.getResourceDetails(), ApachePhp.class);
                     return apachePhp.getVersion();
                 }));
 
@@ -134,7 +136,7 @@ public class PhpCommands extends AbstractBasics {
                     String version = e.getKey();
                     System.out.println("---[ " + version + " ]---");
                     e.getValue().forEach(resourceBucket -> {
-                        ApachePhp apachePhp = JsonTools.clone(resourceBucket.getResourceDetails().getResource(), ApachePhp.class);
+                        ApachePhp apachePhp = projections.get(resourceBucket.getResourceDetails(), ApachePhp.class);
                         System.out.println("\t" + apachePhp.getName() + " " + apachePhp.getVersion());
 
                         // Show URL
@@ -143,7 +145,7 @@ public class PhpCommands extends AbstractBasics {
                                 .map(it -> it.getOtherResource()) //
                                 .filter(it -> Website.RESOURCE_TYPE.equals(it.getResourceType())) //
                                 .forEach(it -> {
-                                    Website website = JsonTools.clone(it.getResource(), Website.class);
+                                    Website website = projections.get(it, Website.class);
 
                                     website.getDomainNames().stream().sorted() //
                                             .forEach(domainName -> {
@@ -163,7 +165,7 @@ public class PhpCommands extends AbstractBasics {
                                 .filter(it -> LinkTypeConstants.INSTALLED_ON.equals(it.getLinkType())) //
                                 .map(it -> it.getOtherResource()) //
                                 .filter(it -> "Machine".equals(it.getResourceType())) //
-                                .map(it -> JsonTools.clone(it.getResource(), Machine.class)) //
+                                .map(it -> projections.get(it, Machine.class)) //
                                 .sorted((a, b) -> a.getName().compareTo(b.getName())) //
                                 .forEach(machine -> {
                                     System.out.println("\t\tMachine: " + machine.getName());
@@ -192,7 +194,8 @@ public class PhpCommands extends AbstractBasics {
         ResponseResourceBuckets resourceBuckets = infraResourceApiService.resourceFindAllWithDetails(requestResourceSearch);
         exceptionService.displayResultAndThrow(resourceBuckets, "Find the resources with PHP version " + fromVersion);
 
-        RequestChanges changes = new RequestChanges();
+        ChangeBatcher<RequestResourceToUpdate> batches = changeBatchService.create(infraResourceApiService, "Applying update",
+                (changes, resourceToUpdate) -> changes.getResourcesToUpdate().add(resourceToUpdate));
         resourceBuckets.getItems().stream() //
                 .map(resourceBucket -> JsonTools.clone(resourceBucket.getResourceDetails().getResource(), ApachePhp.class)) //
                 .filter(apachePhp -> StringTools.safeEquals(fromVersion, apachePhp.getVersion())) // TODO Remove when can search directly
@@ -203,21 +206,12 @@ public class PhpCommands extends AbstractBasics {
                     // Change the version
                     apachePhp.setVersion(toVersion);
                     ResourceDetails resourceDetails = new ResourceDetails(ApachePhp.RESOURCE_TYPE, apachePhp);
-                    changes.getResourcesToUpdate().add(new RequestResourceToUpdate(resourceDetails, resourceDetails));
-
-                    // Update in batch of 10
-                    if (changes.getResourcesToUpdate().size() >= 10) {
-                        ResponseResourceAppliedChanges resourceAppliedChanges = infraResourceApiService.applyChanges(changes);
-                        exceptionService.displayResult(resourceAppliedChanges, "Applying update");
-                        changes.getResourcesToUpdate().clear();
-                    }
+
+                    batches.add(new RequestResourceToUpdate(resourceDetails, resourceDetails));
                 });
 
-        // If some pending
-        if (!changes.getResourcesToUpdate().isEmpty()) {
-            ResponseResourceAppliedChanges resourceAppliedChanges = infraResourceApiService.applyChanges(changes);
-            exceptionService.displayResult(resourceAppliedChanges, "Applying update");
-        }
+        // Send the pending ones
+        batches.close();
 
     }
 
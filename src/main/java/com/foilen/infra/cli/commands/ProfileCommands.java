@@ -17,6 +17,7 @@ import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellOption;
 
 import com.foilen.infra.cli.model.profile.ApiProfile;
+import com.foilen.infra.cli.model.profile.ReplayProfile;
 import com.foilen.infra.cli.model.profile.ServerProfile;
 import com.foilen.infra.cli.services.ProfileService;
 
@@ -33,7 +34,9 @@ public class ProfileCommands {
             String apiUser, //
             String apiKey, //
             @ShellOption(defaultValue = ShellOption.NULL) String rootSshCert,
-            @ShellOption(defaultValue = ShellOption.NULL) String rootSshPassword
+            @ShellOption(defaultValue = ShellOption.NULL) String rootSshPassword,
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Save all the API calls and their results in that directory to replay them later") String recordDirectory, //
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Never send more requests per second to the Infra API") Double maxRequestsPerSecond //
     ) {
 
         ApiProfile profile = new ApiProfile();
@@ -42,6 +45,25 @@ public class ProfileCommands {
         profile.setApiKey(apiKey);
         profile.setSshCertificateFile(rootSshCert);
         profile.setSshPassword(rootSshPassword);
+        profile.setRecordDirectory(recordDirectory);
+        profile.setMaxRequestsPerSecond(maxRequestsPerSecond);
+        profileService.add(profileName, profile);
+    }
+
+    @ShellMethod("Add a replay profile that serves the API calls recorded by an API profile.")
+    public void profileAddReplay( //
+            String profileName, //
+            String replayDirectory, //
+            @ShellOption(defaultValue = "0", help = "The simulated latency of each call") long latencyMs, //
+            @ShellOption(defaultValue = ShellOption.NULL) String rootSshCert, //
+            @ShellOption(defaultValue = ShellOption.NULL) String rootSshPassword //
+    ) {
+
+        ReplayProfile profile = new ReplayProfile();
+        profile.setReplayDirectory(replayDirectory);
+        profile.setLatencyMs(latencyMs);
+        profile.setSshCertificateFile(rootSshCert);
+        profile.setSshPassword(rootSshPassword);
         profileService.add(profileName, profile);
     }
 
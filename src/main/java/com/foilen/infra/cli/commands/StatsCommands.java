@@ -0,0 +1,72 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.commands;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import com.foilen.infra.cli.services.ApiLimitsService;
+import com.foilen.infra.cli.services.ApiStatsService;
+import com.foilen.infra.cli.services.ExecutionService;
+import com.foilen.infra.cli.services.SshSessionPool;
+import com.foilen.infra.cli.services.TransferWatchdogService;
+import com.foilen.smalltools.tools.AbstractBasics;
+
+@ShellComponent
+public class StatsCommands extends AbstractBasics {
+
+    @Autowired
+    private ApiLimitsService apiLimitsService;
+    @Autowired
+    private ApiStatsService apiStatsService;
+    @Autowired
+    private ExecutionService executionService;
+    @Autowired
+    private SshSessionPool sshSessionPool;
+    @Autowired
+    private TransferWatchdogService transferWatchdogService;
+
+    @ShellMethod("Show the count, errors, size and latency of the calls to the Infra API since the start or the last reset")
+    public void stats( //
+            @ShellOption(defaultValue = "false", help = "Clear the statistics after showing them") boolean reset //
+    ) {
+
+        if (apiStatsService.isEmpty()) {
+            System.out.println("No calls to the Infra API");
+        } else {
+            apiStatsService.getReport().forEach(System.out::println);
+        }
+
+        if (!apiLimitsService.isEmpty()) {
+            System.out.println();
+            apiLimitsService.getReport().forEach(System.out::println);
+        }
+
+        if (reset) {
+            apiStatsService.reset();
+        }
+
+    }
+
+    @ShellMethod("Show the threads, active and queued tasks of each shared pool")
+    public void threads() {
+        executionService.getReport().forEach(System.out::println);
+        System.out.println();
+        sshSessionPool.getReport().forEach(System.out::println);
+    }
+
+    @ShellMethod("Show the size, speed and time left of the transfers in progress")
+    public void transfers() {
+        transferWatchdogService.getReport().forEach(System.out::println);
+    }
+
+}
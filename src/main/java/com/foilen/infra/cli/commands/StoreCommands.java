@@ -0,0 +1,104 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.commands;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.shell.Availability;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellMethodAvailability;
+import org.springframework.shell.standard.ShellOption;
+
+import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.profile.ApiProfile;
+import com.foilen.infra.cli.model.store.ResourceStoreQuery;
+import com.foilen.infra.cli.model.store.StoredResource;
+import com.foilen.infra.cli.services.ProfileService;
+import com.foilen.infra.cli.services.ResourceStoreService;
+import com.foilen.smalltools.tools.AbstractBasics;
+
+@ShellComponent
+public class StoreCommands extends AbstractBasics {
+
+    @Autowired
+    private ProfileService profileService;
+    @Autowired
+    private ResourceStoreService resourceStoreService;
+
+    @ShellMethodAvailability
+    public Availability isAvailable() {
+
+        if (profileService.getTarget() == null) {
+            return Availability.unavailable("you did not specify a target profile");
+        }
+
+        if (profileService.getTarget() instanceof ApiProfile) {
+            return Availability.available();
+        }
+
+        return Availability.unavailable("the target profile is not of API type");
+    }
+
+    @ShellMethod("Find the resources of the target profile in the local query store")
+    public void storeFind( //
+            @ShellOption(defaultValue = ShellOption.NULL, help = "The resource type (e.g. \"Apache PHP\")") String resourceType, //
+            @ShellOption(defaultValue = ShellOption.NULL, help = "The exact resource name") String resourceName, //
+            @ShellOption(defaultValue = ShellOption.NULL) String owner, //
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Simple properties that must match. E.g: version=7.4") String properties, //
+            @ShellOption(defaultValue = ShellOption.NULL, help = "The resources must have a link of that type (e.g. INSTALLED_ON)") String linkType, //
+            @ShellOption(defaultValue = ShellOption.NULL, help = "The type of the resource at the other end of the link") String linkedToType, //
+            @ShellOption(defaultValue = ShellOption.NULL, help = "The name of the resource at the other end of the link") String linkedToName //
+    ) {
+
+        ResourceStoreQuery query = new ResourceStoreQuery();
+        query.setResourceType(resourceType);
+        query.setResourceName(resourceName);
+        query.setOwner(owner);
+        query.setLinkType(linkType);
+        query.setLinkedToType(linkedToType);
+        query.setLinkedToName(linkedToName);
+        if (properties != null) {
+            for (String property : properties.split(",")) {
+                int equalsPosition = property.indexOf('=');
+                if (equalsPosition == -1) {
+                    throw new CliException("The property " + property + " must be in the format name=value");
+                }
+                query.getProperties().put(property.substring(0, equalsPosition).trim(), property.substring(equalsPosition + 1).trim());
+            }
+        }
+
+        List<StoredResource> storedResources = resourceStoreService.find(profileService.getTarget(), "target", query);
+        storedResources.forEach(storedResource -> {
+            System.out.println(storedResource.getResourceType() + " | " + storedResource.getResourceName() + " | " + storedResource.getOwner() + " | " + storedResource.getId());
+        });
+        System.out.println(storedResources.size() + " resources");
+
+    }
+
+    @ShellMethod("Show the amount of resources per owner in the local query store of the target profile")
+    public void storeOwners() {
+        resourceStoreService.countByOwner(profileService.getTarget(), "target").forEach((owner, count) -> {
+            System.out.println(owner + ": " + count);
+        });
+    }
+
+    @ShellMethod("Fill again the local query store of the target profile from the Infra API")
+    public void storeRefresh() {
+
+        resourceStoreService.refresh(profileService.getTarget(), "target");
+        resourceStoreService.countByResourceType(profileService.getTarget(), "target").forEach((resourceType, count) -> {
+            System.out.println(resourceType + ": " + count);
+        });
+
+    }
+
+}
@@ -9,8 +9,10 @@
  */
 package com.foilen.infra.cli.commands;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Semaphore;
@@ -33,8 +35,10 @@ import com.foilen.infra.cli.model.MysqlSyncSide;
 import com.foilen.infra.cli.model.profile.AbstractProfile;
 import com.foilen.infra.cli.model.profile.ApiProfile;
 import com.foilen.infra.cli.model.profile.ServerProfile;
+import com.foilen.infra.cli.services.ExecutionService;
 import com.foilen.infra.cli.services.ProfileService;
 import com.foilen.infra.cli.services.SshService;
+import com.foilen.infra.cli.services.SshSessionPool.PooledSshSession;
 import com.foilen.infra.cli.services.UnixUserService;
 import com.foilen.infra.plugin.v1.model.resource.LinkTypeConstants;
 import com.foilen.infra.resource.machine.Machine;
@@ -46,7 +50,6 @@ import com.foilen.smalltools.jsch.JSchTools;
 import com.foilen.smalltools.shell.ExecResult;
 import com.foilen.smalltools.tools.AbstractBasics;
 import com.foilen.smalltools.tools.AssertTools;
-import com.foilen.smalltools.tools.ExecutorsTools;
 import com.foilen.smalltools.tools.JsonTools;
 import com.foilen.smalltools.tools.SecureRandomTools;
 import com.foilen.smalltools.tools.ThreadTools;
@@ -55,6 +58,8 @@ import com.foilen.smalltools.tuple.Tuple3;
 @ShellComponent
 public class SyncCommands extends AbstractBasics {
 
+    @Autowired
+    private ExecutionService executionService;
     @Autowired
     private ProfileService profileService;
     @Autowired
@@ -178,9 +183,8 @@ public class SyncCommands extends AbstractBasics {
             side.setDbPassword(mariaDBUser.getPassword());
 
             // Connect on the machine and check the host:port of mariadb
-            JSchTools jsch = sshService.connect(side);
-            try {
-                ExecResult result = jsch.executeInMemory("cat /var/infra-endpoints/" + databaseServerName + "_MYSQL_TCP");
+            try (PooledSshSession pooledSshSession = sshService.borrow(side)) {
+                ExecResult result = pooledSshSession.getJSchTools().executeInMemory("cat /var/infra-endpoints/" + databaseServerName + "_MYSQL_TCP");
                 String[] hostPort = result.getStdOutAsString().split(":");
                 if (hostPort.length != 2) {
                     logger.error("Could not retrieve the endpoints details. Exit code {}", result.getExitCode());
@@ -190,8 +194,6 @@ public class SyncCommands extends AbstractBasics {
                 }
                 side.setDbHost(hostPort[0]);
                 side.setDbPort(Integer.valueOf(hostPort[1]));
-            } finally {
-                jsch.disconnect();
             }
 
         } else if (profile instanceof ServerProfile) {
@@ -289,9 +291,9 @@ public class SyncCommands extends AbstractBasics {
             Semaphore proxyStarted = new Semaphore(0);
             AtomicBoolean proxyCompleted = new AtomicBoolean();
             AtomicBoolean finishedUsingProxy = new AtomicBoolean();
-            ExecutorsTools.getCachedThreadPool().submit(() -> {
+            executionService.getBackground().submit(() -> {
                 proxyStarted.release();
-                ExecResult execResult = jSchTools.executeInLogger(proxyCommand.toString());
+                ExecResult execResult = sshService.executeInLogger(jSchTools, proxyCommand.toString(), null);
                 logger.info("Proxy command completed. Exit code: {}", execResult.getExitCode());
                 if (!finishedUsingProxy.get() && execResult.getExitCode() != 0) {
                     logger.error("There was a problem executing the proxy command. Exit code: {}", execResult.getExitCode());
@@ -311,11 +313,12 @@ public class SyncCommands extends AbstractBasics {
             dumpCommand.append(" -u").append(sourceSide.getDbUsername()).append(" -p").append(sourceSide.getDbPassword()).append(" ").append(sourceDatabaseName).append(" > ").append(dumpFileName)
                     .append("\"");
             logger.info("Start dump. Command: {}", dumpCommand.toString());
-            ExecResult execResult = jSchTools.executeInLogger(dumpCommand.toString());
+            List<String> lastErrorLines = new ArrayList<>();
+            ExecResult execResult = sshService.executeInLogger(jSchTools, dumpCommand.toString(), lastErrorLines);
             logger.info("Completed dump. Exit code: {}", execResult.getExitCode());
             finishedUsingProxy.set(true);
             if (execResult.getExitCode() != 0) {
-                logger.error("There was a problem executing the dump command. Exit code: {}", execResult.getExitCode());
+                logger.error("There was a problem executing the dump command. Exit code: {} ; Last errors: {}", execResult.getExitCode(), lastErrorLines);
                 throw new CliException("There was a problem executing the dump command");
             }
 
@@ -327,10 +330,11 @@ public class SyncCommands extends AbstractBasics {
             importCommand.append(" -u").append(targetSide.getDbUsername()).append(" -p").append(targetSide.getDbPassword()).append(" ").append(targetDatabaseName).append(" < ").append(dumpFileName)
                     .append("\"");
             logger.info("Start import. Command: {}", importCommand.toString());
-            execResult = jSchTools.executeInLogger(importCommand.toString());
+            lastErrorLines.clear();
+            execResult = sshService.executeInLogger(jSchTools, importCommand.toString(), lastErrorLines);
             logger.info("Completed import. Exit code: {}", execResult.getExitCode());
             if (execResult.getExitCode() != 0) {
-                logger.error("There was a problem executing the import command. Exit code: {}", execResult.getExitCode());
+                logger.error("There was a problem executing the import command. Exit code: {} ; Last errors: {}", execResult.getExitCode(), lastErrorLines);
                 throw new CliException("There was a problem executing the import command");
             }
 
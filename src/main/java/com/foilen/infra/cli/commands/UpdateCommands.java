@@ -15,7 +15,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
@@ -41,8 +40,10 @@ import com.foilen.infra.cli.model.profile.ApiProfile;
 import com.foilen.infra.cli.model.profile.ProfileHasCert;
 import com.foilen.infra.cli.services.DockerHubService;
 import com.foilen.infra.cli.services.ExceptionService;
+import com.foilen.infra.cli.services.ExecutionService;
 import com.foilen.infra.cli.services.MavenCentralService;
 import com.foilen.infra.cli.services.ProfileService;
+import com.foilen.infra.cli.services.SshService;
 import com.foilen.infra.resource.infraconfig.InfraConfig;
 import com.foilen.infra.resource.infraconfig.InfraConfigPlugin;
 import com.foilen.infra.resource.machine.Machine;
@@ -73,9 +74,13 @@ public class UpdateCommands extends AbstractBasics {
     @Autowired
     private ExceptionService exceptionService;
     @Autowired
+    private ExecutionService executionService;
+    @Autowired
     private MavenCentralService mavenCentralService;
     @Autowired
     private ProfileService profileService;
+    @Autowired
+    private SshService sshService;
 
     protected String getPluginNameFromUrl(String url) {
         return url.split("/")[6];
@@ -132,12 +137,12 @@ public class UpdateCommands extends AbstractBasics {
         } else {
             hostnames = Collections.singletonList(hostname);
         }
-        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        ExecutorService executorService = executionService.getSsh();
         List<Future<String>> futures = new ArrayList<>();
 
         hostnames.forEach(h -> {
 
-            futures.add(executorService.submit(() -> {
+            futures.add(executorService.submit(() -> executionService.getSshLimiter().call(h, () -> {
                 logger.info("Updating docker manager on {} to version {}", h, finalVersion);
                 JSchTools jSchTools = null;
                 try {
@@ -152,12 +157,13 @@ public class UpdateCommands extends AbstractBasics {
                     });
 
                     // Execute the script
-                    ExecResult execResult = jSchTools.executeInLogger(scriptPath);
+                    List<String> lastErrorLines = new ArrayList<>();
+                    ExecResult execResult = sshService.executeInLogger(jSchTools, scriptPath, lastErrorLines);
                     if (execResult.getExitCode() == 0) {
                         logger.info("Updating docker manager on {} was a success", h);
                         return "[OK] " + h;
                     } else {
-                        logger.info("Updating docker manager on {} failed with exit code {}", h, execResult.getExitCode());
+                        logger.info("Updating docker manager on {} failed with exit code {} ; Last errors: {}", h, execResult.getExitCode(), lastErrorLines);
                         return "[FAILED] " + h;
                     }
                 } catch (Exception e) {
@@ -168,7 +174,7 @@ public class UpdateCommands extends AbstractBasics {
                         jSchTools.disconnect();
                     }
                 }
-            }));
+            })));
 
         });
 
@@ -186,7 +192,6 @@ public class UpdateCommands extends AbstractBasics {
                 .sorted().forEach(it -> {
                     System.out.println(it);
                 });
-        executorService.shutdown();
 
     }
 
@@ -298,7 +303,7 @@ public class UpdateCommands extends AbstractBasics {
         if (!resourceBuckets.isSuccess()) {
             throw new CliException(resourceBuckets.getError());
         }
-        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        ExecutorService executorService = executionService.getSsh();
         List<Future<String>> futures = new ArrayList<>();
         resourceBuckets.getItems().stream() //
                 .map(it -> JsonTools.clone(it.getResourceDetails().getResource(), Machine.class)) //
@@ -306,25 +311,27 @@ public class UpdateCommands extends AbstractBasics {
                 .sorted() //
                 .forEach(hostname -> {
 
-                    futures.add(executorService.submit(() -> {
+                    futures.add(executorService.submit(() -> executionService.getSshLimiter().call(hostname, () -> {
                         JSchTools jSchTools = null;
                         try {
                             logger.info("Updating softwares list on {}", hostname);
                             jSchTools = new JSchTools().login(new SshLogin(hostname, "root").withPrivateKey(certFile).withPassword(sshPassword).autoApproveHostKey());
-                            ExecResult execResult = jSchTools.executeInLogger("export TERM=dumb ; /usr/bin/apt-get update");
+                            List<String> lastErrorLines = new ArrayList<>();
+                            ExecResult execResult = sshService.executeInLogger(jSchTools, "export TERM=dumb ; /usr/bin/apt-get update", lastErrorLines);
                             if (execResult.getExitCode() == 0) {
                                 logger.info("Updating softwares list on {} was a success", hostname);
                             } else {
-                                logger.info("Updating softwares list {} failed with exit code {}", hostname, execResult.getExitCode());
+                                logger.info("Updating softwares list {} failed with exit code {} ; Last errors: {}", hostname, execResult.getExitCode(), lastErrorLines);
                                 return "[FAILED] " + hostname;
                             }
                             logger.info("Updating softwares on {}", hostname);
-                            execResult = jSchTools.executeInLogger("export TERM=dumb ; /usr/bin/apt-get -y dist-upgrade");
+                            lastErrorLines.clear();
+                            execResult = sshService.executeInLogger(jSchTools, "export TERM=dumb ; /usr/bin/apt-get -y dist-upgrade", lastErrorLines);
                             if (execResult.getExitCode() == 0) {
                                 logger.info("Updating softwares on {} was a success", hostname);
                                 return "[OK] " + hostname;
                             } else {
-                                logger.info("Updating softwares on {} failed with exit code {}", hostname, execResult.getExitCode());
+                                logger.info("Updating softwares on {} failed with exit code {} ; Last errors: {}", hostname, execResult.getExitCode(), lastErrorLines);
                                 return "[FAILED] " + hostname;
                             }
                         } catch (Exception e) {
@@ -335,7 +342,7 @@ public class UpdateCommands extends AbstractBasics {
                                 jSchTools.disconnect();
                             }
                         }
-                    }));
+                    })));
 
                 });
 
@@ -353,7 +360,6 @@ public class UpdateCommands extends AbstractBasics {
                 .sorted().forEach(it -> {
                     System.out.println(it);
                 });
-        executorService.shutdown();
 
     }
 
@@ -45,6 +45,15 @@ public class BackupResult extends AbstractBasics {
         errors.add(error);
     }
 
+    /**
+     * The average speed of the backup.
+     *
+     * @return the bytes per second
+     */
+    public long getBytesPerSecond() {
+        return executionTimeMs == 0 ? 0 : fileSize * 1000 / executionTimeMs;
+    }
+
     public List<String> getErrors() {
         return errors;
     }
@@ -111,7 +120,8 @@ public class BackupResult extends AbstractBasics {
         }
 
         sb.append(Joiner.on(" | ").join(owner, machineName, unixUserName, //
-                TimeConverterTools.convertToTextFromMs(executionTimeMs), SpaceConverterTools.convertToBiggestBUnit(fileSize)));
+                TimeConverterTools.convertToTextFromMs(executionTimeMs), SpaceConverterTools.convertToBiggestBUnit(fileSize), //
+                SpaceConverterTools.convertToBiggestBUnit(getBytesPerSecond()) + "/s"));
         errors.forEach(e -> sb.append("\n\t" + e));
 
         return sb.toString();
@@ -26,7 +26,7 @@ public class BackupResults extends AbstractBasics {
 
     private List<BackupResult> results = new ArrayList<>();
 
-    public BackupResult addResult(boolean success, String owner, String machineName, String name, long executionTimeMs, long fileSize) {
+    public synchronized BackupResult addResult(boolean success, String owner, String machineName, String name, long executionTimeMs, long fileSize) {
         totalExecutionTimeMs += executionTimeMs;
         totalFileSize += fileSize;
 
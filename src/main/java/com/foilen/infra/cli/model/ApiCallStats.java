@@ -0,0 +1,96 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.model;
+
+import java.util.Arrays;
+
+/**
+ * The statistics of the calls to one API method. The latencies percentiles are computed on the last calls only.
+ */
+public class ApiCallStats {
+
+    private static final int KEPT_LATENCIES = 10000;
+
+    private final String name;
+
+    private long count;
+    private long errors;
+    private long bytes;
+    private long totalLatencyMs;
+    private long maxLatencyMs;
+
+    private final long[] lastLatenciesMs = new long[KEPT_LATENCIES];
+    private int lastLatenciesNext;
+
+    public ApiCallStats(String name) {
+        this.name = name;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    public synchronized long getMaxLatencyMs() {
+        return maxLatencyMs;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get some percentiles of the latency.
+     *
+     * @param percentiles
+     *            the percentiles (between 0 and 100)
+     * @return the latency in ms for each percentile
+     */
+    public synchronized long[] getPercentilesLatencyMs(int... percentiles) {
+        int size = (int) Math.min(count, KEPT_LATENCIES);
+        long[] results = new long[percentiles.length];
+        if (size == 0) {
+            return results;
+        }
+
+        long[] sorted = Arrays.copyOf(lastLatenciesMs, size);
+        Arrays.sort(sorted);
+        for (int i = 0; i < percentiles.length; ++i) {
+            int index = (int) Math.ceil(percentiles[i] / 100.0 * size) - 1;
+            results[i] = sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+        return results;
+    }
+
+    public synchronized long getTotalLatencyMs() {
+        return totalLatencyMs;
+    }
+
+    public synchronized void record(long latencyMs, boolean error, long bytes) {
+        ++count;
+        if (error) {
+            ++errors;
+        }
+        this.bytes += bytes;
+        totalLatencyMs += latencyMs;
+        maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+
+        lastLatenciesMs[lastLatenciesNext] = latencyMs;
+        lastLatenciesNext = (lastLatenciesNext + 1) % KEPT_LATENCIES;
+    }
+
+}
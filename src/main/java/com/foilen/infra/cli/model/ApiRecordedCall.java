@@ -0,0 +1,63 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.foilen.smalltools.tools.AbstractBasics;
+
+/**
+ * All the different results received for the same call (same service, method and arguments) in the order they were received.
+ */
+public class ApiRecordedCall extends AbstractBasics {
+
+    private String service;
+    private String method;
+    private Object arguments;
+    private List<Object> results = new ArrayList<>();
+
+    public Object getArguments() {
+        return arguments;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public List<Object> getResults() {
+        return results;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public ApiRecordedCall setArguments(Object arguments) {
+        this.arguments = arguments;
+        return this;
+    }
+
+    public ApiRecordedCall setMethod(String method) {
+        this.method = method;
+        return this;
+    }
+
+    public ApiRecordedCall setResults(List<Object> results) {
+        this.results = results;
+        return this;
+    }
+
+    public ApiRecordedCall setService(String service) {
+        this.service = service;
+        return this;
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.foilen.infra.api.model.resource.PartialLinkDetails;
+import com.foilen.infra.api.model.resource.ResourceBucket;
+import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.services.InfraResourceUtils;
+import com.foilen.infra.cli.services.ResourceProjections;
+import com.foilen.smalltools.tools.CollectionsTools;
+
+/**
+ * An in-memory snapshot of all the resources of one profile with their links indexed in both directions.
+ */
+public class ResourceGraph {
+
+    private static Set<String> getOrCreateIds(Map<String, Map<String, Set<String>>> idsByLinkTypeById, String id, String linkType) {
+        return idsByLinkTypeById.computeIfAbsent(id, k -> new HashMap<>()).computeIfAbsent(linkType, k -> new LinkedHashSet<>());
+    }
+
+    private final String profileName;
+    private final long loadedAt;
+    private final ResourceProjections projections;
+
+    private final Map<String, ResourceBucket> bucketById = new HashMap<>();
+    private final Map<String, List<ResourceBucket>> bucketsByType = new HashMap<>();
+    // type -> name -> buckets (the names are not unique for all the types. E.g. the DNS entries)
+    private final Map<String, Map<String, List<ResourceBucket>>> bucketsByNameByType = new HashMap<>();
+
+    // id -> link type -> ids
+    private final Map<String, Map<String, Set<String>>> linkedToIdsByLinkTypeById = new HashMap<>();
+    private final Map<String, Map<String, Set<String>>> linkedFromIdsByLinkTypeById = new HashMap<>();
+
+    public ResourceGraph(String profileName, Collection<ResourceBucket> resourceBuckets) {
+        this(profileName, System.currentTimeMillis(), resourceBuckets);
+    }
+
+    public ResourceGraph(String profileName, long loadedAt, Collection<ResourceBucket> resourceBuckets) {
+        this(profileName, loadedAt, resourceBuckets, new ResourceProjections());
+    }
+
+    private ResourceGraph(String profileName, long loadedAt, Collection<ResourceBucket> resourceBuckets, ResourceProjections projections) {
+        this.profileName = profileName;
+        this.loadedAt = loadedAt;
+        this.projections = projections;
+        resourceBuckets.forEach(this::add);
+    }
+
+    private void add(ResourceBucket resourceBucket) {
+        String id = InfraResourceUtils.getResourceId(resourceBucket.getResourceDetails());
+        String resourceType = resourceBucket.getResourceDetails().getResourceType();
+        bucketById.put(id, resourceBucket);
+        CollectionsTools.getOrCreateEmptyArrayList(bucketsByType, resourceType, ResourceBucket.class).add(resourceBucket);
+        String resourceName = InfraResourceUtils.getResourceName(resourceBucket.getResourceDetails());
+        if (resourceName != null) {
+            bucketsByNameByType.computeIfAbsent(resourceType, k -> new HashMap<>()).computeIfAbsent(resourceName, k -> new ArrayList<>()).add(resourceBucket);
+        }
+
+        // Both sides of a link are in both buckets, so the sets remove the duplicates
+        for (PartialLinkDetails linkTo : resourceBucket.getLinksTo()) {
+            String otherId = InfraResourceUtils.getResourceId(linkTo.getOtherResource());
+            getOrCreateIds(linkedToIdsByLinkTypeById, id, linkTo.getLinkType()).add(otherId);
+            getOrCreateIds(linkedFromIdsByLinkTypeById, otherId, linkTo.getLinkType()).add(id);
+        }
+        for (PartialLinkDetails linkFrom : resourceBucket.getLinksFrom()) {
+            String otherId = InfraResourceUtils.getResourceId(linkFrom.getOtherResource());
+            getOrCreateIds(linkedFromIdsByLinkTypeById, id, linkFrom.getLinkType()).add(otherId);
+            getOrCreateIds(linkedToIdsByLinkTypeById, otherId, linkFrom.getLinkType()).add(id);
+        }
+    }
+
+    public List<ResourceBucket> findAll() {
+        return new ArrayList<>(bucketById.values());
+    }
+
+    /**
+     * Get all the resources of a type with that name.
+     *
+     * @param resourceType
+     *            the type
+     * @param resourceName
+     *            the name
+     * @return the resources
+     */
+    public List<ResourceBucket> findAllByName(String resourceType, String resourceName) {
+        return Collections.unmodifiableList(bucketsByNameByType.getOrDefault(resourceType, Collections.emptyMap()).getOrDefault(resourceName, Collections.emptyList()));
+    }
+
+    public List<ResourceBucket> findAllByType(String resourceType) {
+        return Collections.unmodifiableList(bucketsByType.getOrDefault(resourceType, Collections.emptyList()));
+    }
+
+    public ResourceBucket findById(String resourceId) {
+        return bucketById.get(resourceId);
+    }
+
+    /**
+     * Get the resources that are linking to this resource (other -> linkType -> this).
+     *
+     * @param resourceId
+     *            the resource id
+     * @param linkType
+     *            the link type
+     * @return the other resources
+     */
+    public List<ResourceBucket> findLinkedFrom(String resourceId, String linkType) {
+        return toBuckets(linkedFromIdsByLinkTypeById, resourceId, linkType);
+    }
+
+    /**
+     * Get the ids of all the resources linked to or from this resource.
+     *
+     * @param resourceId
+     *            the resource id
+     * @return the ids of the other resources
+     */
+    public Set<String> findLinkedIds(String resourceId) {
+        Set<String> ids = new LinkedHashSet<>();
+        linkedToIdsByLinkTypeById.getOrDefault(resourceId, Collections.emptyMap()).values().forEach(ids::addAll);
+        linkedFromIdsByLinkTypeById.getOrDefault(resourceId, Collections.emptyMap()).values().forEach(ids::addAll);
+        return ids;
+    }
+
+    /**
+     * Get the resources that are linked from this resource (this -> linkType -> other).
+     *
+     * @param resourceId
+     *            the resource id
+     * @param linkType
+     *            the link type
+     * @return the other resources
+     */
+    public List<ResourceBucket> findLinkedTo(String resourceId, String linkType) {
+        return toBuckets(linkedToIdsByLinkTypeById, resourceId, linkType);
+    }
+
+    /**
+     * Get the resource of a type with that name when the name is unique for that type (e.g. a machine).
+     *
+     * @param resourceType
+     *            the type
+     * @param resourceName
+     *            the name
+     * @return the resource or null if there is none
+     * @throws CliException
+     *             if there is more than one
+     */
+    public ResourceBucket findOneByName(String resourceType, String resourceName) {
+        List<ResourceBucket> resourceBuckets = findAllByName(resourceType, resourceName);
+        if (resourceBuckets.isEmpty()) {
+            return null;
+        }
+        if (resourceBuckets.size() > 1) {
+            throw new CliException("There are " + resourceBuckets.size() + " resources of type " + resourceType + " with the name " + resourceName);
+        }
+        return resourceBuckets.get(0);
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * The typed resources of this graph, converted once for as long as the graph is used.
+     *
+     * @return the projections
+     */
+    public ResourceProjections getProjections() {
+        return projections;
+    }
+
+    public String getProfileName() {
+        return profileName;
+    }
+
+    public Set<String> getResourceTypes() {
+        return Collections.unmodifiableSet(bucketsByType.keySet());
+    }
+
+    public boolean isExpired(long ttlMs) {
+        return System.currentTimeMillis() - loadedAt > ttlMs;
+    }
+
+    /**
+     * Get a copy of this graph with some resources changed. The load time and the typed resources that did not change stay the same.
+     *
+     * @param updatedBuckets
+     *            the resources to add or replace
+     * @param removedIds
+     *            the ids of the resources to remove
+     * @param reloadedTypes
+     *            the types for which all the resources are replaced by the ones in updatedBuckets
+     * @return the new graph
+     */
+    public ResourceGraph patch(Collection<ResourceBucket> updatedBuckets, Collection<String> removedIds, Collection<String> reloadedTypes) {
+        Map<String, ResourceBucket> mergedBucketById = new LinkedHashMap<>(bucketById);
+        mergedBucketById.keySet().removeAll(removedIds);
+        mergedBucketById.values().removeIf(it -> reloadedTypes.contains(it.getResourceDetails().getResourceType()));
+        updatedBuckets.forEach(it -> mergedBucketById.put(InfraResourceUtils.getResourceId(it.getResourceDetails()), it));
+        return new ResourceGraph(profileName, loadedAt, mergedBucketById.values(), projections.copy(mergedBucketById.keySet()));
+    }
+
+    public int size() {
+        return bucketById.size();
+    }
+
+    private List<ResourceBucket> toBuckets(Map<String, Map<String, Set<String>>> idsByLinkTypeById, String resourceId, String linkType) {
+        Set<String> ids = idsByLinkTypeById.getOrDefault(resourceId, Collections.emptyMap()).getOrDefault(linkType, Collections.emptySet());
+        return ids.stream() //
+                .map(bucketById::get) //
+                .filter(it -> it != null) //
+                .collect(Collectors.toList());
+    }
+
+}
@@ -16,6 +16,8 @@ public class ApiProfile extends AbstractProfile implements ProfileHasCert, Profi
     private String apiKey;
     private String sshCertificateFile;
     private String sshPassword;
+    private String recordDirectory;
+    private Double maxRequestsPerSecond;
 
     public String getApiKey() {
         return apiKey;
@@ -29,6 +31,14 @@ public class ApiProfile extends AbstractProfile implements ProfileHasCert, Profi
         return infraBaseUrl;
     }
 
+    public Double getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    public String getRecordDirectory() {
+        return recordDirectory;
+    }
+
     @Override
     public String getSshCertificateFile() {
         return sshCertificateFile;
@@ -46,6 +56,14 @@ public class ApiProfile extends AbstractProfile implements ProfileHasCert, Profi
         this.infraBaseUrl = infraBaseUrl;
     }
 
+    public void setMaxRequestsPerSecond(Double maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+    }
+
+    public void setRecordDirectory(String recordDirectory) {
+        this.recordDirectory = recordDirectory;
+    }
+
     public void setSshCertificateFile(String sshCertificateFile) {
         this.sshCertificateFile = sshCertificateFile;
     }
@@ -0,0 +1,36 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.model.profile;
+
+/**
+ * An API profile that serves the calls recorded with an {@link ApiProfile} that has a record directory instead of calling a real Infra UI.
+ */
+public class ReplayProfile extends ApiProfile {
+
+    private String replayDirectory;
+    private long latencyMs;
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public String getReplayDirectory() {
+        return replayDirectory;
+    }
+
+    public void setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public void setReplayDirectory(String replayDirectory) {
+        this.replayDirectory = replayDirectory;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.model.store;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What to search in the local query store. All the criteria that are set must match.
+ */
+public class ResourceStoreQuery {
+
+    private String resourceType;
+    private String resourceName;
+    private String owner;
+    private Map<String, String> properties = new TreeMap<>();
+
+    // this -> linkType -> a resource of that type and name
+    private String linkType;
+    private String linkedToType;
+    private String linkedToName;
+
+    public String getLinkedToName() {
+        return linkedToName;
+    }
+
+    public String getLinkedToType() {
+        return linkedToType;
+    }
+
+    public String getLinkType() {
+        return linkType;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public String getResourceName() {
+        return resourceName;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public void setLinkedToName(String linkedToName) {
+        this.linkedToName = linkedToName;
+    }
+
+    public void setLinkedToType(String linkedToType) {
+        this.linkedToType = linkedToType;
+    }
+
+    public void setLinkType(String linkType) {
+        this.linkType = linkType;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public void setProperties(Map<String, String> properties) {
+        this.properties = properties;
+    }
+
+    public void setResourceName(String resourceName) {
+        this.resourceName = resourceName;
+    }
+
+    public void setResourceType(String resourceType) {
+        this.resourceType = resourceType;
+    }
+
+}
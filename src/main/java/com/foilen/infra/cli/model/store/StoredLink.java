@@ -0,0 +1,76 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.model.store;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * A link between two resources in the local query store (from -> linkType -> to).
+ */
+@Entity
+@Table(indexes = { //
+        @Index(columnList = "fromId,linkType"), //
+        @Index(columnList = "toId,linkType"), //
+})
+public class StoredLink {
+
+    @Id
+    @GeneratedValue
+    private Long id;
+    private String fromId;
+    private String linkType;
+    private String toId;
+
+    public StoredLink() {
+    }
+
+    public StoredLink(String fromId, String linkType, String toId) {
+        this.fromId = fromId;
+        this.linkType = linkType;
+        this.toId = toId;
+    }
+
+    public String getFromId() {
+        return fromId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getLinkType() {
+        return linkType;
+    }
+
+    public String getToId() {
+        return toId;
+    }
+
+    public void setFromId(String fromId) {
+        this.fromId = fromId;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public void setLinkType(String linkType) {
+        this.linkType = linkType;
+    }
+
+    public void setToId(String toId) {
+        this.toId = toId;
+    }
+
+}
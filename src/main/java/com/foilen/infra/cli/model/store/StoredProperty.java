@@ -0,0 +1,78 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.model.store;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * A simple property (text, number or boolean) of a resource in the local query store. Used to search on the properties that are specific to a type (e.g. the version).
+ */
+@Entity
+@Table(indexes = { //
+        @Index(columnList = "propertyName,propertyValue"), //
+        @Index(columnList = "resourceId"), //
+})
+public class StoredProperty {
+
+    public static final int MAX_VALUE_LENGTH = 255;
+
+    @Id
+    @GeneratedValue
+    private Long id;
+    private String resourceId;
+    private String propertyName;
+    private String propertyValue;
+
+    public StoredProperty() {
+    }
+
+    public StoredProperty(String resourceId, String propertyName, String propertyValue) {
+        this.resourceId = resourceId;
+        this.propertyName = propertyName;
+        this.propertyValue = propertyValue;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+    public String getPropertyValue() {
+        return propertyValue;
+    }
+
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public void setPropertyName(String propertyName) {
+        this.propertyName = propertyName;
+    }
+
+    public void setPropertyValue(String propertyValue) {
+        this.propertyValue = propertyValue;
+    }
+
+    public void setResourceId(String resourceId) {
+        this.resourceId = resourceId;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.model.store;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+/**
+ * A resource in the local query store.
+ */
+@Entity
+@Table(indexes = { //
+        @Index(columnList = "resourceType,resourceName"), //
+        @Index(columnList = "owner"), //
+})
+public class StoredResource {
+
+    @Id
+    private String id;
+    private String resourceType;
+    private String resourceName;
+    private String owner;
+    @Lob
+    private String resourceJson;
+
+    public StoredResource() {
+    }
+
+    public StoredResource(String id, String resourceType, String resourceName, String owner, String resourceJson) {
+        this.id = id;
+        this.resourceType = resourceType;
+        this.resourceName = resourceName;
+        this.owner = owner;
+        this.resourceJson = resourceJson;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getResourceJson() {
+        return resourceJson;
+    }
+
+    public String getResourceName() {
+        return resourceName;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public void setResourceJson(String resourceJson) {
+        this.resourceJson = resourceJson;
+    }
+
+    public void setResourceName(String resourceName) {
+        this.resourceName = resourceName;
+    }
+
+    public void setResourceType(String resourceType) {
+        this.resourceType = resourceType;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.model.store;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * What the local query store contains. There is a single one and it is removed when the content is not complete or not up to date.
+ */
+@Entity
+public class StoredState {
+
+    public static final String ID = "state";
+
+    @Id
+    private String id = ID;
+    private int formatVersion;
+    private String profileKey;
+    private long loadedAt;
+    private long resourceCount;
+    private String txId;
+
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    public String getProfileKey() {
+        return profileKey;
+    }
+
+    public long getResourceCount() {
+        return resourceCount;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public void setFormatVersion(int formatVersion) {
+        this.formatVersion = formatVersion;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public void setLoadedAt(long loadedAt) {
+        this.loadedAt = loadedAt;
+    }
+
+    public void setProfileKey(String profileKey) {
+        this.profileKey = profileKey;
+    }
+
+    public void setResourceCount(long resourceCount) {
+        this.resourceCount = resourceCount;
+    }
+
+    public void setTxId(String txId) {
+        this.txId = txId;
+    }
+
+}
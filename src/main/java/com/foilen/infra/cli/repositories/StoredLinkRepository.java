@@ -0,0 +1,34 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.foilen.infra.cli.model.store.StoredLink;
+
+public interface StoredLinkRepository extends JpaRepository<StoredLink, Long> {
+
+    @Modifying
+    @Query("DELETE FROM StoredLink l WHERE l.fromId IN :ids")
+    void deleteAllByFromIdIn(@Param("ids") Collection<String> ids);
+
+    @Query("SELECT l.fromId FROM StoredLink l WHERE l.toId = :toId")
+    List<String> findAllFromIdsByToId(@Param("toId") String toId);
+
+    @Query("SELECT l.toId FROM StoredLink l WHERE l.fromId = :fromId")
+    List<String> findAllToIdsByFromId(@Param("fromId") String fromId);
+
+}
@@ -0,0 +1,27 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.repositories;
+
+import java.util.Collection;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.foilen.infra.cli.model.store.StoredProperty;
+
+public interface StoredPropertyRepository extends JpaRepository<StoredProperty, Long> {
+
+    @Modifying
+    @Query("DELETE FROM StoredProperty p WHERE p.resourceId IN :ids")
+    void deleteAllByResourceIdIn(@Param("ids") Collection<String> ids);
+
+}
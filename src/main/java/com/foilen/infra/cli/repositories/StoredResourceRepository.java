@@ -0,0 +1,41 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.foilen.infra.cli.model.store.StoredResource;
+
+public interface StoredResourceRepository extends JpaRepository<StoredResource, String>, JpaSpecificationExecutor<StoredResource> {
+
+    @Query("SELECT r.owner, COUNT(r) FROM StoredResource r GROUP BY r.owner ORDER BY r.owner")
+    List<Object[]> countByOwner();
+
+    @Query("SELECT r.resourceType, COUNT(r) FROM StoredResource r GROUP BY r.resourceType ORDER BY r.resourceType")
+    List<Object[]> countByResourceType();
+
+    @Modifying
+    @Query("DELETE FROM StoredResource r WHERE r.id IN :ids")
+    void deleteAllByIdIn(@Param("ids") Collection<String> ids);
+
+    @Query("SELECT r.id FROM StoredResource r WHERE r.resourceType = :resourceType")
+    List<String> findAllIdsByResourceType(@Param("resourceType") String resourceType);
+
+    @Query("SELECT r.id FROM StoredResource r WHERE r.resourceType = :resourceType AND r.resourceName = :resourceName")
+    List<String> findAllIdsByResourceTypeAndResourceName(@Param("resourceType") String resourceType, @Param("resourceName") String resourceName);
+
+}
@@ -0,0 +1,18 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.foilen.infra.cli.model.store.StoredState;
+
+public interface StoredStateRepository extends JpaRepository<StoredState, String> {
+
+}
@@ -0,0 +1,66 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+/**
+ * A batch size that grows by a fixed step while the transactions are fast and is halved when one is slow or fails (additive increase, multiplicative decrease).
+ */
+public class AdaptiveBatchSize {
+
+    private final int min;
+    private final int max;
+    private final int increaseStep;
+    private final long targetLatencyMs;
+
+    private int size;
+    private int smallestSize;
+    private int largestSize;
+
+    public AdaptiveBatchSize(int initial, int min, int max, int increaseStep, long targetLatencyMs) {
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.increaseStep = increaseStep;
+        this.targetLatencyMs = targetLatencyMs;
+        this.size = Math.min(this.max, Math.max(this.min, initial));
+        this.smallestSize = size;
+        this.largestSize = size;
+    }
+
+    public int getLargestSize() {
+        return largestSize;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getSmallestSize() {
+        return smallestSize;
+    }
+
+    public void onFailure() {
+        setSize(size / 2);
+    }
+
+    public void onSuccess(long latencyMs) {
+        if (latencyMs > targetLatencyMs) {
+            setSize(size / 2);
+        } else {
+            setSize(size + increaseStep);
+        }
+    }
+
+    private void setSize(int size) {
+        this.size = Math.min(max, Math.max(min, size));
+        smallestSize = Math.min(smallestSize, this.size);
+        largestSize = Math.max(largestSize, this.size);
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.foilen.infra.cli.CliException;
+
+/**
+ * A limit of requests in flight that follows the latency (gradient style). The latency of each request is compared to the long-term average: while it stays close, the limit grows by about the square
+ * root of the limit; when it gets slower, the limit shrinks by the same ratio (at most halved). A failed request halves the limit.
+ *
+ * The limit only grows when at least half of it is used, so a quiet period does not make it go to the max.
+ *
+ * It uses a lock instead of synchronized so the virtual threads waiting for room do not pin their carrier thread.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double LATENCY_TOLERANCE = 1.5;
+    private static final int LONG_LATENCY_WINDOW = 100;
+    private static final double SMOOTHING = 0.2;
+
+    private final int min;
+    private final int max;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition roomAvailable = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private double longLatencyMs;
+    private long samples;
+    private int smallestLimit;
+    private int largestLimit;
+
+    public AdaptiveConcurrencyLimit(int initial, int min, int max) {
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.limit = Math.min(this.max, Math.max(this.min, initial));
+        this.smallestLimit = getLimit();
+        this.largestLimit = getLimit();
+    }
+
+    /**
+     * Wait until there is room under the limit. Must be followed by {@link #onSuccess(long)} or {@link #onFailure()}.
+     */
+    public void acquire() {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                roomAvailable.await();
+            }
+            ++inFlight;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CliException("Interrupted while waiting for the concurrency limit", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLargestLimit() {
+        lock.lock();
+        try {
+            return largestLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLongLatencyMs() {
+        lock.lock();
+        try {
+            return (long) longLatencyMs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getSmallestLimit() {
+        lock.lock();
+        try {
+            return smallestLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onFailure() {
+        lock.lock();
+        try {
+            --inFlight;
+            setLimit(limit / 2);
+            roomAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onSuccess(long latencyMs) {
+        lock.lock();
+        try {
+            int usedInFlight = inFlight;
+            --inFlight;
+
+            double sampleMs = Math.max(1, latencyMs);
+            if (samples == 0) {
+                longLatencyMs = sampleMs;
+            } else {
+                longLatencyMs += (sampleMs - longLatencyMs) / Math.min(samples + 1, LONG_LATENCY_WINDOW);
+            }
+            ++samples;
+
+            // When the server got faster, forget the slow period quicker
+            if (longLatencyMs > 2 * sampleMs) {
+                longLatencyMs *= 0.95;
+            }
+
+            double gradient = Math.max(0.5, Math.min(1.0, LATENCY_TOLERANCE * longLatencyMs / sampleMs));
+            if (gradient < 1.0) {
+                setLimit(limit * (1 - SMOOTHING) + limit * gradient * SMOOTHING);
+            } else if (usedInFlight >= limit / 2) {
+                setLimit(limit * (1 - SMOOTHING) + (limit + Math.sqrt(limit)) * SMOOTHING);
+            }
+
+            roomAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must hold the lock.
+     */
+    private void setLimit(double limit) {
+        this.limit = Math.min(max, Math.max(min, limit));
+        smallestLimit = Math.min(smallestLimit, (int) this.limit);
+        largestLimit = Math.max(largestLimit, (int) this.limit);
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Waits for the requests per second cap of the profile and for room under the {@link AdaptiveConcurrencyLimit} of the server (both optional), then gives the latency of the call to the limit. A call
+ * that threw or returned an error counts as a failure.
+ *
+ * The cap must be outside of the {@link LimitedApiHandler} to not hold a slot of the server while waiting, and the limit must be inside it so the latency does not include the time waiting for a slot.
+ */
+public class AdaptiveLimitApiHandler implements InvocationHandler {
+
+    public static Object wrap(Class<?> type, Object target, AdaptiveConcurrencyLimit adaptiveConcurrencyLimit, RateLimiter rateLimiter) {
+        return InfraApiProxyTools.proxy(type, new AdaptiveLimitApiHandler(target, adaptiveConcurrencyLimit, rateLimiter));
+    }
+
+    private final Object target;
+    private final AdaptiveConcurrencyLimit adaptiveConcurrencyLimit;
+    private final RateLimiter rateLimiter;
+
+    /**
+     * @param target
+     *            the API service
+     * @param adaptiveConcurrencyLimit
+     *            (optional) the limit of the server
+     * @param rateLimiter
+     *            (optional) the cap of the profile
+     */
+    public AdaptiveLimitApiHandler(Object target, AdaptiveConcurrencyLimit adaptiveConcurrencyLimit, RateLimiter rateLimiter) {
+        this.target = target;
+        this.adaptiveConcurrencyLimit = adaptiveConcurrencyLimit;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        if (method.getDeclaringClass() == Object.class) {
+            return InfraApiProxyTools.invoke(target, method, args);
+        }
+
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+
+        if (adaptiveConcurrencyLimit == null) {
+            return InfraApiProxyTools.invoke(target, method, args);
+        }
+
+        adaptiveConcurrencyLimit.acquire();
+        long start = System.currentTimeMillis();
+        Object result;
+        try {
+            result = InfraApiProxyTools.invoke(target, method, args);
+        } catch (Throwable e) {
+            adaptiveConcurrencyLimit.onFailure();
+            throw e;
+        }
+        if (InfraApiProxyTools.isError(result)) {
+            adaptiveConcurrencyLimit.onFailure();
+        } else {
+            adaptiveConcurrencyLimit.onSuccess(System.currentTimeMillis() - start);
+        }
+        return result;
+    }
+
+}
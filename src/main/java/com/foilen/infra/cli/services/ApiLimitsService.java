@@ -0,0 +1,81 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.foilen.smalltools.tools.AbstractBasics;
+
+/**
+ * The adaptive concurrency limits of the Infra API servers. They are shared by all the profiles using the same server, so the bulk commands back off together when the server gets slower.
+ */
+@Component
+public class ApiLimitsService extends AbstractBasics {
+
+    @Value("${infra.api.adaptiveLimit.enabled:true}")
+    private boolean enabled;
+    @Value("${infra.api.adaptiveLimit.initial:5}")
+    private int initial;
+    @Value("${infra.api.adaptiveLimit.min:1}")
+    private int min;
+    @Value("${infra.api.adaptiveLimit.max:10}")
+    private int max;
+    @Value("${infra.executors.limits.apiPerServer:10}")
+    private int apiPerServer;
+
+    private final Map<String, AdaptiveConcurrencyLimit> limitByServer = new ConcurrentSkipListMap<>();
+
+    /**
+     * Get the limit of the server.
+     *
+     * @param serverKey
+     *            the server
+     * @return the limit or null if disabled
+     */
+    public AdaptiveConcurrencyLimit getLimit(String serverKey) {
+        if (!enabled) {
+            return null;
+        }
+        // It runs inside the limit per server, so it cannot go higher
+        return limitByServer.computeIfAbsent(serverKey, k -> new AdaptiveConcurrencyLimit(initial, min, Math.min(max, apiPerServer)));
+    }
+
+    /**
+     * Get the state of the limit of all the servers.
+     *
+     * @return the lines
+     */
+    public List<String> getReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-40s %8s %8s %8s %8s %12s", "Server", "Limit", "Smallest", "Largest", "InFlight", "Latency(ms)"));
+        limitByServer.forEach((serverKey, limit) -> {
+            lines.add(String.format("%-40s %8d %8d %8d %8d %12d", //
+                    serverKey, //
+                    limit.getLimit(), //
+                    limit.getSmallestLimit(), //
+                    limit.getLargestLimit(), //
+                    limit.getInFlight(), //
+                    limit.getLongLatencyMs() //
+            ));
+        });
+        return lines;
+    }
+
+    public boolean isEmpty() {
+        return limitByServer.isEmpty();
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.foilen.infra.cli.model.ApiCallStats;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.JsonTools;
+import com.foilen.smalltools.tools.SpaceConverterTools;
+
+/**
+ * Keeps the statistics of all the calls to the Infra API.
+ *
+ * The size of the results is approximated by serializing them again when infra.api.stats.measureBytes is on.
+ */
+@Component
+public class ApiStatsService extends AbstractBasics {
+
+    @Value("${infra.api.stats.measureBytes:false}")
+    private boolean measureBytes;
+
+    private final Map<String, ApiCallStats> statsByName = new ConcurrentHashMap<>();
+
+    public List<ApiCallStats> getAll() {
+        return statsByName.values().stream() //
+                .sorted((a, b) -> a.getName().compareTo(b.getName())) //
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the statistics as a table.
+     *
+     * @return the lines
+     */
+    public List<String> getReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-60s %8s %7s %10s %8s %8s %8s %8s %8s", "Method", "Count", "Errors", "Bytes", "Avg ms", "p50 ms", "p90 ms", "p99 ms", "Max ms"));
+        for (ApiCallStats stats : getAll()) {
+            long[] percentiles = stats.getPercentilesLatencyMs(50, 90, 99);
+            lines.add(String.format("%-60s %8d %7d %10s %8d %8d %8d %8d %8d", //
+                    stats.getName(), //
+                    stats.getCount(), //
+                    stats.getErrors(), //
+                    stats.getBytes() == 0 && !measureBytes ? "-" : SpaceConverterTools.convertToBiggestBUnit(stats.getBytes()), //
+                    stats.getTotalLatencyMs() / Math.max(1, stats.getCount()), //
+                    percentiles[0], percentiles[1], percentiles[2], //
+                    stats.getMaxLatencyMs() //
+            ));
+        }
+        return lines;
+    }
+
+    public boolean isEmpty() {
+        return statsByName.isEmpty();
+    }
+
+    /**
+     * Record one call.
+     *
+     * @param name
+     *            the name of the method
+     * @param latencyMs
+     *            the time it took
+     * @param error
+     *            true if it threw or returned an error
+     * @param result
+     *            the result to measure when infra.api.stats.measureBytes is on (can be null)
+     */
+    public void record(String name, long latencyMs, boolean error, Object result) {
+        long bytes = 0;
+        if (measureBytes && result != null) {
+            // Approximation since it is not the exact response, but the same object serialized again
+            try {
+                bytes = JsonTools.compactPrint(result).length();
+            } catch (Exception e) {
+                logger.debug("Could not measure the size of the result of {}", name, e);
+            }
+        }
+        record(name, latencyMs, error, bytes);
+    }
+
+    /**
+     * Record one call when the size is already known.
+     *
+     * @param name
+     *            the name of the method
+     * @param latencyMs
+     *            the time it took
+     * @param error
+     *            true if it threw or returned an error
+     * @param bytes
+     *            the size of the response
+     */
+    public void record(String name, long latencyMs, boolean error, long bytes) {
+        statsByName.computeIfAbsent(name, ApiCallStats::new).record(latencyMs, error, bytes);
+    }
+
+    public void reset() {
+        statsByName.clear();
+    }
+
+}
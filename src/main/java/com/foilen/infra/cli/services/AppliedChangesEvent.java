@@ -0,0 +1,45 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import com.foilen.infra.api.response.ResponseResourceAppliedChanges;
+
+/**
+ * Published when a call might have changed the resources of an Infra API. All the profiles using that Infra API are concerned.
+ */
+public class AppliedChangesEvent {
+
+    private final String serverKey;
+    private final ResponseResourceAppliedChanges appliedChanges;
+
+    public AppliedChangesEvent(String serverKey, ResponseResourceAppliedChanges appliedChanges) {
+        this.serverKey = serverKey;
+        this.appliedChanges = appliedChanges;
+    }
+
+    /**
+     * The successful changes.
+     *
+     * @return the changes or null when what changed is not known (e.g. another call than applyChanges or one that failed in the middle)
+     */
+    public ResponseResourceAppliedChanges getAppliedChanges() {
+        return appliedChanges;
+    }
+
+    /**
+     * The Infra API that was changed.
+     *
+     * @return the key like {@link ProfileService#getServerKey(com.foilen.infra.cli.model.profile.AbstractProfile)}
+     */
+    public String getServerKey() {
+        return serverKey;
+    }
+
+}
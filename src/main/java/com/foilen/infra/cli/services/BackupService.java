@@ -19,6 +19,8 @@ import com.foilen.infra.cli.CliException;
 import com.foilen.infra.cli.SshException;
 import com.foilen.infra.cli.commands.model.BackupResult;
 import com.foilen.infra.cli.commands.model.BackupResults;
+import com.foilen.infra.cli.services.SshSessionPool.PooledSshSession;
+import com.foilen.infra.cli.services.TransferWatchdogService.Transfer;
 import com.foilen.infra.plugin.v1.model.resource.LinkTypeConstants;
 import com.foilen.infra.resource.machine.Machine;
 import com.foilen.infra.resource.unixuser.UnixUser;
@@ -26,13 +28,15 @@ import com.foilen.smalltools.consolerunner.ConsoleRunner;
 import com.foilen.smalltools.tools.*;
 import org.slf4j.event.Level;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Component
@@ -41,9 +45,22 @@ public class BackupService extends AbstractBasics {
     @Autowired
     private ExceptionService exceptionService;
     @Autowired
+    private ExecutionService executionService;
+    @Autowired
     private ProfileService profileService;
     @Autowired
     private SshService sshService;
+    @Autowired
+    private TransferWatchdogService transferWatchdogService;
+
+    @Value("${infra.backup.parallelChannels:4}")
+    private int parallelChannels;
+    @Value("${infra.backup.resumable.enabled:false}")
+    private boolean resumable;
+    @Value("${infra.backup.resumable.tempFolder:/var/tmp}")
+    private String resumableTempFolder;
+    @Value("${infra.backup.resumable.retries:5}")
+    private int resumableRetries;
 
     private void backupDirectArchive(InfraResourceApiService infraResourceApiService, String backupFolder, String timestamp, BackupResults results, ResourceBucket machineBucket) {
         Machine machine = JsonTools.clone(machineBucket.getResourceDetails().getResource(), Machine.class);
@@ -62,14 +79,26 @@ public class BackupService extends AbstractBasics {
                 .sorted() //
                 .collect(Collectors.toList());
 
-        for (UnixUser unixUser : unixUsers) {
-
-            backupDirectArchive(backupFolder, timestamp, results, machineName, unixUser);
-
-        }
+        // One session on the machine with a channel per user being archived. A stalled channel is killed alone. When resumable, one user at a time since each download can be retried on a new
+        // session
+        executionService.getSshLimiter().run(machineName, () -> {
+            PooledSshSession pooledSshSession = resumable ? null : borrowTargetOrNull(machineName);
+            try {
+                int parallel = pooledSshSession == null ? 1 : parallelChannels;
+                StreamingWorkers.process(unixUsers.iterator(), executionService.getSsh(), parallel, unixUser -> {
+                    backupDirectArchive(backupFolder, timestamp, results, machineName, unixUser, pooledSshSession);
+                    return unixUser;
+                }, unixUser -> {
+                });
+            } finally {
+                if (pooledSshSession != null) {
+                    pooledSshSession.close();
+                }
+            }
+        });
     }
 
-    private void backupDirectArchive(String backupFolder, String timestamp, BackupResults results, String machineName, UnixUser unixUser) {
+    private void backupDirectArchive(String backupFolder, String timestamp, BackupResults results, String machineName, UnixUser unixUser, PooledSshSession pooledSshSession) {
         logger.info("Backuping {} / {}", machineName, unixUser.getName());
 
         String owner = InfraResourceUtils.getOwner(unixUser);
@@ -78,29 +107,27 @@ public class BackupService extends AbstractBasics {
         }
 
         // Create path to the file
-        String backupPath = backupFolder + "/" + timestamp + "/" + owner + "/" + machineName + "-" + unixUser.getName() + ".tgz";
+        String relativeBackupPath = owner + "/" + machineName + "-" + unixUser.getName() + ".tgz";
+        String backupPath = backupFolder + "/" + timestamp + "/" + relativeBackupPath;
         logger.info("Backuping to {}", backupPath);
         AssertTools.assertTrue(DirectoryTools.createPathToFile(backupPath), "Could not create the path to " + backupPath);
 
         // Archive
         File backupFile = new File(backupPath);
-        AtomicBoolean completed = new AtomicBoolean();
-
-        // Show the progress
-        ExecutorsTools.getCachedDaemonThreadPool().submit(() -> {
-            while (!completed.get()) {
-                ThreadTools.sleep(1000);
-                if (!completed.get()) {
-                    logger.info("Backuping to {} ; Size in bytes {} ; Size {}", backupPath, backupFile.length(), SpaceConverterTools.convertToBiggestBUnit(backupFile.length()));
-                }
-            }
-        });
+        long expectedBytes = findPreviousBackupSize(backupFolder, timestamp, relativeBackupPath);
 
-        // Execute
+        // Execute (the progress is shown by the transfers watchdog)
         long executionTimeMs = System.currentTimeMillis();
         BackupResult result;
         try {
-            sshService.executeCommandInFileTarget(machineName, "tar -zc " + unixUser.getHomeFolder(), backupPath);
+            String command = "tar -zc " + unixUser.getHomeFolder();
+            if (resumable) {
+                sshService.executeCommandInFileTargetResumable(machineName, command, resumableTempFolder, backupPath, expectedBytes, resumableRetries);
+            } else if (pooledSshSession == null) {
+                sshService.executeCommandInFileTarget(machineName, command, backupPath, expectedBytes);
+            } else {
+                sshService.executeCommandInFile(pooledSshSession, command, backupPath, expectedBytes);
+            }
             executionTimeMs = System.currentTimeMillis() - executionTimeMs;
             result = results.addResult(true, owner, machineName, unixUser.getName(), executionTimeMs, backupFile.length());
         } catch (SshException e) {
@@ -114,13 +141,11 @@ public class BackupService extends AbstractBasics {
             executionTimeMs = System.currentTimeMillis() - executionTimeMs;
             result = results.addResult(false, owner, machineName, unixUser.getName(), executionTimeMs, backupFile.length());
             result.addError(e.getClass().getSimpleName() + " " + e.getCause().getMessage());
-        } finally {
-            completed.set(true);
         }
 
         // Add to the results
-        logger.info("Backuping {} / {} took {} and copied {}", machineName, unixUser.getName(), TimeConverterTools.convertToTextFromMs(executionTimeMs),
-                SpaceConverterTools.convertToBiggestBUnit(backupFile.length()));
+        logger.info("Backuping {} / {} took {} and copied {} at {}/s", machineName, unixUser.getName(), TimeConverterTools.convertToTextFromMs(executionTimeMs),
+                SpaceConverterTools.convertToBiggestBUnit(result.getFileSize()), SpaceConverterTools.convertToBiggestBUnit(result.getBytesPerSecond()));
 
         // Keep details of errors if not successful
         if (!result.isSuccess()) {
@@ -250,29 +275,21 @@ public class BackupService extends AbstractBasics {
 
         long executionTimeMs = System.currentTimeMillis();
         BackupResult result;
-        AtomicBoolean completed = new AtomicBoolean();
-        String backupPath = backupFolder + "/" + timestamp + "/" + owner + "/" + machineName + "-" + unixUser.getName() + ".tgz";
+        Transfer transfer = null;
+        String relativeBackupPath = owner + "/" + machineName + "-" + unixUser.getName() + ".tgz";
+        String backupPath = backupFolder + "/" + timestamp + "/" + relativeBackupPath;
         File backupFile = new File(backupPath);
         try {
 
             // Rsync
-            sshService.syncFilesRemoteToLocal(machineName, unixUser.getName(), rawBackupPath);
+            executionService.getSshLimiter().run(machineName, () -> sshService.syncFilesRemoteToLocal(machineName, unixUser.getName(), rawBackupPath));
 
             // Create path to the archive
             logger.info("archiving to {}", backupPath);
             AssertTools.assertTrue(DirectoryTools.createPathToFile(backupPath), "Could not create the path to " + backupPath);
 
-            // Archive
-
             // Show the progress
-            ExecutorsTools.getCachedDaemonThreadPool().submit(() -> {
-                while (!completed.get()) {
-                    ThreadTools.sleep(1000);
-                    if (!completed.get()) {
-                        logger.info("Backuping to {} ; Size in bytes {} ; Size {}", backupPath, backupFile.length(), SpaceConverterTools.convertToBiggestBUnit(backupFile.length()));
-                    }
-                }
-            });
+            transfer = transferWatchdogService.start(backupPath, backupFile::length, findPreviousBackupSize(backupFolder, timestamp, relativeBackupPath), null);
 
             // Archive
             ConsoleRunner runner = new ConsoleRunner();
@@ -293,12 +310,14 @@ public class BackupService extends AbstractBasics {
             result = results.addResult(false, owner, machineName, unixUser.getName(), executionTimeMs, backupFile.length());
             result.addError(e.getClass().getSimpleName() + " " + e.getCause().getMessage());
         } finally {
-            completed.set(true);
+            if (transfer != null) {
+                transfer.close();
+            }
         }
 
         // Add to the results
-        logger.info("Backuping {} / {} took {} and copied {}", machineName, unixUser.getName(), TimeConverterTools.convertToTextFromMs(executionTimeMs),
-                SpaceConverterTools.convertToBiggestBUnit(backupFile.length()));
+        logger.info("Backuping {} / {} took {} and copied {} at {}/s", machineName, unixUser.getName(), TimeConverterTools.convertToTextFromMs(executionTimeMs),
+                SpaceConverterTools.convertToBiggestBUnit(result.getFileSize()), SpaceConverterTools.convertToBiggestBUnit(result.getBytesPerSecond()));
 
         // Keep details of errors if not successful
         if (!result.isSuccess()) {
@@ -378,4 +397,42 @@ public class BackupService extends AbstractBasics {
 
     }
 
+    private PooledSshSession borrowTargetOrNull(String machineName) {
+        try {
+            return sshService.borrowTarget(machineName);
+        } catch (Exception e) {
+            logger.error("Could not connect to {}. Each user will be archived on its own connection", machineName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the size of the last backup of the same user to estimate the time left.
+     *
+     * @param backupFolder
+     *            the folder with a sub-folder per timestamp
+     * @param timestamp
+     *            the current timestamp (skipped)
+     * @param relativeBackupPath
+     *            the path of the archive in a timestamp folder
+     * @return the size or 0 if there is none
+     */
+    private long findPreviousBackupSize(String backupFolder, String timestamp, String relativeBackupPath) {
+        String[] timestamps = new File(backupFolder).list();
+        if (timestamps == null) {
+            return 0;
+        }
+        Arrays.sort(timestamps, Collections.reverseOrder());
+        for (String previousTimestamp : timestamps) {
+            if (previousTimestamp.equals(timestamp)) {
+                continue;
+            }
+            File previousBackupFile = new File(backupFolder + "/" + previousTimestamp + "/" + relativeBackupPath);
+            if (previousBackupFile.isFile()) {
+                return previousBackupFile.length();
+            }
+        }
+        return 0;
+    }
+
 }
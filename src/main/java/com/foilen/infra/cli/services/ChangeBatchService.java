@@ -0,0 +1,87 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.Collection;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.foilen.infra.api.request.RequestChanges;
+import com.foilen.infra.api.service.InfraResourceApiService;
+import com.foilen.smalltools.tools.AbstractBasics;
+
+@Component
+public class ChangeBatchService extends AbstractBasics {
+
+    @Autowired
+    private ExceptionService exceptionService;
+    @Autowired
+    private ExecutionService executionService;
+
+    @Value("${infra.changes.batchSize.initial:10}")
+    private int initialBatchSize;
+    @Value("${infra.changes.batchSize.min:1}")
+    private int minBatchSize;
+    @Value("${infra.changes.batchSize.max:200}")
+    private int maxBatchSize;
+    @Value("${infra.changes.batchSize.increaseStep:5}")
+    private int batchSizeIncreaseStep;
+    @Value("${infra.changes.targetLatencyMs:5000}")
+    private long targetLatencyMs;
+    @Value("${infra.changes.lanes:1}")
+    private int lanes;
+
+    /**
+     * Create a batcher.
+     *
+     * @param infraResourceApiService
+     *            the service to use
+     * @param context
+     *            the context to display for each transaction
+     * @param addToChanges
+     *            how to add one item in the request
+     * @param <T>
+     *            the type of items
+     * @return the batcher. Must be closed to send the last batch
+     */
+    public <T> ChangeBatcher<T> create(InfraResourceApiService infraResourceApiService, String context, BiConsumer<RequestChanges, T> addToChanges) {
+        return new ChangeBatcher<>(infraResourceApiService, exceptionService, context, addToChanges, createBatchSize());
+    }
+
+    /**
+     * Create a batcher that sends the batches on the configured amount of concurrent lanes.
+     *
+     * @param infraResourceApiService
+     *            the service to use
+     * @param context
+     *            the context to display for each transaction
+     * @param addToChanges
+     *            how to add one item in the request
+     * @param laneKeys
+     *            the ids of all the resources the item can change (e.g. the resource and the ones linked to it since the server might update them too). The items with a same key are always sent in
+     *            order
+     * @param <T>
+     *            the type of items
+     * @return the batcher. Must be closed to send the last batch and wait for all the lanes
+     */
+    public <T> ChangeBatcher<T> create(InfraResourceApiService infraResourceApiService, String context, BiConsumer<RequestChanges, T> addToChanges,
+            Function<T, Collection<String>> laneKeys) {
+        return new ChangeBatcher<>(infraResourceApiService, exceptionService, context, addToChanges, createBatchSize(), lanes, laneKeys, executionService.getApi());
+    }
+
+    private AdaptiveBatchSize createBatchSize() {
+        return new AdaptiveBatchSize(initialBatchSize, minBatchSize, maxBatchSize, batchSizeIncreaseStep, targetLatencyMs);
+    }
+
+}
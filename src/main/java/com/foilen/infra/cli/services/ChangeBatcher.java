@@ -0,0 +1,255 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.foilen.infra.api.request.RequestChanges;
+import com.foilen.infra.api.response.ResponseResourceAppliedChanges;
+import com.foilen.infra.api.service.InfraResourceApiService;
+import com.foilen.infra.cli.CliException;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.TimeConverterTools;
+
+/**
+ * Sends the changes in batches with applyChanges(). The batch size adapts to how fast the server applies them. Create it with {@link ChangeBatchService}.
+ *
+ * With more than 1 lane, each lane sends its batches one after the other on the given executor while the lanes run concurrently. Each item gives the keys of all the resources its changes touch and the items with the same
+ * lane key always go in the same lane, so the changes on the same resource stay in order. An item whose keys are in different lanes waits for all the lanes to be done and is sent alone.
+ *
+ * When a batch fails in a lane, the error is kept: the next calls to {@link #add(Object)} and {@link #close()} throw it.
+ *
+ * @param <T>
+ *            the type of items
+ */
+public class ChangeBatcher<T> extends AbstractBasics implements AutoCloseable {
+
+    private class Lane {
+
+        private final List<T> pending = new ArrayList<>();
+        // The last batch sent ; the next one starts after it
+        private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+        // The running batch and the next one
+        private final Semaphore inFlight = new Semaphore(2);
+
+    }
+
+    private final InfraResourceApiService infraResourceApiService;
+    private final ExceptionService exceptionService;
+    private final String context;
+    private final BiConsumer<RequestChanges, T> addToChanges;
+    private final AdaptiveBatchSize batchSize;
+    private final Function<T, Collection<String>> laneKeys;
+    private final Executor executor;
+    private final List<Lane> lanes = new ArrayList<>();
+
+    private final AtomicReference<RuntimeException> firstLaneError = new AtomicReference<>();
+
+    private final long start = System.currentTimeMillis();
+    private long itemsApplied;
+    private long itemsFailed;
+    private long transactions;
+    private long transactionsFailed;
+
+    public ChangeBatcher(InfraResourceApiService infraResourceApiService, ExceptionService exceptionService, String context, BiConsumer<RequestChanges, T> addToChanges,
+            AdaptiveBatchSize batchSize) {
+        this(infraResourceApiService, exceptionService, context, addToChanges, batchSize, 1, item -> Collections.emptyList(), null);
+    }
+
+    public ChangeBatcher(InfraResourceApiService infraResourceApiService, ExceptionService exceptionService, String context, BiConsumer<RequestChanges, T> addToChanges,
+            AdaptiveBatchSize batchSize, int laneCount, Function<T, Collection<String>> laneKeys, Executor executor) {
+        this.infraResourceApiService = infraResourceApiService;
+        this.exceptionService = exceptionService;
+        this.context = context;
+        this.addToChanges = addToChanges;
+        this.batchSize = batchSize;
+        this.laneKeys = laneKeys;
+
+        // A single lane sends the batches on the calling thread
+        int actualLaneCount = executor == null ? 1 : Math.max(1, laneCount);
+        this.executor = actualLaneCount > 1 ? executor : null;
+        for (int i = 0; i < actualLaneCount; ++i) {
+            lanes.add(new Lane());
+        }
+    }
+
+    public synchronized void add(T item) {
+        throwLaneError();
+
+        // The lanes of all the changes of that item
+        Set<Lane> itemLanes = new HashSet<>();
+        for (String key : laneKeys.apply(item)) {
+            itemLanes.add(lanes.get(key == null ? 0 : Math.floorMod(key.hashCode(), lanes.size())));
+        }
+        if (itemLanes.isEmpty()) {
+            itemLanes.add(lanes.get(0));
+        }
+
+        if (itemLanes.size() > 1) {
+            applyAlone(item);
+            return;
+        }
+
+        Lane lane = itemLanes.iterator().next();
+        lane.pending.add(item);
+        if (lane.pending.size() >= getBatchSize()) {
+            flush(lane);
+        }
+    }
+
+    public synchronized void addAll(Collection<T> items) {
+        items.forEach(this::add);
+    }
+
+    private void apply(List<T> items) {
+
+        RequestChanges changes = new RequestChanges();
+        items.forEach(item -> addToChanges.accept(changes, item));
+        int count = items.size();
+
+        long transactionStart = System.currentTimeMillis();
+        ResponseResourceAppliedChanges resourceAppliedChanges;
+        try {
+            resourceAppliedChanges = infraResourceApiService.applyChanges(changes);
+        } catch (RuntimeException e) {
+            onApplied(count, false, 0);
+            throw e;
+        }
+        long latencyMs = System.currentTimeMillis() - transactionStart;
+
+        exceptionService.displayResult(resourceAppliedChanges, context);
+        onApplied(count, resourceAppliedChanges.isSuccess(), latencyMs);
+        logger.debug("Batch of {} took {} ms. Next batch size: {}", count, latencyMs, getBatchSize());
+    }
+
+    /**
+     * Send an item that is in multiple lanes after all the lanes are done, so it stays in order with the changes of all its resources.
+     *
+     * @param item
+     *            the item
+     */
+    private void applyAlone(T item) {
+        lanes.forEach(this::flush);
+        for (Lane lane : lanes) {
+            lane.inFlight.acquireUninterruptibly(2);
+        }
+        try {
+            throwLaneError();
+            apply(Collections.singletonList(item));
+        } finally {
+            for (Lane lane : lanes) {
+                lane.inFlight.release(2);
+            }
+        }
+    }
+
+    /**
+     * Send what is pending, wait for all the lanes and display the report.
+     */
+    @Override
+    public synchronized void close() {
+        lanes.forEach(this::flush);
+
+        // Wait for all the lanes
+        for (Lane lane : lanes) {
+            try {
+                lane.last.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CliException("Interrupted while waiting for the changes to be applied", e);
+            } catch (ExecutionException e) {
+                throw new CliException("Could not wait for the changes to be applied", e);
+            }
+        }
+
+        synchronized (batchSize) {
+            if (transactions > 0) {
+                long durationMs = Math.max(1, System.currentTimeMillis() - start);
+                System.out.println("Applied " + itemsApplied + " items in " + transactions + " transactions on " + lanes.size() + " lanes in "
+                        + TimeConverterTools.convertToTextFromMs(durationMs) + " (" + (itemsApplied * 1000 / durationMs) + " items/s)");
+                System.out.println("Batch size: final " + batchSize.getSize() + " ; range " + batchSize.getSmallestSize() + "-" + batchSize.getLargestSize());
+                if (transactionsFailed > 0) {
+                    System.out.println("[ERROR] " + transactionsFailed + " transactions failed with " + itemsFailed + " items");
+                }
+            }
+        }
+
+        throwLaneError();
+    }
+
+    private void flush(Lane lane) {
+        if (lane.pending.isEmpty()) {
+            return;
+        }
+
+        List<T> items = new ArrayList<>(lane.pending);
+        lane.pending.clear();
+
+        if (executor == null) {
+            apply(items);
+            return;
+        }
+
+        // Wait if that lane is already full
+        lane.inFlight.acquireUninterruptibly();
+        lane.last = lane.last.thenRunAsync(() -> {
+            try {
+                apply(items);
+            } catch (RuntimeException e) {
+                firstLaneError.compareAndSet(null, e);
+            } finally {
+                lane.inFlight.release();
+            }
+        }, executor);
+    }
+
+    private int getBatchSize() {
+        synchronized (batchSize) {
+            return batchSize.getSize();
+        }
+    }
+
+    private void onApplied(int count, boolean success, long latencyMs) {
+        synchronized (batchSize) {
+            ++transactions;
+            if (success) {
+                itemsApplied += count;
+                batchSize.onSuccess(latencyMs);
+            } else {
+                ++transactionsFailed;
+                itemsFailed += count;
+                batchSize.onFailure();
+            }
+        }
+    }
+
+    /**
+     * Throw the error of a failed lane. It is kept, so all the next calls throw it too.
+     */
+    private void throwLaneError() {
+        RuntimeException error = firstLaneError.get();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+}
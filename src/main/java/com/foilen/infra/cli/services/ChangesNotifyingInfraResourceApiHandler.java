@@ -0,0 +1,68 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.foilen.infra.api.response.ResponseResourceAppliedChanges;
+import com.foilen.infra.api.service.InfraResourceApiService;
+
+/**
+ * Publishes an {@link AppliedChangesEvent} after each call that might have changed the resources, whatever the command that did it. The finds do not change anything. The successful applyChanges
+ * tell what changed and the other calls (or a call that threw) tell that anything might have changed.
+ */
+public class ChangesNotifyingInfraResourceApiHandler implements InvocationHandler {
+
+    public static InfraResourceApiService wrap(InfraResourceApiService infraResourceApiService, String serverKey, ApplicationEventPublisher applicationEventPublisher) {
+        return InfraApiProxyTools.proxy(InfraResourceApiService.class, new ChangesNotifyingInfraResourceApiHandler(infraResourceApiService, serverKey, applicationEventPublisher));
+    }
+
+    private final InfraResourceApiService infraResourceApiService;
+    private final String serverKey;
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public ChangesNotifyingInfraResourceApiHandler(InfraResourceApiService infraResourceApiService, String serverKey, ApplicationEventPublisher applicationEventPublisher) {
+        this.infraResourceApiService = infraResourceApiService;
+        this.serverKey = serverKey;
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        String methodName = method.getName();
+        if (methodName.startsWith("resourceFind") || methodName.startsWith("typeFind") || method.getDeclaringClass() == Object.class) {
+            return InfraApiProxyTools.invoke(infraResourceApiService, method, args);
+        }
+
+        Object result;
+        try {
+            result = InfraApiProxyTools.invoke(infraResourceApiService, method, args);
+        } catch (Throwable e) {
+            // Might have been applied before failing
+            applicationEventPublisher.publishEvent(new AppliedChangesEvent(serverKey, null));
+            throw e;
+        }
+
+        if (result instanceof ResponseResourceAppliedChanges) {
+            ResponseResourceAppliedChanges appliedChanges = (ResponseResourceAppliedChanges) result;
+            if (appliedChanges.isSuccess()) {
+                applicationEventPublisher.publishEvent(new AppliedChangesEvent(serverKey, appliedChanges));
+            }
+        } else if (!InfraApiProxyTools.isError(result)) {
+            applicationEventPublisher.publishEvent(new AppliedChangesEvent(serverKey, null));
+        }
+        return result;
+    }
+
+}
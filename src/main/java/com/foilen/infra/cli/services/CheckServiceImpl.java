@@ -10,11 +10,9 @@
 package com.foilen.infra.cli.services;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -23,12 +21,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.foilen.infra.api.model.resource.ResourceBucket;
-import com.foilen.infra.api.model.resource.ResourceDetails;
-import com.foilen.infra.api.request.RequestResourceSearch;
-import com.foilen.infra.api.response.ResponseResourceBucket;
-import com.foilen.infra.api.response.ResponseResourceBuckets;
-import com.foilen.infra.api.service.InfraApiService;
-import com.foilen.infra.api.service.InfraResourceApiService;
 import com.foilen.infra.cli.CliException;
 import com.foilen.infra.cli.commands.exec.CheckWebsiteAccessible;
 import com.foilen.infra.cli.commands.exec.model.ProgressionHook;
@@ -39,7 +31,7 @@ import com.foilen.infra.resource.website.Website;
 import com.foilen.smalltools.tools.AbstractBasics;
 import com.foilen.smalltools.tools.JsonTools;
 import com.foilen.smalltools.tools.StringTools;
-import com.foilen.smalltools.tools.ThreadTools;
+import com.foilen.smalltools.tuple.Tuple2;
 import com.foilen.smalltools.tuple.Tuple3;
 import com.google.common.base.Strings;
 
@@ -49,9 +41,9 @@ public class CheckServiceImpl extends AbstractBasics implements CheckService {
     @Autowired
     private DisplayService displayService;
     @Autowired
-    private ExceptionService exceptionService;
+    private ExecutionService executionService;
     @Autowired
-    private ProfileService profileService;
+    private ResourceGraphCache resourceGraphCache;
 
     @Override
     public List<WebsitesAccessible> checkWebsitesAccessible(ProgressionHook progressionHook) {
@@ -63,31 +55,53 @@ public class CheckServiceImpl extends AbstractBasics implements CheckService {
 
         // Get the list
         displayService.display("Retrieve the websites list");
-        InfraApiService infraApiService = profileService.getTargetInfraApiService();
-        RequestResourceSearch requestResourceSearch = new RequestResourceSearch().setResourceType(Website.RESOURCE_TYPE);
-        ResponseResourceBuckets resourceBuckets = infraApiService.getInfraResourceApiService().resourceFindAllWithDetails(requestResourceSearch);
-        exceptionService.displayResultAndThrow(resourceBuckets, "Retrieve the websites list");
+        List<ResourceBucket> resourceBuckets = resourceGraphCache.getTarget().findAllByType(Website.RESOURCE_TYPE);
 
         // Get the list
-        Stream<ResourceBucket> resourceStream = resourceBuckets.getItems().stream();
+        Stream<ResourceBucket> resourceStream = resourceBuckets.stream();
         if (!Strings.isNullOrEmpty(owner)) {
             resourceStream = resourceStream.filter(it -> StringTools.safeEquals(InfraResourceUtils.getOwner(it.getResourceDetails()), owner));
         }
-        List<WebsitesAccessible> websitesAccessibles = resourceStream //
-                .filter(i -> i.getLinksTo().stream().anyMatch(l -> l.getLinkType().equals(LinkTypeConstants.INSTALLED_ON))) //
-                .map(resourceBucket -> JsonTools.clone(resourceBucket.getResourceDetails().getResource(), Website.class)) //
-                .flatMap(website -> website.getDomainNames().stream().map(domain -> //
-                new WebsitesAccessible(website.isHttps() ? "https://" + domain : "http://" + domain, website.getName()) //
-                )) //
-                .sorted() //
-                .collect(Collectors.toCollection(() -> new ArrayList<>()));
+        List<Tuple2<List<String>, WebsitesAccessible>> machinesAndWebsitesAccessibles = resourceStream //
+                .flatMap(resourceBucket -> {
+                    // The websites are served by the web server of each of their machines
+                    List<String> machines = resourceBucket.getLinksTo().stream() //
+                            .filter(l -> l.getLinkType().equals(LinkTypeConstants.INSTALLED_ON)) //
+                            .map(l -> InfraResourceUtils.getResourceName(l.getOtherResource())) //
+                            .sorted() //
+                            .collect(Collectors.toList());
+                    if (machines.isEmpty()) {
+                        return Stream.<Tuple2<List<String>, WebsitesAccessible>> empty();
+                    }
+                    Website website = JsonTools.clone(resourceBucket.getResourceDetails().getResource(), Website.class);
+                    return website.getDomainNames().stream().map(domain -> //
+                    new Tuple2<>(machines, new WebsitesAccessible(website.isHttps() ? "https://" + domain : "http://" + domain, website.getName())) //
+                    );
+                }) //
+                .sorted((a, b) -> a.getB().compareTo(b.getB())) //
+                .collect(Collectors.toList());
 
-        // Execute the checks
-        ExecutorService executorService = Executors.newFixedThreadPool(10, ThreadTools.daemonThreadFactory());
+        // Execute the checks (the permits of the machines are taken before taking a thread to not have the threads waiting for them)
+        ExecutorService executorService = executionService.getHttpCheck();
+        KeyedLimiter httpCheckLimiter = executionService.getHttpCheckLimiter();
 
-        List<Future<?>> futures = websitesAccessibles.stream() //
-                .map(it -> executorService.submit(new CheckWebsiteAccessible(progressionHook, it))) //
-                .collect(Collectors.toList());
+        List<Future<?>> futures = new ArrayList<>();
+        for (Tuple2<List<String>, WebsitesAccessible> machinesAndWebsitesAccessible : machinesAndWebsitesAccessibles) {
+            List<String> machines = machinesAndWebsitesAccessible.getA();
+            httpCheckLimiter.acquire(machines);
+            try {
+                futures.add(executorService.submit(() -> {
+                    try {
+                        new CheckWebsiteAccessible(progressionHook, machinesAndWebsitesAccessible.getB()).run();
+                    } finally {
+                        httpCheckLimiter.release(machines);
+                    }
+                }));
+            } catch (RuntimeException e) {
+                httpCheckLimiter.release(machines);
+                throw e;
+            }
+        }
         futures.forEach(f -> {
             try {
                 f.get();
@@ -95,7 +109,10 @@ public class CheckServiceImpl extends AbstractBasics implements CheckService {
             }
         });
 
-        Collections.sort(websitesAccessibles);
+        List<WebsitesAccessible> websitesAccessibles = machinesAndWebsitesAccessibles.stream() //
+                .map(Tuple2::getB) //
+                .sorted() //
+                .collect(Collectors.toCollection(() -> new ArrayList<>()));
 
         return websitesAccessibles;
     }
@@ -104,14 +121,12 @@ public class CheckServiceImpl extends AbstractBasics implements CheckService {
     @Override
     public void listAllResourcesOnMachine(String machineName) {
 
-        InfraApiService infraApiService = profileService.getTargetInfraApiService();
-        InfraResourceApiService infraResourceApiService = infraApiService.getInfraResourceApiService();
-        ResponseResourceBucket machineBucket = infraResourceApiService.resourceFindOneByPk(new ResourceDetails(Machine.RESOURCE_TYPE, new Machine(machineName)));
-        if (!machineBucket.isSuccess() || machineBucket.getItem() == null) {
-            throw new CliException("Could not get the machine: " + JsonTools.compactPrint(machineBucket));
+        ResourceBucket machineBucket = resourceGraphCache.getTarget().findOneByName(Machine.RESOURCE_TYPE, machineName);
+        if (machineBucket == null) {
+            throw new CliException("Could not get the machine: " + machineName);
         }
 
-        Map<String, List<Tuple3<String, String, String>>> linkTypeAndResourceNameByResourceType = machineBucket.getItem().getLinksFrom().stream() //
+        Map<String, List<Tuple3<String, String, String>>> linkTypeAndResourceNameByResourceType = machineBucket.getLinksFrom().stream() //
                 .map(it -> new Tuple3<>(it.getOtherResource().getResourceType(), it.getLinkType(), ((Map<String, String>) it.getOtherResource().getResource()).get("resourceName"))) //
                 .collect(Collectors.groupingBy(it -> it.getA()));
 
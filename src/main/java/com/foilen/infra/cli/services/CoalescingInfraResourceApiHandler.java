@@ -0,0 +1,129 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.foilen.infra.api.response.ResponseResourceBucket;
+import com.foilen.infra.api.service.InfraResourceApiService;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.JsonTools;
+import com.foilen.smalltools.tuple.Tuple2;
+
+/**
+ * Makes concurrent calls to resourceFindById() for the same id share a single request and keeps the successful results for a short time. Any call that is not a find clears the kept results since
+ * it might change the resources.
+ *
+ * Each caller gets its own copy of the result (with {@link JsonTools#clone(Object, Class)}), so modifying it does not change what the other callers or the handlers under this one (e.g. the
+ * recording) got.
+ */
+public class CoalescingInfraResourceApiHandler extends AbstractBasics implements InvocationHandler {
+
+    private static final String FIND_BY_ID = "resourceFindById";
+
+    public static InfraResourceApiService wrap(InfraResourceApiService infraResourceApiService, long resultTtlMs) {
+        return InfraApiProxyTools.proxy(InfraResourceApiService.class, new CoalescingInfraResourceApiHandler(infraResourceApiService, resultTtlMs));
+    }
+
+    private final InfraResourceApiService infraResourceApiService;
+    private final long resultTtlMs;
+
+    private final Map<String, CompletableFuture<ResponseResourceBucket>> inFlightById = new ConcurrentHashMap<>();
+    // id -> (expiration time, result)
+    private final Map<String, Tuple2<Long, ResponseResourceBucket>> resultById = new ConcurrentHashMap<>();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong sharedCalls = new AtomicLong();
+
+    public CoalescingInfraResourceApiHandler(InfraResourceApiService infraResourceApiService, long resultTtlMs) {
+        this.infraResourceApiService = infraResourceApiService;
+        this.resultTtlMs = resultTtlMs;
+    }
+
+    private ResponseResourceBucket findById(String resourceId) {
+
+        calls.incrementAndGet();
+
+        // Recent result
+        Tuple2<Long, ResponseResourceBucket> result = resultById.get(resourceId);
+        if (result != null) {
+            if (result.getA() >= System.currentTimeMillis()) {
+                sharedCalls.incrementAndGet();
+                return JsonTools.clone(result.getB(), ResponseResourceBucket.class);
+            }
+            resultById.remove(resourceId, result);
+        }
+
+        // Join the request in flight or be the one doing it
+        CompletableFuture<ResponseResourceBucket> newFuture = new CompletableFuture<>();
+        CompletableFuture<ResponseResourceBucket> future = inFlightById.putIfAbsent(resourceId, newFuture);
+        if (future != null) {
+            sharedCalls.incrementAndGet();
+            try {
+                return JsonTools.clone(future.join(), ResponseResourceBucket.class);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            }
+        }
+
+        try {
+            ResponseResourceBucket response = infraResourceApiService.resourceFindById(resourceId);
+            if (response.isSuccess()) {
+                resultById.put(resourceId, new Tuple2<>(System.currentTimeMillis() + resultTtlMs, response));
+            }
+            newFuture.complete(response);
+            return JsonTools.clone(response, ResponseResourceBucket.class);
+        } catch (RuntimeException | Error e) {
+            newFuture.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightById.remove(resourceId, newFuture);
+        }
+
+    }
+
+    private void forgetResults(String methodName) {
+        if (!resultById.isEmpty()) {
+            logger.debug("{} called. Forgetting {} recent results. So far, {} of the {} calls to {} were shared", methodName, resultById.size(), sharedCalls.get(), calls.get(), FIND_BY_ID);
+            resultById.clear();
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        String methodName = method.getName();
+        if (FIND_BY_ID.equals(methodName) && args != null && args.length == 1 && args[0] instanceof String) {
+            return findById((String) args[0]);
+        }
+
+        if (methodName.startsWith("resourceFind") || methodName.startsWith("typeFind") || method.getDeclaringClass() == Object.class) {
+            return InfraApiProxyTools.invoke(infraResourceApiService, method, args);
+        }
+
+        // Might be changing resources. Also forget after in case a find completed during the change
+        forgetResults(methodName);
+        try {
+            return InfraApiProxyTools.invoke(infraResourceApiService, method, args);
+        } finally {
+            forgetResults(methodName);
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.foilen.smalltools.tools.AbstractBasics;
+
+/**
+ * The thread pools shared by all the commands, one per type of work. They live as long as the shell, so the commands must not shut them down.
+ *
+ * The tasks running in a pool must not wait for other tasks of the same pool since all its threads could be waiting.
+ *
+ * When the virtual threads are enabled and the JDK supports them, the API, SSH, HTTP check and background pools start a virtual thread per task. The amount of API, SSH and HTTP check tasks is then
+ * only limited per API server or per host by the limiters.
+ */
+@Component
+public class ExecutionService extends AbstractBasics {
+
+    public static final String API = "api";
+    public static final String BACKGROUND = "background";
+    public static final String CPU = "cpu";
+    public static final String HTTP_CHECK = "httpCheck";
+    public static final String SCHEDULER = "scheduler";
+    public static final String SSH = "ssh";
+
+    /**
+     * Get an executor that starts a virtual thread per task if the JDK supports it.
+     *
+     * @return the executor or null if not supported
+     */
+    private static ExecutorService createVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory namedDaemonThreadFactory(String name) {
+        AtomicInteger nextId = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, "infra-" + name + "-" + nextId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Value("${infra.executors.api.threads:10}")
+    private int apiThreads;
+    @Value("${infra.executors.cpu.threads:0}")
+    private int cpuThreads;
+    @Value("${infra.executors.httpCheck.threads:10}")
+    private int httpCheckThreads;
+    @Value("${infra.executors.ssh.threads:2}")
+    private int sshThreads;
+
+    @Value("${infra.executors.virtualThreads:false}")
+    private boolean virtualThreads;
+    @Value("${infra.executors.limits.apiPerServer:10}")
+    private int apiPerServer;
+    @Value("${infra.executors.limits.sshPerHost:2}")
+    private int sshPerHost;
+    @Value("${infra.executors.limits.httpCheckPerHost:5}")
+    private int httpCheckPerHost;
+
+    private final Map<String, ExecutorService> executorByName = new LinkedHashMap<>();
+    private final Map<String, KeyedLimiter> limiterByName = new LinkedHashMap<>();
+
+    private void createBounded(String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), namedDaemonThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        executorByName.put(name, executor);
+    }
+
+    private void createIo(String name, int threads, ExecutorService virtualThreadPerTaskExecutor, int permitsPerKey) {
+        if (virtualThreadPerTaskExecutor == null) {
+            createBounded(name, threads);
+        } else {
+            executorByName.put(name, new CountingExecutorService(virtualThreadPerTaskExecutor));
+        }
+        limiterByName.put(name, new KeyedLimiter(name, permitsPerKey));
+    }
+
+    /**
+     * The calls to the Infra API.
+     *
+     * @return the executor
+     */
+    public ExecutorService getApi() {
+        return get(API);
+    }
+
+    /**
+     * The limit of calls to the same Infra API server.
+     *
+     * @return the limiter
+     */
+    public KeyedLimiter getApiLimiter() {
+        return limiterByName.get(API);
+    }
+
+    private ExecutorService get(String name) {
+        return executorByName.get(name);
+    }
+
+    /**
+     * The helper tasks that must run at the same time as the task that started them (piping streams, watchdogs, progress, getting the next page of a list). There is no limit since making them wait
+     * could block the task that started them. The API calls they make still wait for the limit of their server.
+     *
+     * @return the executor
+     */
+    public ExecutorService getBackground() {
+        return get(BACKGROUND);
+    }
+
+    /**
+     * The computations on the resources already retrieved.
+     *
+     * @return the executor
+     */
+    public ExecutorService getCpu() {
+        return get(CPU);
+    }
+
+    /**
+     * The HTTP calls to check the websites.
+     *
+     * @return the executor
+     */
+    public ExecutorService getHttpCheck() {
+        return get(HTTP_CHECK);
+    }
+
+    /**
+     * The limit of HTTP checks on the same web server. The key is the machine name.
+     *
+     * @return the limiter
+     */
+    public KeyedLimiter getHttpCheckLimiter() {
+        return limiterByName.get(HTTP_CHECK);
+    }
+
+    /**
+     * Get the state of all the pools.
+     *
+     * @return the lines
+     */
+    public List<String> getReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-12s %8s %8s %8s %8s %12s", "Pool", "Max", "Threads", "Active", "Queued", "Completed"));
+        executorByName.forEach((name, executor) -> {
+            if (executor instanceof ThreadPoolExecutor) {
+                ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+                lines.add(String.format("%-12s %8s %8d %8d %8d %12d", //
+                        name, //
+                        threadPoolExecutor.getMaximumPoolSize() == Integer.MAX_VALUE ? "-" : String.valueOf(threadPoolExecutor.getMaximumPoolSize()), //
+                        threadPoolExecutor.getPoolSize(), //
+                        threadPoolExecutor.getActiveCount(), //
+                        threadPoolExecutor.getQueue().size(), //
+                        threadPoolExecutor.getCompletedTaskCount() //
+                ));
+            } else {
+                CountingExecutorService countingExecutorService = (CountingExecutorService) executor;
+                lines.add(String.format("%-12s %8s %8d %8d %8d %12d", //
+                        name, //
+                        "virtual", //
+                        countingExecutorService.getActiveCount(), //
+                        countingExecutorService.getActiveCount(), //
+                        0, //
+                        countingExecutorService.getCompletedTaskCount() //
+                ));
+            }
+        });
+
+        lines.add("");
+        lines.add(String.format("%-12s %8s %s", "Limiter", "Per key", "In use"));
+        limiterByName.forEach((name, limiter) -> {
+            lines.add(String.format("%-12s %8d %s", name, limiter.getPermitsPerKey(), limiter.getInUseByKey()));
+        });
+        return lines;
+    }
+
+    /**
+     * The periodic checks (e.g. the transfers watchdog). The tasks must be short since there is only one thread.
+     *
+     * @return the executor
+     */
+    public ScheduledExecutorService getScheduler() {
+        return (ScheduledExecutorService) get(SCHEDULER);
+    }
+
+    /**
+     * The SSH sessions on the machines.
+     *
+     * @return the executor
+     */
+    public ExecutorService getSsh() {
+        return get(SSH);
+    }
+
+    /**
+     * The limit of SSH sessions on the same host.
+     *
+     * @return the limiter
+     */
+    public KeyedLimiter getSshLimiter() {
+        return limiterByName.get(SSH);
+    }
+
+    @PostConstruct
+    public void init() {
+
+        ExecutorService virtualThreadPerTaskExecutor = null;
+        if (virtualThreads) {
+            virtualThreadPerTaskExecutor = createVirtualThreadPerTaskExecutor();
+            if (virtualThreadPerTaskExecutor == null) {
+                logger.warn("The virtual threads are not supported by this JDK ({}). Using the thread pools", System.getProperty("java.version"));
+            } else {
+                logger.info("Using the virtual threads for the I/O tasks");
+            }
+        }
+
+        createIo(API, apiThreads, virtualThreadPerTaskExecutor, apiPerServer);
+        createIo(SSH, sshThreads, virtualThreadPerTaskExecutor, sshPerHost);
+        createIo(HTTP_CHECK, httpCheckThreads, virtualThreadPerTaskExecutor, httpCheckPerHost);
+        createBounded(CPU, cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors());
+        if (virtualThreadPerTaskExecutor == null) {
+            executorByName.put(BACKGROUND, new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), namedDaemonThreadFactory(BACKGROUND)));
+        } else {
+            executorByName.put(BACKGROUND, new CountingExecutorService(virtualThreadPerTaskExecutor));
+        }
+        executorByName.put(SCHEDULER, new ScheduledThreadPoolExecutor(1, namedDaemonThreadFactory(SCHEDULER)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // The virtual threads executor is shared by multiple names
+        executorByName.values().stream().distinct().forEach(ExecutorService::shutdownNow);
+    }
+
+}
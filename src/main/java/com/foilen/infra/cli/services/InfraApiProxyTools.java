@@ -0,0 +1,124 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+
+import com.foilen.infra.api.service.InfraApiService;
+import com.foilen.infra.api.service.InfraResourceApiService;
+import com.foilen.smalltools.restapi.model.AbstractApiBaseWithError;
+import com.foilen.smalltools.restapi.model.FormResult;
+
+/**
+ * Helpers to decorate the Infra API services without having to implement all their methods.
+ */
+public final class InfraApiProxyTools {
+
+    /**
+     * Call the method on the real service and rethrow the exception it threw instead of the reflection one.
+     *
+     * @param target
+     *            the real service
+     * @param method
+     *            the method
+     * @param args
+     *            the arguments
+     * @return the result
+     * @throws Throwable
+     *             what the real method threw
+     */
+    public static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Tell if the API returned an error instead of throwing it.
+     *
+     * @param result
+     *            the result of a call
+     * @return true if it is an error
+     */
+    public static boolean isError(Object result) {
+        if (result instanceof AbstractApiBaseWithError) {
+            return !((AbstractApiBaseWithError) result).isSuccess();
+        }
+        if (result instanceof FormResult) {
+            return !((FormResult) result).isSuccess();
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T proxy(Class<T> type, InvocationHandler invocationHandler) {
+        return (T) Proxy.newProxyInstance(InfraApiProxyTools.class.getClassLoader(), new Class<?>[] { type }, invocationHandler);
+    }
+
+    /**
+     * Get an {@link InfraApiService} that returns a decorated version of all its sub-services (all the get*ApiService() methods).
+     *
+     * @param infraApiService
+     *            the real service
+     * @param decorator
+     *            the decorator to apply once on each sub-service. Receives the interface type and the real sub-service
+     * @return the decorated service
+     */
+    public static InfraApiService wrapApiServices(InfraApiService infraApiService, BiFunction<Class<?>, Object, Object> decorator) {
+        Map<Method, Object> decoratedByMethod = new ConcurrentHashMap<>();
+        return proxy(InfraApiService.class, (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            if (method.getParameterCount() == 0 && returnType.isInterface() && method.getName().startsWith("get") && method.getName().endsWith("ApiService")) {
+                return decoratedByMethod.computeIfAbsent(method, m -> {
+                    try {
+                        return decorator.apply(returnType, invoke(infraApiService, m, args));
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new IllegalStateException("Could not get the service " + m.getName(), e);
+                    }
+                });
+            }
+            return invoke(infraApiService, method, args);
+        });
+    }
+
+    /**
+     * Get an {@link InfraApiService} that returns a decorated {@link InfraResourceApiService} and delegates everything else.
+     *
+     * @param infraApiService
+     *            the real service
+     * @param decorator
+     *            the decorator to apply once on the resource service
+     * @return the decorated service
+     */
+    public static InfraApiService wrapResourceApiService(InfraApiService infraApiService, UnaryOperator<InfraResourceApiService> decorator) {
+        InfraResourceApiService decorated = decorator.apply(infraApiService.getInfraResourceApiService());
+        return proxy(InfraApiService.class, (proxy, method, args) -> {
+            if ("getInfraResourceApiService".equals(method.getName()) && method.getParameterCount() == 0) {
+                return decorated;
+            }
+            return invoke(infraApiService, method, args);
+        });
+    }
+
+    private InfraApiProxyTools() {
+    }
+
+}
@@ -9,9 +9,14 @@
  */
 package com.foilen.infra.cli.services;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.foilen.infra.api.model.resource.PartialLinkDetails;
+import com.foilen.infra.api.model.resource.ResourceBucket;
 import com.foilen.infra.api.model.resource.ResourceDetails;
 import com.foilen.infra.plugin.v1.model.resource.AbstractIPResource;
 import com.foilen.smalltools.tools.JsonTools;
@@ -43,6 +48,30 @@ public class InfraResourceUtils {
         return (String) detailedResource.get("internalId");
     }
 
+    /**
+     * Get the id of the resource and of all the resources linked to it.
+     *
+     * @param resourceBucket
+     *            the resource with its links
+     * @return the ids
+     */
+    public static List<String> getResourceAndLinkedIds(ResourceBucket resourceBucket) {
+        List<String> resourceIds = new ArrayList<>();
+        resourceIds.add(getResourceId(resourceBucket.getResourceDetails()));
+        for (List<PartialLinkDetails> links : Arrays.asList(resourceBucket.getLinksFrom(), resourceBucket.getLinksTo())) {
+            if (links == null) {
+                continue;
+            }
+            for (PartialLinkDetails link : links) {
+                String resourceId = getResourceId(link.getOtherResource());
+                if (resourceId != null) {
+                    resourceIds.add(resourceId);
+                }
+            }
+        }
+        return resourceIds;
+    }
+
     @SuppressWarnings({ "unchecked" })
     public static String getResourceName(ResourceDetails resourceDetails) {
         Map<String, Object> detailedResource = ((Map<String, Object>) resourceDetails.getResource());
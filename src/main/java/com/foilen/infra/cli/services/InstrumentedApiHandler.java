@@ -0,0 +1,54 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+/**
+ * Records the count, errors, size and latency of all the calls to an API service in {@link ApiStatsService}.
+ */
+public class InstrumentedApiHandler implements InvocationHandler {
+
+    public static Object wrap(Class<?> type, Object target, ApiStatsService apiStatsService) {
+        return InfraApiProxyTools.proxy(type, new InstrumentedApiHandler(type, target, apiStatsService));
+    }
+
+    private final String typeName;
+    private final Object target;
+    private final ApiStatsService apiStatsService;
+
+    public InstrumentedApiHandler(Class<?> type, Object target, ApiStatsService apiStatsService) {
+        this.typeName = type.getSimpleName();
+        this.target = target;
+        this.apiStatsService = apiStatsService;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        if (method.getDeclaringClass() == Object.class) {
+            return InfraApiProxyTools.invoke(target, method, args);
+        }
+
+        String name = typeName + "." + method.getName();
+        long start = System.currentTimeMillis();
+        Object result;
+        try {
+            result = InfraApiProxyTools.invoke(target, method, args);
+        } catch (Throwable e) {
+            apiStatsService.record(name, System.currentTimeMillis() - start, true, null);
+            throw e;
+        }
+        apiStatsService.record(name, System.currentTimeMillis() - start, InfraApiProxyTools.isError(result), result);
+        return result;
+    }
+
+}
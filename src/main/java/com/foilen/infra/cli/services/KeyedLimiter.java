@@ -0,0 +1,132 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import com.foilen.infra.cli.CliException;
+
+/**
+ * Limits the amount of tasks running at the same time on the same key (e.g. the same host) whatever the amount of threads.
+ */
+public class KeyedLimiter {
+
+    private final String name;
+    private final int permitsPerKey;
+
+    private final Map<String, Semaphore> semaphoreByKey = new ConcurrentHashMap<>();
+
+    public KeyedLimiter(String name, int permitsPerKey) {
+        this.name = name;
+        this.permitsPerKey = permitsPerKey;
+    }
+
+    /**
+     * Wait for a permit on all the keys. They are taken in order, so that 2 callers with common keys cannot wait for each other. Give them back with {@link #release(Collection)}.
+     *
+     * @param keys
+     *            the keys
+     */
+    public void acquire(Collection<String> keys) {
+        List<String> acquiredKeys = new ArrayList<>();
+        try {
+            for (String key : new TreeSet<>(keys)) {
+                acquire(key);
+                acquiredKeys.add(key);
+            }
+        } catch (RuntimeException e) {
+            release(acquiredKeys);
+            throw e;
+        }
+    }
+
+    private void acquire(String key) {
+        try {
+            getSemaphore(key).acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CliException("Interrupted while waiting for a " + name + " permit for " + key, e);
+        }
+    }
+
+    /**
+     * Wait for a permit on the key and run the task.
+     *
+     * @param key
+     *            the key
+     * @param task
+     *            the task
+     * @param <T>
+     *            the type of result
+     * @return the result of the task
+     */
+    public <T> T call(String key, Supplier<T> task) {
+        acquire(key);
+        try {
+            return task.get();
+        } finally {
+            getSemaphore(key).release();
+        }
+    }
+
+    /**
+     * Get the amount of running tasks per key.
+     *
+     * @return the running tasks per key (only the keys with running tasks)
+     */
+    public Map<String, Integer> getInUseByKey() {
+        Map<String, Integer> inUseByKey = new TreeMap<>();
+        semaphoreByKey.forEach((key, semaphore) -> {
+            int inUse = permitsPerKey - semaphore.availablePermits();
+            if (inUse > 0) {
+                inUseByKey.put(key, inUse);
+            }
+        });
+        return inUseByKey;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPermitsPerKey() {
+        return permitsPerKey;
+    }
+
+    private Semaphore getSemaphore(String key) {
+        return semaphoreByKey.computeIfAbsent(key == null ? "" : key, k -> new Semaphore(permitsPerKey));
+    }
+
+    /**
+     * Give back the permits taken with {@link #acquire(Collection)}.
+     *
+     * @param keys
+     *            the keys
+     */
+    public void release(Collection<String> keys) {
+        new TreeSet<>(keys).forEach(key -> getSemaphore(key).release());
+    }
+
+    public void run(String key, Runnable task) {
+        call(key, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+}
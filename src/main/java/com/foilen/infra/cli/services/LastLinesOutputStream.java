@@ -0,0 +1,147 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * Splits what is written in lines and keeps the last ones in a ring buffer. It is written directly by the thread producing the output, so there is no pipe and no thread to read it.
+ *
+ * The lines longer than {@link #MAX_LINE_LENGTH} bytes are truncated.
+ */
+public class LastLinesOutputStream extends OutputStream {
+
+    public static final int MAX_LINE_LENGTH = 4096;
+
+    private final String[] lastLines;
+    private final Consumer<String> lineConsumer;
+
+    private int nextIndex;
+    private int count;
+    private final ByteArrayOutputStream currentLine = new ByteArrayOutputStream();
+
+    /**
+     * Keep the last lines.
+     *
+     * @param maxLines
+     *            the amount of lines to keep
+     */
+    public LastLinesOutputStream(int maxLines) {
+        this(maxLines, null);
+    }
+
+    /**
+     * Keep the last lines and give all of them to a consumer.
+     *
+     * @param maxLines
+     *            the amount of lines to keep (can be 0)
+     * @param lineConsumer
+     *            receives each line when it is completed (can be null)
+     */
+    public LastLinesOutputStream(int maxLines, Consumer<String> lineConsumer) {
+        this.lastLines = new String[maxLines];
+        this.lineConsumer = lineConsumer;
+    }
+
+    /**
+     * Add a line that was not written (e.g. why the command was stopped).
+     *
+     * @param line
+     *            the line
+     */
+    public synchronized void addLine(String line) {
+        if (lineConsumer != null) {
+            lineConsumer.accept(line);
+        }
+        if (lastLines.length == 0) {
+            return;
+        }
+        lastLines[nextIndex] = line;
+        nextIndex = (nextIndex + 1) % lastLines.length;
+        if (count < lastLines.length) {
+            ++count;
+        }
+    }
+
+    private void appendToLine(byte[] bytes, int offset, int length) {
+        // Windows line endings
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            --length;
+        }
+        int room = MAX_LINE_LENGTH - currentLine.size();
+        if (room > 0) {
+            currentLine.write(bytes, offset, Math.min(length, room));
+        }
+    }
+
+    /**
+     * Complete the last line if it does not end with a new line.
+     */
+    @Override
+    public synchronized void close() {
+        completeLine();
+    }
+
+    private void completeLine() {
+        if (currentLine.size() > 0) {
+            addLine(new String(currentLine.toByteArray(), StandardCharsets.UTF_8));
+            currentLine.reset();
+        }
+    }
+
+    /**
+     * Get the last lines. The line being written is included.
+     *
+     * @return the lines from the oldest to the newest
+     */
+    public synchronized Queue<String> getLastLines() {
+        Queue<String> lines = new LinkedList<>();
+        int first = (nextIndex - count + lastLines.length) % Math.max(1, lastLines.length);
+        for (int i = 0; i < count; ++i) {
+            lines.add(lastLines[(first + i) % lastLines.length]);
+        }
+        if (currentLine.size() > 0 && lastLines.length > 0) {
+            if (lines.size() == lastLines.length) {
+                lines.poll();
+            }
+            lines.add(new String(currentLine.toByteArray(), StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; ++i) {
+            if (bytes[i] == '\n') {
+                appendToLine(bytes, lineStart, i - lineStart);
+                completeLine();
+                lineStart = i + 1;
+            }
+        }
+        appendToLine(bytes, lineStart, end - lineStart);
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (b == '\n') {
+            completeLine();
+        } else if (b != '\r' && currentLine.size() < MAX_LINE_LENGTH) {
+            currentLine.write(b);
+        }
+    }
+
+}
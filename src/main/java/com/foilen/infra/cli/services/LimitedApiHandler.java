@@ -0,0 +1,57 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+import com.foilen.smalltools.tuple.Tuple2;
+
+/**
+ * Limits the amount of calls running at the same time on the same API server with a {@link KeyedLimiter}. The waiting is done before the call is measured.
+ */
+public class LimitedApiHandler implements InvocationHandler {
+
+    public static Object wrap(Class<?> type, Object target, KeyedLimiter keyedLimiter, String serverKey) {
+        return InfraApiProxyTools.proxy(type, new LimitedApiHandler(target, keyedLimiter, serverKey));
+    }
+
+    private final Object target;
+    private final KeyedLimiter keyedLimiter;
+    private final String serverKey;
+
+    public LimitedApiHandler(Object target, KeyedLimiter keyedLimiter, String serverKey) {
+        this.target = target;
+        this.keyedLimiter = keyedLimiter;
+        this.serverKey = serverKey;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        if (method.getDeclaringClass() == Object.class) {
+            return InfraApiProxyTools.invoke(target, method, args);
+        }
+
+        // Result or error
+        Tuple2<Object, Throwable> outcome = keyedLimiter.call(serverKey, () -> {
+            try {
+                return new Tuple2<Object, Throwable>(InfraApiProxyTools.invoke(target, method, args), null);
+            } catch (Throwable e) {
+                return new Tuple2<Object, Throwable>(null, e);
+            }
+        });
+        if (outcome.getB() != null) {
+            throw outcome.getB();
+        }
+        return outcome.getA();
+    }
+
+}
@@ -18,11 +18,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.foilen.infra.api.model.resource.LinkDetails;
+import com.foilen.infra.api.model.resource.PartialLinkDetails;
 import com.foilen.infra.api.model.resource.ResourceBucket;
 import com.foilen.infra.api.model.resource.ResourceDetails;
 import com.foilen.infra.api.request.RequestChanges;
@@ -32,6 +35,7 @@ import com.foilen.infra.api.response.ResponseResourceBucket;
 import com.foilen.infra.api.service.InfraApiService;
 import com.foilen.infra.api.service.InfraResourceApiService;
 import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.ResourceGraph;
 import com.foilen.infra.plugin.v1.model.resource.LinkTypeConstants;
 import com.foilen.infra.resource.apachephp.ApachePhp;
 import com.foilen.infra.resource.application.Application;
@@ -70,10 +74,24 @@ public class MoveService extends AbstractBasics {
     @Autowired
     private ExceptionService exceptionService;
     @Autowired
+    private ExecutionService executionService;
+    @Autowired
     private ProfileService profileService;
     @Autowired
+    private ResourceGraphCache resourceGraphCache;
+    @Autowired
     private SshService sshService;
 
+    @Value("${infra.move.prefetchThreads:8}")
+    private int prefetchThreads;
+
+    private Stream<String> findLinkedIds(List<PartialLinkDetails> links, String linkType, String resourceType) {
+        return links.stream() //
+                .filter(it -> StringTools.safeEquals(it.getLinkType(), linkType)) //
+                .filter(it -> StringTools.safeEquals(it.getOtherResource().getResourceType(), resourceType)) //
+                .map(it -> InfraResourceUtils.getResourceId(it.getOtherResource()));
+    }
+
     public void moveAllFromMachine(String sourceHostname, String targetHostname) {
 
         System.out.println("===[ Migrating all unix users ]===");
@@ -106,14 +124,12 @@ public class MoveService extends AbstractBasics {
         }
 
         // Get all the unix users on the source
-        InfraApiService infraApiService = profileService.getTargetInfraApiService();
-        InfraResourceApiService infraResourceApiService = infraApiService.getInfraResourceApiService();
-        ResponseResourceBucket sourceMachineBucket = infraResourceApiService.resourceFindOneByPk(new ResourceDetails(Machine.RESOURCE_TYPE, new Machine(sourceHostname)));
-        if (!sourceMachineBucket.isSuccess() || sourceMachineBucket.getItem() == null) {
-            throw new CliException("Could not get the Machine: " + JsonTools.compactPrint(sourceMachineBucket));
+        ResourceBucket sourceMachineBucket = resourceGraphCache.getTarget().findOneByName(Machine.RESOURCE_TYPE, sourceHostname);
+        if (sourceMachineBucket == null) {
+            throw new CliException("Could not get the Machine: " + sourceHostname);
         }
 
-        List<String> usernames = sourceMachineBucket.getItem().getLinksFrom().stream() //
+        List<String> usernames = sourceMachineBucket.getLinksFrom().stream() //
                 .filter(it -> StringTools.safeEquals(UnixUser.RESOURCE_TYPE, it.getOtherResource().getResourceType())) //
                 .filter(it -> StringTools.safeEquals(LinkTypeConstants.INSTALLED_ON, it.getLinkType())) //
                 .map(it -> ((Map<String, String>) it.getOtherResource().getResource()).get("resourceName")) //
@@ -153,25 +169,25 @@ public class MoveService extends AbstractBasics {
         }
 
         // Get the Machine
-        InfraApiService infraApiService = profileService.getTargetInfraApiService();
-        InfraResourceApiService infraResourceApiService = infraApiService.getInfraResourceApiService();
-        ResponseResourceBucket machineBucket = infraResourceApiService.resourceFindOneByPk(new ResourceDetails(Machine.RESOURCE_TYPE, new Machine(machineName)));
-        if (!machineBucket.isSuccess() || machineBucket.getItem() == null) {
-            throw new CliException("Could not get the Machine: " + JsonTools.compactPrint(machineBucket));
+        ResourceGraph graph = resourceGraphCache.getTarget();
+        ResourceProjections projections = graph.getProjections();
+        ResourceBucket machineBucket = graph.findOneByName(Machine.RESOURCE_TYPE, machineName);
+        if (machineBucket == null) {
+            throw new CliException("Could not get the Machine: " + machineName);
         }
 
         // Get the domains of the installed websites
-        List<String> domains = machineBucket.getItem().getLinksFrom().stream() //
+        List<String> domains = machineBucket.getLinksFrom().stream() //
                 .filter(it -> StringTools.safeEquals(it.getLinkType(), LinkTypeConstants.INSTALLED_ON) || StringTools.safeEquals(it.getLinkType(), "INSTALLED_ON_NO_DNS")) //
                 .filter(it -> StringTools.safeEquals(it.getOtherResource().getResourceType(), Website.RESOURCE_TYPE)) //
-                .map(it -> InfraResourceUtils.resourceDetailsToResource(it.getOtherResource(), Website.class).getInternalId()) //
+                .map(it -> InfraResourceUtils.getResourceId(it.getOtherResource())) //
                 .map(websiteInternalId -> {
-                    ResponseResourceBucket websiteBucket = infraResourceApiService.resourceFindById(websiteInternalId);
-                    if (!websiteBucket.isSuccess() || websiteBucket.getItem() == null) {
-                        throw new CliException("Could not get the Website: " + JsonTools.compactPrint(websiteBucket));
+                    ResourceBucket websiteBucket = graph.findById(websiteInternalId);
+                    if (websiteBucket == null) {
+                        throw new CliException("Could not get the Website: " + websiteInternalId);
                     }
 
-                    return InfraResourceUtils.resourceDetailsToResource(websiteBucket.getItem().getResourceDetails(), Website.class);
+                    return projections.get(websiteBucket.getResourceDetails(), Website.class);
                 }) //
                 .peek(it -> System.out.println("Found Website: " + it.getName())) //
                 .flatMap(website -> website.getDomainNames().stream()) //
@@ -231,19 +247,36 @@ public class MoveService extends AbstractBasics {
             throw new CliException("Could not get the Unix User: " + JsonTools.compactPrint(unixUserBucket));
         }
 
+        // Prefetch the machines and applications linked to the unix user, then the machines of these applications and the managers that will be used
+        ResourcePrefetcher prefetcher = new ResourcePrefetcher(infraResourceApiService, executionService.getApi(), prefetchThreads);
+        prefetcher.fetch(Stream.concat( //
+                findLinkedIds(unixUserBucket.getItem().getLinksTo(), LinkTypeConstants.INSTALLED_ON, Machine.RESOURCE_TYPE), //
+                findLinkedIds(unixUserBucket.getItem().getLinksFrom(), LinkTypeConstants.RUN_AS, Application.RESOURCE_TYPE) //
+        ).collect(Collectors.toList()));
+        List<String> applicationIds = findLinkedIds(unixUserBucket.getItem().getLinksFrom(), LinkTypeConstants.RUN_AS, Application.RESOURCE_TYPE).collect(Collectors.toList());
+        prefetcher.fetch(applicationIds.stream() //
+                .map(applicationId -> prefetcher.get(applicationId, "Application")) //
+                .flatMap(applicationBucket -> findLinkedIds(applicationBucket.getLinksTo(), LinkTypeConstants.INSTALLED_ON, Machine.RESOURCE_TYPE)) //
+                .collect(Collectors.toList()));
+        prefetcher.fetch(applicationIds.stream() //
+                .map(applicationId -> prefetcher.get(applicationId, "Application")) //
+                .filter(applicationBucket -> findLinkedIds(applicationBucket.getLinksTo(), LinkTypeConstants.INSTALLED_ON, Machine.RESOURCE_TYPE) //
+                        .map(machineId -> InfraResourceUtils.getResourceName(prefetcher.get(machineId, "Machine").getResourceDetails())) //
+                        .anyMatch(machineName -> StringTools.safeEquals(machineName, sourceHostname))) //
+                .map(applicationBucket -> applicationBucket.getLinksFrom().stream() //
+                        .filter(it -> StringTools.safeEquals(it.getLinkType(), LinkTypeConstants.MANAGES)) //
+                        .collect(Collectors.toList())) //
+                .filter(managedBy -> managedBy.size() == 1 && INSTALLABLE_APPLICATION_TYPES.contains(managedBy.get(0).getOtherResource().getResourceType())) //
+                .map(managedBy -> InfraResourceUtils.getResourceId(managedBy.get(0).getOtherResource())) //
+                .collect(Collectors.toList()));
+
+        ResourceProjections projections = new ResourceProjections();
         UnixUser unixUser = InfraResourceUtils.resourceDetailsToResource(unixUserBucket.getItem().getResourceDetails(), UnixUser.class);
         List<String> unixUserAlreadyInstalledOnMachinesNames = unixUserBucket.getItem().getLinksTo().stream() //
                 .filter(it -> StringTools.safeEquals(it.getLinkType(), LinkTypeConstants.INSTALLED_ON)) //
                 .filter(it -> StringTools.safeEquals(it.getOtherResource().getResourceType(), Machine.RESOURCE_TYPE)) //
-                .map(it -> InfraResourceUtils.resourceDetailsToResource(it.getOtherResource(), Machine.class).getInternalId()) //
-                .map(machineInternalId -> {
-                    ResponseResourceBucket machineBucket = infraResourceApiService.resourceFindById(machineInternalId);
-                    if (!machineBucket.isSuccess() || machineBucket.getItem() == null) {
-                        throw new CliException("Could not get the Machine: " + JsonTools.compactPrint(machineBucket));
-                    }
-
-                    return JsonTools.clone(machineBucket.getItem().getResourceDetails().getResource(), Machine.class).getName();
-                }) //
+                .map(it -> InfraResourceUtils.getResourceId(it.getOtherResource())) //
+                .map(machineInternalId -> projections.get(prefetcher.get(machineInternalId, "Machine").getResourceDetails(), Machine.class).getName()) //
                 .sorted() //
                 .collect(Collectors.toList());
 
@@ -254,18 +287,8 @@ public class MoveService extends AbstractBasics {
         }
 
         // Check the applications that are using that unix user
-        List<ResourceBucket> applicationsUsingTheUnixUserBucket = unixUserBucket.getItem().getLinksFrom().stream() //
-                .filter(it -> StringTools.safeEquals(it.getLinkType(), LinkTypeConstants.RUN_AS)) //
-                .filter(it -> StringTools.safeEquals(it.getOtherResource().getResourceType(), Application.RESOURCE_TYPE)) //
-                .map(it -> InfraResourceUtils.resourceDetailsToResource(it.getOtherResource(), Application.class).getInternalId()) //
-                .map(applicationInternalId -> {
-                    ResponseResourceBucket applicationBucket = infraResourceApiService.resourceFindById(applicationInternalId);
-                    if (!applicationBucket.isSuccess() || applicationBucket.getItem() == null) {
-                        throw new CliException("Could not get the Application: " + JsonTools.compactPrint(applicationBucket));
-                    }
-
-                    return applicationBucket.getItem();
-                }) //
+        List<ResourceBucket> applicationsUsingTheUnixUserBucket = applicationIds.stream() //
+                .map(applicationInternalId -> prefetcher.get(applicationInternalId, "Application")) //
                 .sorted((a, b) -> {
                     String aName = ((Map<String, String>) a.getResourceDetails().getResource()).get("name");
                     String bName = ((Map<String, String>) b.getResourceDetails().getResource()).get("name");
@@ -281,7 +304,7 @@ public class MoveService extends AbstractBasics {
         List<ResourceDetails> installableResourceDetails = new ArrayList<>();
         while (applicationIt.hasNext()) {
             ResourceBucket applicationBucket = applicationIt.next();
-            Application application = InfraResourceUtils.resourceDetailsToResource(applicationBucket.getResourceDetails(), Application.class);
+            Application application = projections.get(applicationBucket.getResourceDetails(), Application.class);
 
             System.out.println("\t" + application.getName() + " (owner: " + InfraResourceUtils.getOwner(application) + ")");
 
@@ -289,15 +312,8 @@ public class MoveService extends AbstractBasics {
             List<String> installedOnMachinesNames = applicationBucket.getLinksTo().stream() //
                     .filter(it -> StringTools.safeEquals(it.getLinkType(), LinkTypeConstants.INSTALLED_ON)) //
                     .filter(it -> StringTools.safeEquals(it.getOtherResource().getResourceType(), Machine.RESOURCE_TYPE)) //
-                    .map(it -> InfraResourceUtils.resourceDetailsToResource(it.getOtherResource(), Machine.class).getInternalId()) //
-                    .map(machineInternalId -> {
-                        ResponseResourceBucket machineBucket = infraResourceApiService.resourceFindById(machineInternalId);
-                        if (!machineBucket.isSuccess() || machineBucket.getItem() == null) {
-                            throw new CliException("Could not get the Machine: " + JsonTools.compactPrint(machineBucket));
-                        }
-
-                        return InfraResourceUtils.resourceDetailsToResource(machineBucket.getItem().getResourceDetails(), Machine.class).getName();
-                    }) //
+                    .map(it -> InfraResourceUtils.getResourceId(it.getOtherResource())) //
+                    .map(machineInternalId -> projections.get(prefetcher.get(machineInternalId, "Machine").getResourceDetails(), Machine.class).getName()) //
                     .sorted() //
                     .collect(Collectors.toList());
             System.out.println("\t\tis installed on machines:");
@@ -330,12 +346,8 @@ public class MoveService extends AbstractBasics {
             ResourceDetails managedBy = applicationManagedBy.get(0);
             if (INSTALLABLE_APPLICATION_TYPES.contains(managedBy.getResourceType())) {
                 System.out.println("\t\t\t[OK] Resource Type: " + managedBy.getResourceType());
-                ResponseResourceBucket responseResourceBucket = infraResourceApiService.resourceFindById(((Map<String, String>) managedBy.getResource()).get("internalId"));
-                if (!responseResourceBucket.isSuccess() || responseResourceBucket.getItem() == null) {
-                    throw new CliException("Could not get the managed by details: " + JsonTools.compactPrint(responseResourceBucket));
-                }
-
-                installableResourceDetails.add(responseResourceBucket.getItem().getResourceDetails());
+                ResourceBucket managedByBucket = prefetcher.get(((Map<String, String>) managedBy.getResource()).get("internalId"), "managed by details");
+                installableResourceDetails.add(managedByBucket.getResourceDetails());
                 continue;
             }
 
@@ -422,18 +434,24 @@ public class MoveService extends AbstractBasics {
             throw new CliException("Could not get the Domain: " + JsonTools.compactPrint(domainBucket));
         }
 
-        List<ResourceBucket> websitesForDomain = domainBucket.getItem().getLinksFrom().stream() //
-                .filter(it -> StringTools.safeEquals(it.getLinkType(), LinkTypeConstants.MANAGES)) //
-                .filter(it -> StringTools.safeEquals(it.getOtherResource().getResourceType(), Website.RESOURCE_TYPE)) //
-                .map(it -> InfraResourceUtils.resourceDetailsToResource(it.getOtherResource(), Website.class).getInternalId()) //
-                .map(websiteInternalId -> {
-                    ResponseResourceBucket websiteBucket = infraResourceApiService.resourceFindById(websiteInternalId);
-                    if (!websiteBucket.isSuccess() || websiteBucket.getItem() == null) {
-                        throw new CliException("Could not get the Website: " + JsonTools.compactPrint(websiteBucket));
+        // Prefetch the websites, then the url redirections of the managed websites and the applications of the others
+        ResourcePrefetcher prefetcher = new ResourcePrefetcher(infraResourceApiService, executionService.getApi(), prefetchThreads);
+        List<String> websiteIds = findLinkedIds(domainBucket.getItem().getLinksFrom(), LinkTypeConstants.MANAGES, Website.RESOURCE_TYPE).collect(Collectors.toList());
+        prefetcher.fetch(websiteIds);
+        prefetcher.fetch(websiteIds.stream() //
+                .map(websiteId -> prefetcher.get(websiteId, "Website")) //
+                .flatMap(website -> {
+                    if (website.getLinksFrom().stream().anyMatch(l -> StringTools.safeEquals(LinkTypeConstants.MANAGES, l.getLinkType()))) {
+                        return findLinkedIds(website.getLinksFrom(), LinkTypeConstants.MANAGES, UrlRedirection.RESOURCE_TYPE);
+                    } else {
+                        return findLinkedIds(website.getLinksTo(), LinkTypeConstants.POINTS_TO, Application.RESOURCE_TYPE);
                     }
-
-                    return websiteBucket.getItem();
                 }) //
+                .collect(Collectors.toList()));
+
+        ResourceProjections projections = new ResourceProjections();
+        List<ResourceBucket> websitesForDomain = websiteIds.stream() //
+                .map(websiteInternalId -> prefetcher.get(websiteInternalId, "Website")) //
                 .collect(Collectors.toList());
 
         // Separate websites and get the applications
@@ -449,7 +467,7 @@ public class MoveService extends AbstractBasics {
                 indirectWebsites.add(website);
 
                 // Get the UrlRedirections
-                Website websiteResource = InfraResourceUtils.resourceDetailsToResource(website.getResourceDetails(), Website.class);
+                Website websiteResource = projections.get(website.getResourceDetails(), Website.class);
 
                 website.getLinksFrom().stream() //
                         .filter(it -> StringTools.safeEquals(it.getLinkType(), LinkTypeConstants.MANAGES)) //
@@ -459,15 +477,8 @@ public class MoveService extends AbstractBasics {
                                         "The website " + websiteResource.getName() + " is not managed by a known resource type. It is managed by " + it.getOtherResource().getResourceType());
                             }
                         }) //
-                        .map(it -> InfraResourceUtils.resourceDetailsToResource(it.getOtherResource(), UrlRedirection.class).getInternalId()) //
-                        .map(urlRedirectionInternalId -> {
-                            ResponseResourceBucket urlRedirectionBucket = infraResourceApiService.resourceFindById(urlRedirectionInternalId);
-                            if (!urlRedirectionBucket.isSuccess() || urlRedirectionBucket.getItem() == null) {
-                                throw new CliException("Could not get the UrlRedirection: " + JsonTools.compactPrint(urlRedirectionBucket));
-                            }
-
-                            return urlRedirectionBucket.getItem();
-                        }) //
+                        .map(it -> InfraResourceUtils.getResourceId(it.getOtherResource())) //
+                        .map(urlRedirectionInternalId -> prefetcher.get(urlRedirectionInternalId, "UrlRedirection")) //
                         .forEach(it -> urlRedirections.add(it));
 
             } else {
@@ -478,15 +489,8 @@ public class MoveService extends AbstractBasics {
                 website.getLinksTo().stream() //
                         .filter(it -> StringTools.safeEquals(it.getLinkType(), LinkTypeConstants.POINTS_TO)) //
                         .filter(it -> StringTools.safeEquals(it.getOtherResource().getResourceType(), Application.RESOURCE_TYPE))
-                        .map(it -> InfraResourceUtils.resourceDetailsToResource(it.getOtherResource(), Application.class).getInternalId()) //
-                        .map(applicationInternalId -> {
-                            ResponseResourceBucket applicationBucket = infraResourceApiService.resourceFindById(applicationInternalId);
-                            if (!applicationBucket.isSuccess() || applicationBucket.getItem() == null) {
-                                throw new CliException("Could not get the Application: " + JsonTools.compactPrint(applicationBucket));
-                            }
-
-                            return applicationBucket.getItem();
-                        }) //
+                        .map(it -> InfraResourceUtils.getResourceId(it.getOtherResource())) //
+                        .map(applicationInternalId -> prefetcher.get(applicationInternalId, "Application")) //
                         .forEach(it -> applications.add(it));
             }
 
@@ -539,7 +543,7 @@ public class MoveService extends AbstractBasics {
                     .collect(Collectors.toList());
 
             if (currentlyInstalledOn.equals(applicationInstalledOn)) {
-                Website website = InfraResourceUtils.resourceDetailsToResource(websiteBucket.getResourceDetails(), Website.class);
+                Website website = projections.get(websiteBucket.getResourceDetails(), Website.class);
                 System.out.println("[SKIP] " + website.getName() + " is already in the desired final state");
                 return true;
             }
@@ -564,7 +568,7 @@ public class MoveService extends AbstractBasics {
                 RequestChanges changes = new RequestChanges();
                 changes.setDefaultOwner(owner);
                 websites.forEach(websiteBucket -> {
-                    Website website = InfraResourceUtils.resourceDetailsToResource(websiteBucket.getResourceDetails(), Website.class);
+                    Website website = projections.get(websiteBucket.getResourceDetails(), Website.class);
                     System.out.println("\t" + website.getName());
 
                     List<String> currentlyInstalledOn = websiteBucket.getLinksTo().stream() //
@@ -13,9 +13,13 @@ import java.io.File;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.PostConstruct;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
 import com.foilen.infra.api.service.InfraApiService;
@@ -23,6 +27,7 @@ import com.foilen.infra.api.service.InfraApiServiceImpl;
 import com.foilen.infra.cli.CliException;
 import com.foilen.infra.cli.model.profile.AbstractProfile;
 import com.foilen.infra.cli.model.profile.ApiProfile;
+import com.foilen.infra.cli.model.profile.ReplayProfile;
 import com.foilen.smalltools.JavaEnvironmentValues;
 import com.foilen.smalltools.reflection.ReflectionTools;
 import com.foilen.smalltools.tools.AbstractBasics;
@@ -30,17 +35,56 @@ import com.foilen.smalltools.tools.DirectoryTools;
 import com.foilen.smalltools.tools.FileTools;
 import com.foilen.smalltools.tools.JsonTools;
 import com.foilen.smalltools.tools.SystemTools;
+import com.google.common.util.concurrent.RateLimiter;
 
 @Component
 public class ProfileService extends AbstractBasics {
 
+    @Autowired
+    private ApiLimitsService apiLimitsService;
+    @Autowired
+    private ApiStatsService apiStatsService;
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+    @Autowired
+    private ExecutionService executionService;
+
+    @Value("${infra.api.keepAlive:true}")
+    private boolean apiKeepAlive;
+    @Value("${infra.api.maxConnectionsPerRoute:20}")
+    private int apiMaxConnectionsPerRoute;
+    @Value("${infra.api.findByIdResultTtlMs:5000}")
+    private long apiFindByIdResultTtlMs;
+
     private String directoryPath;
 
+    private final Map<String, InfraApiService> infraApiServiceByProfileName = new ConcurrentHashMap<>();
+
     private AbstractProfile source;
     private AbstractProfile target;
 
     public void add(String profileName, AbstractProfile profile) {
         JsonTools.writeToFile(directoryPath + profileName, profile);
+        infraApiServiceByProfileName.remove(profileName);
+    }
+
+    private void configureHttpKeepAlive() {
+        // The JVM connections cache and the HTTP clients using the system properties both rely on these. Do not override what the user explicitly set
+        if (System.getProperty("http.keepAlive") == null) {
+            System.setProperty("http.keepAlive", String.valueOf(apiKeepAlive));
+        }
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(apiMaxConnectionsPerRoute));
+        }
+        logger.info("HTTP keep-alive: {} ; max connections per route: {}", System.getProperty("http.keepAlive"), System.getProperty("http.maxConnections"));
+    }
+
+    private InfraApiService createInfraApiService(ApiProfile apiProfile) {
+        if (apiProfile instanceof ReplayProfile) {
+            ReplayProfile replayProfile = (ReplayProfile) apiProfile;
+            return ReplayApiHandler.createInfraApiService(replayProfile.getReplayDirectory(), replayProfile.getLatencyMs());
+        }
+        return new InfraApiServiceImpl(apiProfile.getInfraBaseUrl(), apiProfile.getApiUser(), apiProfile.getApiKey());
     }
 
     @PostConstruct
@@ -52,11 +96,22 @@ public class ProfileService extends AbstractBasics {
             throw new CliException("Could not create the profiles directory " + directoryPath);
         }
 
+        configureHttpKeepAlive();
+
         // Load last used profiles
         loadUsedProfiles();
 
     }
 
+    /**
+     * The directory of the profiles and of the other files kept between the invocations.
+     *
+     * @return the path ending with a separator
+     */
+    public String getDirectoryPath() {
+        return directoryPath;
+    }
+
     public InfraApiService getInfraApiService(AbstractProfile profile, String type) {
         if (profile == null) {
             throw new CliException("No " + type + " profile set");
@@ -66,7 +121,57 @@ public class ProfileService extends AbstractBasics {
         }
 
         ApiProfile apiProfile = (ApiProfile) profile;
-        return new InfraApiServiceImpl(apiProfile.getInfraBaseUrl(), apiProfile.getApiUser(), apiProfile.getApiKey());
+        String profileName = apiProfile.getProfileName();
+        if (profileName == null) {
+            return wrapChangesNotifying(createInfraApiService(apiProfile), getServerKey(apiProfile));
+        }
+
+        // Keep one long-lived client per profile to reuse its kept-alive connections
+        return infraApiServiceByProfileName.computeIfAbsent(profileName, name -> {
+            logger.info("Creating the Infra API client for profile {}", name);
+            InfraApiService infraApiService = createInfraApiService(apiProfile);
+            // Record the real calls (the ones not shared by the coalescing)
+            infraApiService = InfraApiProxyTools.wrapApiServices(infraApiService, (serviceType, service) -> InstrumentedApiHandler.wrap(serviceType, service, apiStatsService));
+            // Stay under what the server can take right now. Measured once it got a slot on the server
+            String serverKey = getServerKey(apiProfile);
+            AdaptiveConcurrencyLimit adaptiveConcurrencyLimit = apiLimitsService.getLimit(serverKey);
+            if (adaptiveConcurrencyLimit != null) {
+                infraApiService = InfraApiProxyTools.wrapApiServices(infraApiService,
+                        (serviceType, service) -> AdaptiveLimitApiHandler.wrap(serviceType, service, adaptiveConcurrencyLimit, null));
+            }
+            // Wait for a free slot on the server outside of the measured calls
+            infraApiService = InfraApiProxyTools.wrapApiServices(infraApiService,
+                    (serviceType, service) -> LimitedApiHandler.wrap(serviceType, service, executionService.getApiLimiter(), serverKey));
+            // Stay under the cap of the profile without holding a slot
+            if (apiProfile.getMaxRequestsPerSecond() != null) {
+                RateLimiter rateLimiter = RateLimiter.create(apiProfile.getMaxRequestsPerSecond());
+                infraApiService = InfraApiProxyTools.wrapApiServices(infraApiService, (serviceType, service) -> AdaptiveLimitApiHandler.wrap(serviceType, service, null, rateLimiter));
+            }
+            if (apiProfile.getRecordDirectory() != null) {
+                logger.info("Recording the calls of profile {} in {}", name, apiProfile.getRecordDirectory());
+                infraApiService = InfraApiProxyTools.wrapApiServices(infraApiService,
+                        (serviceType, service) -> RecordingApiHandler.wrap(serviceType, service, apiProfile.getRecordDirectory()));
+            }
+            infraApiService = InfraApiProxyTools.wrapResourceApiService(infraApiService, it -> CoalescingInfraResourceApiHandler.wrap(it, apiFindByIdResultTtlMs));
+            return wrapChangesNotifying(infraApiService, serverKey);
+        });
+    }
+
+    /**
+     * Tells which Infra API a profile uses. Profiles with different names can use the same one.
+     *
+     * @param profile
+     *            the profile
+     * @return the base URL, the replay directory or the type of profile
+     */
+    public String getServerKey(AbstractProfile profile) {
+        if (profile instanceof ReplayProfile) {
+            return "replay:" + ((ReplayProfile) profile).getReplayDirectory();
+        }
+        if (profile instanceof ApiProfile) {
+            return ((ApiProfile) profile).getInfraBaseUrl();
+        }
+        return profile.getClass().getSimpleName();
     }
 
     public AbstractProfile getSource() {
@@ -127,6 +232,13 @@ public class ProfileService extends AbstractBasics {
         return getInfraApiService(target, "target");
     }
 
+    private void invalidateInfraApiService(AbstractProfile profile) {
+        if (profile == null || profile.getProfileName() == null) {
+            return;
+        }
+        infraApiServiceByProfileName.remove(profile.getProfileName());
+    }
+
     public List<String> list() {
         return DirectoryTools.listOnlyFileNames(directoryPath);
     }
@@ -180,8 +292,10 @@ public class ProfileService extends AbstractBasics {
         String type = (String) map.get("type");
         Class<?> classType = ReflectionTools.safelyGetClass(type);
         if (AbstractProfile.class.isAssignableFrom(classType)) {
+            invalidateInfraApiService(source);
             source = (AbstractProfile) JsonTools.readFromFile(directoryPath + profileName, classType);
             source.setProfileName(profileName);
+            invalidateInfraApiService(source);
             saveUsedProfiles();
         }
     }
@@ -192,10 +306,17 @@ public class ProfileService extends AbstractBasics {
         String type = (String) map.get("type");
         Class<?> classType = ReflectionTools.safelyGetClass(type);
         if (AbstractProfile.class.isAssignableFrom(classType)) {
+            invalidateInfraApiService(target);
             target = (AbstractProfile) JsonTools.readFromFile(directoryPath + profileName, classType);
             target.setProfileName(profileName);
+            invalidateInfraApiService(target);
             saveUsedProfiles();
         }
     }
 
+    private InfraApiService wrapChangesNotifying(InfraApiService infraApiService, String serverKey) {
+        // Outside of all the others to tell what changed only once per call
+        return InfraApiProxyTools.wrapResourceApiService(infraApiService, it -> ChangesNotifyingInfraResourceApiHandler.wrap(it, serverKey, applicationEventPublisher));
+    }
+
 }
@@ -0,0 +1,109 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.ApiRecordedCall;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.DirectoryTools;
+import com.foilen.smalltools.tools.JsonTools;
+
+/**
+ * Saves all the calls to an API service and their results in a directory to be served back later by {@link ReplayApiHandler}. There is one file per call (service, method and arguments) with all the
+ * different results received in order.
+ */
+public class RecordingApiHandler extends AbstractBasics implements InvocationHandler {
+
+    /**
+     * Get the file where a call is recorded.
+     *
+     * @param directory
+     *            the recording directory
+     * @param typeName
+     *            the simple name of the service
+     * @param method
+     *            the method
+     * @param args
+     *            the arguments
+     * @return the file
+     */
+    public static File getRecordingFile(String directory, String typeName, Method method, Object[] args) {
+        String argumentsJson = JsonTools.compactPrint(args == null ? new Object[0] : args);
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(argumentsJson.getBytes(StandardCharsets.UTF_8));
+            StringBuilder fileName = new StringBuilder();
+            fileName.append(typeName).append('.').append(method.getName()).append('-');
+            for (int i = 0; i < 8; ++i) {
+                fileName.append(String.format("%02x", hash[i]));
+            }
+            fileName.append(".json");
+            return new File(directory, fileName.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new CliException("Could not hash the arguments", e);
+        }
+    }
+
+    public static Object wrap(Class<?> type, Object target, String directory) {
+        if (!DirectoryTools.createPath(directory)) {
+            throw new CliException("Could not create the record directory " + directory);
+        }
+        return InfraApiProxyTools.proxy(type, new RecordingApiHandler(type, target, directory));
+    }
+
+    private final String typeName;
+    private final Object target;
+    private final String directory;
+
+    private final Map<File, ApiRecordedCall> recordedCallByFile = new ConcurrentHashMap<>();
+
+    public RecordingApiHandler(Class<?> type, Object target, String directory) {
+        this.typeName = type.getSimpleName();
+        this.target = target;
+        this.directory = directory;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        Object result = InfraApiProxyTools.invoke(target, method, args);
+        if (method.getDeclaringClass() == Object.class) {
+            return result;
+        }
+
+        File file = getRecordingFile(directory, typeName, method, args);
+        ApiRecordedCall recordedCall = recordedCallByFile.computeIfAbsent(file, f -> new ApiRecordedCall() //
+                .setService(typeName) //
+                .setMethod(method.getName()) //
+                .setArguments(args));
+        synchronized (recordedCall) {
+            // Only keep the results that changed
+            List<Object> results = recordedCall.getResults();
+            String resultJson = JsonTools.compactPrint(result);
+            if (results.isEmpty() || !resultJson.equals(JsonTools.compactPrint(results.get(results.size() - 1)))) {
+                results.add(result);
+                logger.debug("Recording {}.{} in {}", typeName, method.getName(), file);
+                JsonTools.writeToFile(file.getAbsolutePath(), recordedCall);
+            }
+        }
+
+        return result;
+    }
+
+}
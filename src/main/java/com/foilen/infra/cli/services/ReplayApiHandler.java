@@ -0,0 +1,104 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.foilen.infra.api.service.InfraApiService;
+import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.ApiRecordedCall;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.JsonTools;
+import com.foilen.smalltools.tools.ThreadTools;
+import com.foilen.smalltools.tuple.Tuple2;
+
+/**
+ * Serves the calls saved by {@link RecordingApiHandler} after waiting the simulated latency. When the same call was recorded with different results, they are served in order and the last one stays.
+ */
+public class ReplayApiHandler extends AbstractBasics implements InvocationHandler {
+
+    /**
+     * Get an {@link InfraApiService} that replays all its sub-services from the directory.
+     *
+     * @param directory
+     *            the recording directory
+     * @param latencyMs
+     *            the time to wait on each call
+     * @return the service
+     */
+    public static InfraApiService createInfraApiService(String directory, long latencyMs) {
+        if (!new File(directory).isDirectory()) {
+            throw new CliException("The replay directory " + directory + " does not exist");
+        }
+        Map<Method, Object> serviceByMethod = new ConcurrentHashMap<>();
+        return InfraApiProxyTools.proxy(InfraApiService.class, (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            if (method.getParameterCount() == 0 && returnType.isInterface() && method.getName().startsWith("get") && method.getName().endsWith("ApiService")) {
+                return serviceByMethod.computeIfAbsent(method, m -> InfraApiProxyTools.proxy(returnType, new ReplayApiHandler(returnType, directory, latencyMs)));
+            }
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Replay of " + directory;
+            }
+            throw new CliException("Cannot replay " + method.getName());
+        });
+    }
+
+    private final String typeName;
+    private final String directory;
+    private final long latencyMs;
+
+    // file -> (recorded call, next result)
+    private final Map<File, Tuple2<ApiRecordedCall, AtomicInteger>> recordedCallByFile = new ConcurrentHashMap<>();
+
+    public ReplayApiHandler(Class<?> type, String directory, long latencyMs) {
+        this.typeName = type.getSimpleName();
+        this.directory = directory;
+        this.latencyMs = latencyMs;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+
+        File file = RecordingApiHandler.getRecordingFile(directory, typeName, method, args);
+        Tuple2<ApiRecordedCall, AtomicInteger> recordedCall = recordedCallByFile.computeIfAbsent(file, f -> {
+            if (!f.exists()) {
+                return null;
+            }
+            return new Tuple2<>(JsonTools.readFromFile(f.getAbsolutePath(), ApiRecordedCall.class), new AtomicInteger());
+        });
+        if (recordedCall == null || recordedCall.getA().getResults().isEmpty()) {
+            throw new CliException("There is no recorded call for " + typeName + "." + method.getName() + " with arguments " + JsonTools.compactPrint(args) + " (" + file + ")");
+        }
+
+        if (latencyMs > 0) {
+            ThreadTools.sleep(latencyMs);
+        }
+
+        List<Object> results = recordedCall.getA().getResults();
+        int index = Math.min(recordedCall.getB().getAndIncrement(), results.size() - 1);
+        return JsonTools.readFromString(JsonTools.compactPrint(results.get(index)), method.getReturnType());
+    }
+
+}
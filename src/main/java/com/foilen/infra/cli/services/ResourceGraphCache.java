@@ -0,0 +1,308 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.foilen.infra.api.model.audit.AuditItemSmall;
+import com.foilen.infra.api.model.audit.AuditItemSmallWithPagination;
+import com.foilen.infra.api.model.resource.ResourceBucket;
+import com.foilen.infra.api.model.resource.ResourceDetailsSmall;
+import com.foilen.infra.api.request.RequestResourceSearch;
+import com.foilen.infra.api.response.ResponseResourceAppliedChanges;
+import com.foilen.infra.api.response.ResponseResourceBucket;
+import com.foilen.infra.api.response.ResponseResourceBuckets;
+import com.foilen.infra.api.response.ResponseResourceTypesDetails;
+import com.foilen.infra.api.service.InfraResourceApiService;
+import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.ResourceGraph;
+import com.foilen.infra.cli.model.profile.AbstractProfile;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.SecureRandomTools;
+import com.foilen.smalltools.tools.TimeConverterTools;
+import com.foilen.smalltools.tuple.Tuple2;
+
+/**
+ * Keeps a snapshot of all the resources per profile to avoid downloading the same resources over and over. The resources touched by the changes applied on the Infra API of a profile (by any
+ * command, see {@link ChangesNotifyingInfraResourceApiHandler}) are fetched again when the graph is needed.
+ */
+@Component
+public class ResourceGraphCache extends AbstractBasics {
+
+    /**
+     * The resources changed since the graph was loaded or refreshed. Only modified while in {@link ConcurrentHashMap#compute}.
+     */
+    private static class Stale {
+        private final Set<String> ids = new HashSet<>();
+        private final Set<String> types = new HashSet<>();
+        private String txId;
+    }
+
+    @Autowired
+    private DisplayService displayService;
+    @Autowired
+    private ExecutionService executionService;
+    @Autowired
+    private ProfileService profileService;
+    @Autowired
+    private ResourceGraphSnapshotService resourceGraphSnapshotService;
+
+    @Value("${infra.cache.ttlSeconds:300}")
+    private long ttlSeconds;
+    @Value("${infra.cache.loadThreads:5}")
+    private int loadThreads;
+    @Value("${infra.cache.maxPatchedResources:500}")
+    private int maxPatchedResources;
+
+    private final Map<String, ResourceGraph> graphByProfileName = new ConcurrentHashMap<>();
+    private final Map<String, Stale> staleByProfileName = new ConcurrentHashMap<>();
+    private final Map<String, String> serverKeyByProfileName = new ConcurrentHashMap<>();
+
+    public synchronized ResourceGraph get(AbstractProfile profile, String type) {
+        if (profile == null) {
+            throw new CliException("No " + type + " profile set");
+        }
+
+        String profileName = profile.getProfileName();
+        String serverKey = profileService.getServerKey(profile);
+        serverKeyByProfileName.put(profileName, serverKey);
+        ResourceGraph graph = graphByProfileName.get(profileName);
+        if (graph != null && !graph.isExpired(ttlSeconds * 1000L)) {
+            Stale stale = staleByProfileName.remove(profileName);
+            if (stale != null) {
+                try {
+                    graph = refresh(profile, type, graph, stale);
+                } catch (RuntimeException e) {
+                    logger.warn("Could not update the cached resources. Reloading them", e);
+                    graph = null;
+                }
+                if (graph == null) {
+                    forget(profileName);
+                } else {
+                    graphByProfileName.put(profileName, graph);
+                    resourceGraphSnapshotService.save(profile, graph, stale.txId);
+                }
+            }
+        }
+        if (graph == null || graph.isExpired(ttlSeconds * 1000L)) {
+            // What changed until now will be in the new one
+            staleByProfileName.remove(profileName);
+            // Another invocation might have saved it
+            graph = resourceGraphSnapshotService.load(profile, ttlSeconds * 1000L);
+            if (graph == null) {
+                // The changes applied after this point will not match the saved transaction id
+                String lastTxId = resourceGraphSnapshotService.getLastTxId(serverKey);
+                graph = load(profile, type);
+                resourceGraphSnapshotService.save(profile, graph, lastTxId);
+            } else {
+                displayService.display("Using the saved snapshot of the " + type + " profile " + profile.getProfileName() + " with " + graph.size() + " resources");
+            }
+            graphByProfileName.put(profileName, graph);
+        }
+        return graph;
+    }
+
+    public ResourceGraph getSource() {
+        return get(profileService.getSource(), "source");
+    }
+
+    public ResourceGraph getTarget() {
+        return get(profileService.getTarget(), "target");
+    }
+
+    private ResourceGraph load(AbstractProfile profile, String type) {
+
+        displayService.display("Loading all the resources of the " + type + " profile " + profile.getProfileName());
+        long start = System.currentTimeMillis();
+
+        InfraResourceApiService infraResourceApiService = profileService.getInfraApiService(profile, type).getInfraResourceApiService();
+        ResponseResourceTypesDetails allTypes = infraResourceApiService.typeFindAll();
+        if (!allTypes.isSuccess()) {
+            throw new CliException(allTypes.getError());
+        }
+
+        List<ResourceBucket> resourceBuckets = new ArrayList<>();
+        StreamingWorkers.process(allTypes.getItems().iterator(), executionService.getApi(), loadThreads, resourceType -> {
+            ResponseResourceBuckets typeBuckets = infraResourceApiService.resourceFindAllWithDetails(new RequestResourceSearch().setResourceType(resourceType.getResourceType()));
+            if (!typeBuckets.isSuccess()) {
+                throw new CliException(typeBuckets.getError());
+            }
+            return typeBuckets.getItems();
+        }, resourceBuckets::addAll);
+
+        ResourceGraph graph = new ResourceGraph(profile.getProfileName(), resourceBuckets);
+        displayService.display("Loaded " + graph.size() + " resources in " + TimeConverterTools.convertToTextFromMs(System.currentTimeMillis() - start));
+        return graph;
+    }
+
+    private void markStale(String profileName, ResponseResourceAppliedChanges appliedChanges) {
+
+        ResourceGraph graph = graphByProfileName.get(profileName);
+        if (graph == null) {
+            resourceGraphSnapshotService.delete(profileName);
+            return;
+        }
+
+        AuditItemSmallWithPagination auditItems = appliedChanges == null ? null : appliedChanges.getAuditItems();
+        if (auditItems == null || auditItems.getItems() == null || auditItems.getPagination() == null || auditItems.getPagination().getTotalItems() > auditItems.getItems().size()) {
+            logger.info("Not all the changes are known. Forgetting the cached resources of {}", profileName);
+            forget(profileName);
+            return;
+        }
+
+        Set<String> staleIds = new HashSet<>();
+        Set<String> staleTypes = new HashSet<>();
+        for (AuditItemSmall auditItem : auditItems.getItems()) {
+            if (auditItem.getType() == null) {
+                continue;
+            }
+            switch (auditItem.getType()) {
+            case RESOURCE:
+                // The links of the neighbors contain a copy of the resource
+                for (ResourceDetailsSmall resource : Arrays.asList(auditItem.getResourceFirst(), auditItem.getResourceSecond())) {
+                    String resourceId = findUniqueId(graph, resource, staleTypes);
+                    if (resourceId != null) {
+                        staleIds.add(resourceId);
+                        staleIds.addAll(graph.findLinkedIds(resourceId));
+                    }
+                }
+                break;
+            case LINK:
+            case TAG:
+                // Both sides of a link have it in their bucket
+                for (ResourceDetailsSmall resource : Arrays.asList(auditItem.getResourceFirst(), auditItem.getResourceSecond())) {
+                    if (resource != null) {
+                        graph.findAllByName(resource.getResourceType(), resource.getResourceName()).forEach(it -> staleIds.add(InfraResourceUtils.getResourceId(it.getResourceDetails())));
+                    }
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+        staleByProfileName.compute(profileName, (name, current) -> {
+            Stale next = current == null ? new Stale() : current;
+            next.ids.addAll(staleIds);
+            next.types.addAll(staleTypes);
+            next.txId = appliedChanges.getTxId();
+            return next;
+        });
+
+        // The saved snapshot is not up to date anymore and is saved again once refreshed
+        resourceGraphSnapshotService.delete(profileName);
+    }
+
+    /**
+     * Mark the cached resources that the applied changes touched as stale in all the profiles using the changed Infra API. They are fetched again the next time the graph is needed. When it cannot
+     * tell what changed, the whole graph is forgotten and will be reloaded when needed.
+     *
+     * This is called after each batch of changes, so it only resolves the ids in the current graphs and does not call the API or wait for a graph being loaded.
+     *
+     * @param event
+     *            the changes
+     */
+    @EventListener
+    public void onAppliedChanges(AppliedChangesEvent event) {
+
+        // The snapshots of the profiles not loaded here will not be used anymore
+        ResponseResourceAppliedChanges appliedChanges = event.getAppliedChanges();
+        String txId = appliedChanges == null ? null : appliedChanges.getTxId();
+        resourceGraphSnapshotService.setLastTxId(event.getServerKey(), txId == null ? "unknown-" + SecureRandomTools.randomHexString(10) : txId);
+
+        serverKeyByProfileName.forEach((profileName, serverKey) -> {
+            if (serverKey.equals(event.getServerKey())) {
+                markStale(profileName, appliedChanges);
+            }
+        });
+    }
+
+    private void forget(String profileName) {
+        graphByProfileName.remove(profileName);
+        staleByProfileName.remove(profileName);
+        resourceGraphSnapshotService.delete(profileName);
+    }
+
+    /**
+     * Get the id of the resource when it is the only one with that name. Otherwise, the resource is new, renamed or has the same name as others, so its type must be reloaded.
+     */
+    private String findUniqueId(ResourceGraph graph, ResourceDetailsSmall resource, Set<String> staleTypes) {
+        if (resource == null) {
+            return null;
+        }
+        List<ResourceBucket> resourceBuckets = graph.findAllByName(resource.getResourceType(), resource.getResourceName());
+        if (resourceBuckets.size() != 1) {
+            staleTypes.add(resource.getResourceType());
+            return null;
+        }
+        return InfraResourceUtils.getResourceId(resourceBuckets.get(0).getResourceDetails());
+    }
+
+    private ResourceGraph refresh(AbstractProfile profile, String type, ResourceGraph graph, Stale stale) {
+
+        if (stale.ids.size() > maxPatchedResources) {
+            logger.info("{} resources changed. Reloading the cached resources instead of updating them", stale.ids.size());
+            return null;
+        }
+
+        // Get them
+        InfraResourceApiService infraResourceApiService = profileService.getInfraApiService(profile, type).getInfraResourceApiService();
+        Set<String> idsToFetch = new HashSet<>(stale.ids);
+        idsToFetch.removeIf(resourceId -> {
+            ResourceBucket resourceBucket = graph.findById(resourceId);
+            return resourceBucket != null && stale.types.contains(resourceBucket.getResourceDetails().getResourceType());
+        });
+        List<ResourceBucket> updatedBuckets = new ArrayList<>();
+        Set<String> removedIds = new HashSet<>();
+        StreamingWorkers.process(idsToFetch.iterator(), executionService.getApi(), loadThreads * 2, resourceId -> {
+            ResponseResourceBucket resourceBucket = infraResourceApiService.resourceFindById(resourceId);
+            if (!resourceBucket.isSuccess()) {
+                throw new CliException(resourceBucket.getError());
+            }
+            return new Tuple2<>(resourceId, resourceBucket.getItem());
+        }, result -> {
+            if (result.getB() == null) {
+                removedIds.add(result.getA());
+            } else {
+                updatedBuckets.add(result.getB());
+            }
+        });
+        for (String resourceType : stale.types) {
+            ResponseResourceBuckets typeBuckets = infraResourceApiService.resourceFindAllWithDetails(new RequestResourceSearch().setResourceType(resourceType));
+            if (!typeBuckets.isSuccess()) {
+                throw new CliException(typeBuckets.getError());
+            }
+            updatedBuckets.addAll(typeBuckets.getItems());
+        }
+
+        logger.info("Updated the cached resources: {} refreshed ; {} removed ; {} types reloaded", updatedBuckets.size(), removedIds.size(), stale.types.size());
+        return graph.patch(updatedBuckets, removedIds, stale.types);
+    }
+
+    public ResourceGraph refreshTarget() {
+        AbstractProfile target = profileService.getTarget();
+        if (target != null) {
+            forget(target.getProfileName());
+        }
+        return getTarget();
+    }
+
+}
@@ -0,0 +1,431 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.foilen.infra.api.model.resource.PartialLinkDetails;
+import com.foilen.infra.api.model.resource.ResourceBucket;
+import com.foilen.infra.api.model.resource.ResourceDetails;
+import com.foilen.infra.cli.model.ResourceGraph;
+import com.foilen.infra.cli.model.profile.AbstractProfile;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.DirectoryTools;
+import com.foilen.smalltools.tools.JsonTools;
+import com.google.common.hash.Hashing;
+
+/**
+ * Saves the resource graph of a profile on disk so the next invocations of the CLI (e.g. a script running many non-interactive commands) start with it instead of downloading everything again.
+ *
+ * The file is in ~/.foilenInfra/snapshots/ and is memory-mapped when read. Its format is:
+ *
+ * <pre>
+ * int     magic
+ * int     format version
+ * string  the Infra API of the profile (a snapshot of another server is ignored)
+ * string  the last transaction id included (empty when none was applied yet)
+ * long    loaded at (the cache expiration still applies)
+ * int     amount of link types, then each link type
+ * int     amount of resources, then for each: byte 1 if part of the graph or 0 if only the other side of a link ; string the bucket without its links as JSON
+ * int     amount of links, then for each: int from resource ; int link type ; int to resource
+ * </pre>
+ *
+ * The last transaction id applied on each Infra API by any invocation is kept next to it in a .txid file named after the Infra API and a snapshot that does not include it is not used.
+ *
+ * The strings are an int length followed by the UTF-8 bytes. Each link is kept once and the buckets on both sides share the same resource details.
+ *
+ * Only the framing and the links are binary. Each resource is one JSON string and all of them are parsed when the snapshot is loaded, so loading costs about the same as parsing the JSON of all the
+ * resources. It saves the calls to the Infra API, not the parsing, and the whole graph is in memory once loaded.
+ */
+@Component
+public class ResourceGraphSnapshotService extends AbstractBasics {
+
+    private static class PendingSave {
+
+        private final AbstractProfile profile;
+        private final ResourceGraph graph;
+        private final String txId;
+
+        private PendingSave(AbstractProfile profile, ResourceGraph graph, String txId) {
+            this.profile = profile;
+            this.graph = graph;
+            this.txId = txId;
+        }
+
+    }
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x46495347; // FISG
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Autowired
+    private ExecutionService executionService;
+    @Autowired
+    private ProfileService profileService;
+
+    @Value("${infra.cache.snapshot.enabled:false}")
+    private boolean enabled;
+    @Value("${infra.cache.snapshot.saveDelaySeconds:10}")
+    private int saveDelaySeconds;
+
+    private final Map<String, PendingSave> pendingSaveByProfileName = new ConcurrentHashMap<>();
+
+    /**
+     * Remove the snapshot of a profile and forget the one waiting to be saved.
+     *
+     * @param profileName
+     *            the name of the profile
+     */
+    public synchronized void delete(String profileName) {
+        if (!enabled || profileName == null) {
+            return;
+        }
+        pendingSaveByProfileName.remove(profileName);
+        File file = getFile(profileName);
+        if (file.exists() && !file.delete()) {
+            logger.warn("Could not delete the snapshot {}", file.getAbsolutePath());
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.debug("Could not delete {}", path, e);
+        }
+    }
+
+    /**
+     * Save the snapshots waiting to be saved now.
+     */
+    @PreDestroy
+    public void flush() {
+        new ArrayList<>(pendingSaveByProfileName.keySet()).forEach(this::savePending);
+    }
+
+    private File getDirectory() {
+        return new File(profileService.getDirectoryPath() + "snapshots");
+    }
+
+    private File getFile(String profileName) {
+        return new File(getDirectory(), profileName + ".bin");
+    }
+
+    /**
+     * Get the last transaction id applied on an Infra API by any invocation.
+     *
+     * @param serverKey
+     *            the Infra API
+     * @return the transaction id or null if none is known
+     */
+    public String getLastTxId(String serverKey) {
+        if (!enabled) {
+            return null;
+        }
+        File file = getTxIdFile(serverKey);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Could not read the last transaction id {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private File getTxIdFile(String serverKey) {
+        // The key is an URL or a path
+        return new File(getDirectory(), Hashing.sha256().hashString(serverKey, StandardCharsets.UTF_8).toString().substring(0, 16) + ".txid");
+    }
+
+    /**
+     * Load the snapshot of a profile.
+     *
+     * @param profile
+     *            the profile
+     * @param ttlMs
+     *            how long the snapshot is valid after its loading time
+     * @return the graph or null if disabled, missing, expired, older than the last applied changes or not usable
+     */
+    public ResourceGraph load(AbstractProfile profile, long ttlMs) {
+        if (!enabled || profile.getProfileName() == null) {
+            return null;
+        }
+        File file = getFile(profile.getProfileName());
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                logger.info("The snapshot {} is not in the current format. Ignoring it", file.getAbsolutePath());
+                return null;
+            }
+            if (!profileService.getServerKey(profile).equals(readString(buffer))) {
+                logger.info("The snapshot {} is of another Infra. Ignoring it", file.getAbsolutePath());
+                return null;
+            }
+            String txId = readString(buffer);
+            String lastTxId = getLastTxId(profileService.getServerKey(profile));
+            if (lastTxId != null && !lastTxId.equals(txId)) {
+                logger.info("The snapshot {} is at transaction {}, but the last one is {}. Ignoring it", file.getAbsolutePath(), txId.isEmpty() ? "none" : txId, lastTxId);
+                return null;
+            }
+            long loadedAt = buffer.getLong();
+            if (System.currentTimeMillis() - loadedAt > ttlMs) {
+                logger.info("The snapshot {} is expired. Ignoring it", file.getAbsolutePath());
+                return null;
+            }
+
+            String[] linkTypes = new String[buffer.getInt()];
+            for (int i = 0; i < linkTypes.length; ++i) {
+                linkTypes[i] = readString(buffer);
+            }
+
+            int resourceCount = buffer.getInt();
+            List<ResourceBucket> resourceBuckets = new ArrayList<>(resourceCount);
+            List<ResourceBucket> graphResourceBuckets = new ArrayList<>(resourceCount);
+            for (int i = 0; i < resourceCount; ++i) {
+                boolean inGraph = buffer.get() == 1;
+                ResourceBucket resourceBucket = JsonTools.readFromString(readString(buffer), ResourceBucket.class);
+                resourceBuckets.add(resourceBucket);
+                if (inGraph) {
+                    graphResourceBuckets.add(resourceBucket);
+                }
+            }
+
+            int linkCount = buffer.getInt();
+            for (int i = 0; i < linkCount; ++i) {
+                ResourceBucket from = resourceBuckets.get(buffer.getInt());
+                String linkType = linkTypes[buffer.getInt()];
+                ResourceBucket to = resourceBuckets.get(buffer.getInt());
+
+                PartialLinkDetails linkTo = new PartialLinkDetails();
+                linkTo.setLinkType(linkType);
+                linkTo.setOtherResource(to.getResourceDetails());
+                from.getLinksTo().add(linkTo);
+
+                PartialLinkDetails linkFrom = new PartialLinkDetails();
+                linkFrom.setLinkType(linkType);
+                linkFrom.setOtherResource(from.getResourceDetails());
+                to.getLinksFrom().add(linkFrom);
+            }
+
+            logger.info("Loaded the snapshot {} with {} resources (txId: {})", file.getAbsolutePath(), graphResourceBuckets.size(), txId.isEmpty() ? "none" : txId);
+            return new ResourceGraph(profile.getProfileName(), loadedAt, graphResourceBuckets);
+        } catch (Exception e) {
+            logger.warn("Could not read the snapshot {}. Ignoring it", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Save the graph of a profile in a little while. When it changes many times in a row (e.g. a command applying many batches), only the last one is written.
+     *
+     * @param profile
+     *            the profile
+     * @param graph
+     *            the graph
+     * @param txId
+     *            (optional) the last transaction id included in the graph
+     */
+    public void save(AbstractProfile profile, ResourceGraph graph, String txId) {
+        if (!enabled || profile.getProfileName() == null) {
+            return;
+        }
+        String profileName = profile.getProfileName();
+        if (pendingSaveByProfileName.put(profileName, new PendingSave(profile, graph, txId)) == null) {
+            // The scheduler only starts it since writing can be long
+            executionService.getScheduler().schedule(() -> executionService.getBackground().execute(() -> savePending(profileName)), saveDelaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void savePending(String profileName) {
+        PendingSave pendingSave = pendingSaveByProfileName.remove(profileName);
+        if (pendingSave != null) {
+            write(pendingSave.profile, pendingSave.graph, pendingSave.txId);
+        }
+    }
+
+    /**
+     * Keep the id of the last transaction applied on an Infra API so the snapshots of all the profiles using it that do not include it are not used.
+     *
+     * @param serverKey
+     *            the Infra API
+     * @param txId
+     *            the transaction id
+     */
+    public synchronized void setLastTxId(String serverKey, String txId) {
+        if (!enabled || txId == null) {
+            return;
+        }
+        File directory = getDirectory();
+        if (!DirectoryTools.createPath(directory.getAbsolutePath())) {
+            logger.warn("Could not create the snapshots directory {}", directory.getAbsolutePath());
+            return;
+        }
+        File file = getTxIdFile(serverKey);
+        Path tmpPath = null;
+        try {
+            tmpPath = Files.createTempFile(directory.toPath(), file.getName() + ".", ".tmp");
+            Files.writeString(tmpPath, txId, StandardCharsets.UTF_8);
+            Files.move(tmpPath, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save the last transaction id {}", file.getAbsolutePath(), e);
+            deleteQuietly(tmpPath);
+        }
+    }
+
+    /**
+     * Write the graph. Replaces the previous one at once, so another invocation never reads a partial file.
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized void write(AbstractProfile profile, ResourceGraph graph, String txId) {
+
+        File directory = getDirectory();
+        if (!DirectoryTools.createPath(directory.getAbsolutePath())) {
+            logger.warn("Could not create the snapshots directory {}", directory.getAbsolutePath());
+            return;
+        }
+
+        // Index the resources, then the other side of the links that are not in the graph
+        List<ResourceBucket> graphResourceBuckets = graph.findAll();
+        Map<String, Integer> indexById = new HashMap<>();
+        List<ResourceDetails> linkOnlyResources = new ArrayList<>();
+        graphResourceBuckets.forEach(resourceBucket -> indexById.put(InfraResourceUtils.getResourceId(resourceBucket.getResourceDetails()), indexById.size()));
+        for (ResourceBucket resourceBucket : graphResourceBuckets) {
+            for (List<PartialLinkDetails> bucketLinks : Arrays.asList(resourceBucket.getLinksTo(), resourceBucket.getLinksFrom())) {
+                for (PartialLinkDetails link : bucketLinks) {
+                    ResourceDetails otherResource = link.getOtherResource();
+                    if (indexById.putIfAbsent(InfraResourceUtils.getResourceId(otherResource), indexById.size()) == null) {
+                        linkOnlyResources.add(otherResource);
+                    }
+                }
+            }
+        }
+
+        // Both sides of a link are in both buckets, so each link is kept once
+        Map<String, Integer> indexByLinkType = new LinkedHashMap<>();
+        Set<List<Integer>> links = new LinkedHashSet<>();
+        for (ResourceBucket resourceBucket : graphResourceBuckets) {
+            int index = indexById.get(InfraResourceUtils.getResourceId(resourceBucket.getResourceDetails()));
+            for (PartialLinkDetails linkTo : resourceBucket.getLinksTo()) {
+                int linkTypeIndex = indexByLinkType.computeIfAbsent(linkTo.getLinkType(), k -> indexByLinkType.size());
+                links.add(Arrays.asList(index, linkTypeIndex, indexById.get(InfraResourceUtils.getResourceId(linkTo.getOtherResource()))));
+            }
+            for (PartialLinkDetails linkFrom : resourceBucket.getLinksFrom()) {
+                int linkTypeIndex = indexByLinkType.computeIfAbsent(linkFrom.getLinkType(), k -> indexByLinkType.size());
+                links.add(Arrays.asList(indexById.get(InfraResourceUtils.getResourceId(linkFrom.getOtherResource())), linkTypeIndex, index));
+            }
+        }
+
+        File file = getFile(profile.getProfileName());
+        Path tmpPath;
+        try {
+            tmpPath = Files.createTempFile(directory.toPath(), profile.getProfileName() + ".bin.", ".tmp");
+        } catch (IOException e) {
+            logger.warn("Could not save the snapshot {}", file.getAbsolutePath(), e);
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, profileService.getServerKey(profile));
+            writeString(out, txId);
+            out.writeLong(graph.getLoadedAt());
+
+            out.writeInt(indexByLinkType.size());
+            for (String linkType : indexByLinkType.keySet()) {
+                writeString(out, linkType);
+            }
+
+            out.writeInt(indexById.size());
+            for (ResourceBucket resourceBucket : graphResourceBuckets) {
+                Map<String, Object> bucketWithoutLinks = JsonTools.clone(resourceBucket, Map.class);
+                bucketWithoutLinks.put("linksTo", new ArrayList<>());
+                bucketWithoutLinks.put("linksFrom", new ArrayList<>());
+                out.writeByte(1);
+                writeString(out, JsonTools.compactPrint(bucketWithoutLinks));
+            }
+            for (ResourceDetails linkOnlyResource : linkOnlyResources) {
+                Map<String, Object> bucketWithoutLinks = new LinkedHashMap<>();
+                bucketWithoutLinks.put("resourceDetails", linkOnlyResource);
+                bucketWithoutLinks.put("linksTo", new ArrayList<>());
+                bucketWithoutLinks.put("linksFrom", new ArrayList<>());
+                out.writeByte(0);
+                writeString(out, JsonTools.compactPrint(bucketWithoutLinks));
+            }
+
+            out.writeInt(links.size());
+            for (List<Integer> link : links) {
+                out.writeInt(link.get(0));
+                out.writeInt(link.get(1));
+                out.writeInt(link.get(2));
+            }
+        } catch (IOException e) {
+            logger.warn("Could not save the snapshot {}", file.getAbsolutePath(), e);
+            deleteQuietly(tmpPath);
+            return;
+        }
+
+        try {
+            Files.move(tmpPath, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Saved the snapshot {} with {} resources and {} links", file.getAbsolutePath(), graph.size(), links.size());
+        } catch (IOException e) {
+            logger.warn("Could not save the snapshot {}", file.getAbsolutePath(), e);
+            deleteQuietly(tmpPath);
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+import com.foilen.infra.api.model.resource.ResourceBucket;
+import com.foilen.infra.api.model.resource.ResourceBucketsWithPagination;
+
+/**
+ * Goes through all the items of all the pages. The next page is retrieved in the background while the current one is consumed.
+ */
+public class ResourcePagesIterator implements Iterator<ResourceBucket> {
+
+    private final Executor executor;
+    private final IntFunction<ResourceBucketsWithPagination> pageFetcher;
+
+    private int nextPage = 1;
+    private Iterator<ResourceBucket> currentItems = Collections.emptyIterator();
+    private CompletableFuture<ResourceBucketsWithPagination> nextPageFuture;
+
+    /**
+     * @param executor
+     *            where to get the pages. Not the one processing the items (e.g. the background one) since the next page would wait behind all the items already queued
+     * @param pageFetcher
+     *            gets the page (starting at 1) and throws if it failed
+     */
+    public ResourcePagesIterator(Executor executor, IntFunction<ResourceBucketsWithPagination> pageFetcher) {
+        this.executor = executor;
+        this.pageFetcher = pageFetcher;
+        nextPageFuture = fetchPage(nextPage++);
+    }
+
+    private CompletableFuture<ResourceBucketsWithPagination> fetchPage(int page) {
+        return CompletableFuture.supplyAsync(() -> pageFetcher.apply(page), executor);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!currentItems.hasNext()) {
+            if (nextPageFuture == null) {
+                return false;
+            }
+
+            ResourceBucketsWithPagination page;
+            try {
+                page = nextPageFuture.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+
+            // Start getting the next one before consuming this one
+            nextPageFuture = page.getPagination().isLastPage() ? null : fetchPage(nextPage++);
+            currentItems = page.getItems().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public ResourceBucket next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentItems.next();
+    }
+
+}
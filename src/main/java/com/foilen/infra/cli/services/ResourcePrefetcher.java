@@ -0,0 +1,110 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import com.foilen.infra.api.model.resource.ResourceBucket;
+import com.foilen.infra.api.response.ResponseResourceBucket;
+import com.foilen.infra.api.service.InfraResourceApiService;
+import com.foilen.infra.cli.CliException;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.JsonTools;
+import com.foilen.smalltools.tuple.Tuple2;
+
+/**
+ * Retrieves resources by id in waves, concurrently, to avoid getting them one by one while going through the links.
+ *
+ * A resource that could not be prefetched is only a cache miss: it is retrieved again when it is really needed and only fails then.
+ */
+public class ResourcePrefetcher extends AbstractBasics {
+
+    private final InfraResourceApiService infraResourceApiService;
+    private final Executor executor;
+    private final int parallelism;
+
+    private final Map<String, ResourceBucket> resourceBucketById = new ConcurrentHashMap<>();
+
+    public ResourcePrefetcher(InfraResourceApiService infraResourceApiService, Executor executor, int parallelism) {
+        this.infraResourceApiService = infraResourceApiService;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    private ResourceBucket fetch(String resourceId) {
+        ResponseResourceBucket resourceBucket = infraResourceApiService.resourceFindById(resourceId);
+        if (!resourceBucket.isSuccess() || resourceBucket.getItem() == null) {
+            throw new CliException("Could not get the resource " + resourceId + ": " + JsonTools.compactPrint(resourceBucket));
+        }
+        return resourceBucket.getItem();
+    }
+
+    /**
+     * Retrieve all the resources that were not already retrieved and wait for them. Only give the ids of the resources that will be used.
+     *
+     * @param resourceIds
+     *            the ids of the resources
+     * @return this
+     */
+    public ResourcePrefetcher fetch(Collection<String> resourceIds) {
+
+        List<String> missingIds = resourceIds.stream() //
+                .filter(it -> !resourceBucketById.containsKey(it)) //
+                .distinct() //
+                .collect(Collectors.toList());
+        if (missingIds.isEmpty()) {
+            return this;
+        }
+
+        logger.info("Prefetching {} resources", missingIds.size());
+        StreamingWorkers.process(missingIds.iterator(), executor, parallelism, resourceId -> {
+            try {
+                return new Tuple2<>(resourceId, fetch(resourceId));
+            } catch (RuntimeException e) {
+                logger.warn("Could not prefetch the resource {}. Will retry if needed", resourceId, e);
+                return new Tuple2<String, ResourceBucket>(resourceId, null);
+            }
+        }, result -> {
+            if (result.getB() != null) {
+                resourceBucketById.put(result.getA(), result.getB());
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Get a resource that was fetched or retrieve it now if it was not.
+     *
+     * @param resourceId
+     *            the id of the resource
+     * @param resourceType
+     *            the type of the resource to display in the error message
+     * @return the resource
+     */
+    public ResourceBucket get(String resourceId, String resourceType) {
+        ResourceBucket resourceBucket = resourceBucketById.get(resourceId);
+        if (resourceBucket == null) {
+            try {
+                resourceBucket = fetch(resourceId);
+            } catch (RuntimeException e) {
+                throw new CliException("Could not get the " + resourceType + ": " + resourceId, e);
+            }
+            resourceBucketById.put(resourceId, resourceBucket);
+        }
+        return resourceBucket;
+    }
+
+}
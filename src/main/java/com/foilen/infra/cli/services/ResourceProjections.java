@@ -0,0 +1,71 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.foilen.infra.api.model.resource.ResourceDetails;
+import com.foilen.infra.cli.model.ResourceGraph;
+import com.foilen.infra.plugin.v1.model.resource.AbstractIPResource;
+import com.foilen.smalltools.tuple.Tuple2;
+
+/**
+ * Converts the resources maps to their typed resource only once per (internalId, type). Use the one of the {@link ResourceGraph} when working on its resources, so the conversions are kept as long as
+ * the graph, or create one per command execution for the other resources. Do not modify the returned resources.
+ *
+ * A partial copy of a resource (like the one in a link) is a different map than the full one, so it gets its own conversion instead of returning what was converted from the other.
+ */
+public class ResourceProjections {
+
+    // type -> internalId -> (source map, typed resource)
+    private final Map<Class<?>, Map<String, Tuple2<Object, Object>>> projectionByIdByType = new ConcurrentHashMap<>();
+
+    /**
+     * Get a copy with the conversions of some resources (e.g. the ones that did not change).
+     *
+     * @param internalIds
+     *            the ids of the resources to keep
+     * @return the copy
+     */
+    public ResourceProjections copy(Set<String> internalIds) {
+        ResourceProjections copy = new ResourceProjections();
+        projectionByIdByType.forEach((type, projectionById) -> {
+            Map<String, Tuple2<Object, Object>> copyProjectionById = new ConcurrentHashMap<>();
+            projectionById.forEach((internalId, projection) -> {
+                if (internalIds.contains(internalId)) {
+                    copyProjectionById.put(internalId, projection);
+                }
+            });
+            copy.projectionByIdByType.put(type, copyProjectionById);
+        });
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends AbstractIPResource> T get(ResourceDetails resourceDetails, Class<T> resourceType) {
+
+        String internalId = InfraResourceUtils.getResourceId(resourceDetails);
+        if (internalId == null) {
+            return InfraResourceUtils.resourceDetailsToResource(resourceDetails, resourceType);
+        }
+
+        Map<String, Tuple2<Object, Object>> projectionById = projectionByIdByType.computeIfAbsent(resourceType, k -> new ConcurrentHashMap<>());
+        Tuple2<Object, Object> projection = projectionById.get(internalId);
+        Object source = resourceDetails.getResource();
+        if (projection == null || projection.getA() != source) {
+            projection = new Tuple2<>(source, InfraResourceUtils.resourceDetailsToResource(resourceDetails, resourceType));
+            projectionById.put(internalId, projection);
+        }
+        return (T) projection.getB();
+    }
+
+}
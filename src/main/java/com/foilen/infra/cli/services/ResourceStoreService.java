@@ -0,0 +1,583 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.foilen.infra.api.model.audit.AuditItemSmall;
+import com.foilen.infra.api.model.audit.AuditItemSmallWithPagination;
+import com.foilen.infra.api.model.resource.PartialLinkDetails;
+import com.foilen.infra.api.model.resource.ResourceBucket;
+import com.foilen.infra.api.model.resource.ResourceDetails;
+import com.foilen.infra.api.model.resource.ResourceDetailsSmall;
+import com.foilen.infra.api.request.RequestResourceSearch;
+import com.foilen.infra.api.response.ResponseResourceAppliedChanges;
+import com.foilen.infra.api.response.ResponseResourceBucket;
+import com.foilen.infra.api.response.ResponseResourceBuckets;
+import com.foilen.infra.api.response.ResponseResourceTypesDetails;
+import com.foilen.infra.api.service.InfraResourceApiService;
+import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.profile.AbstractProfile;
+import com.foilen.infra.cli.model.store.ResourceStoreQuery;
+import com.foilen.infra.cli.model.store.StoredLink;
+import com.foilen.infra.cli.model.store.StoredProperty;
+import com.foilen.infra.cli.model.store.StoredResource;
+import com.foilen.infra.cli.model.store.StoredState;
+import com.foilen.infra.cli.repositories.StoredLinkRepository;
+import com.foilen.infra.cli.repositories.StoredPropertyRepository;
+import com.foilen.infra.cli.repositories.StoredResourceRepository;
+import com.foilen.infra.cli.repositories.StoredStateRepository;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.DirectoryTools;
+import com.foilen.smalltools.tools.JsonTools;
+import com.foilen.smalltools.tools.SecureRandomTools;
+import com.foilen.smalltools.tools.StringTools;
+import com.foilen.smalltools.tools.TimeConverterTools;
+import com.foilen.smalltools.tuple.Tuple2;
+import com.google.common.hash.Hashing;
+
+/**
+ * A local database per profile with the resources, their simple properties and their links, indexed to answer questions like "all the Apache PHP on version X installed on machine Y owned by Z"
+ * without downloading and going through all the resources.
+ *
+ * The databases are H2 files in ~/.foilenInfra/store/ . They are only opened when used and filled from the Infra API when empty, from another server or older than infra.store.ttlSeconds.
+ * The resources touched by the changes applied on the Infra API of a profile (see {@link ChangesNotifyingInfraResourceApiHandler}) are fetched again the next time the store is used. The last
+ * transaction id applied on each Infra API is kept beside the databases, so a store that missed changes (e.g. applied by another invocation) is filled again.
+ */
+@Component
+public class ResourceStoreService extends AbstractBasics {
+
+    private static final int FORMAT_VERSION = 1;
+
+    // Already in the columns or not a simple value
+    private static final Set<String> NOT_PROPERTIES = Set.of("internalId", "resourceName", "meta");
+
+    private static final int UPDATE_MAX_PENDING = 10;
+
+    /**
+     * The changes applied since the store was filled or updated. Only modified while in {@link ConcurrentHashMap#compute}.
+     */
+    private static class PendingChanges {
+        private final List<AuditItemSmall> auditItems = new ArrayList<>();
+        private boolean unknown;
+        private String txId;
+    }
+
+    private static class Store {
+
+        private EntityManagerFactory entityManagerFactory;
+        private EntityManager entityManager;
+        private TransactionTemplate transactionTemplate;
+
+        private StoredLinkRepository storedLinkRepository;
+        private StoredPropertyRepository storedPropertyRepository;
+        private StoredResourceRepository storedResourceRepository;
+        private StoredStateRepository storedStateRepository;
+
+    }
+
+    private static void addEqualIfSet(CriteriaBuilder criteriaBuilder, List<Predicate> predicates, Path<Object> path, String value) {
+        if (value != null) {
+            predicates.add(criteriaBuilder.equal(path, value));
+        }
+    }
+
+    private static Specification<StoredResource> toSpecification(ResourceStoreQuery query) {
+        return (root, criteriaQuery, criteriaBuilder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (query.getResourceType() != null) {
+                predicates.add(criteriaBuilder.equal(root.get("resourceType"), query.getResourceType()));
+            }
+            if (query.getResourceName() != null) {
+                predicates.add(criteriaBuilder.equal(root.get("resourceName"), query.getResourceName()));
+            }
+            if (query.getOwner() != null) {
+                predicates.add(criteriaBuilder.equal(root.get("owner"), query.getOwner()));
+            }
+
+            query.getProperties().forEach((propertyName, propertyValue) -> {
+                Subquery<String> subquery = criteriaQuery.subquery(String.class);
+                Root<StoredProperty> property = subquery.from(StoredProperty.class);
+                subquery.select(property.get("resourceId")).where( //
+                        criteriaBuilder.equal(property.get("propertyName"), propertyName), //
+                        criteriaBuilder.equal(property.get("propertyValue"), propertyValue));
+                predicates.add(root.get("id").in(subquery));
+            });
+
+            if (query.getLinkType() != null || query.getLinkedToType() != null || query.getLinkedToName() != null) {
+                Subquery<String> subquery = criteriaQuery.subquery(String.class);
+                Root<StoredLink> link = subquery.from(StoredLink.class);
+                Root<StoredResource> other = subquery.from(StoredResource.class);
+                List<Predicate> linkPredicates = new ArrayList<>();
+                linkPredicates.add(criteriaBuilder.equal(link.get("toId"), other.get("id")));
+                addEqualIfSet(criteriaBuilder, linkPredicates, link.get("linkType"), query.getLinkType());
+                addEqualIfSet(criteriaBuilder, linkPredicates, other.get("resourceType"), query.getLinkedToType());
+                addEqualIfSet(criteriaBuilder, linkPredicates, other.get("resourceName"), query.getLinkedToName());
+                subquery.select(link.get("fromId")).where(linkPredicates.toArray(new Predicate[linkPredicates.size()]));
+                predicates.add(root.get("id").in(subquery));
+            }
+
+            return criteriaBuilder.and(predicates.toArray(new Predicate[predicates.size()]));
+        };
+    }
+
+    @Autowired
+    private DisplayService displayService;
+    @Autowired
+    private ExecutionService executionService;
+    @Autowired
+    private ProfileService profileService;
+
+    @Value("${infra.store.ttlSeconds:300}")
+    private long ttlSeconds;
+    @Value("${infra.store.batchSize:500}")
+    private int batchSize;
+    @Value("${infra.store.maxPatchedResources:500}")
+    private int maxPatchedResources;
+
+    private final Map<String, Store> storeByProfileName = new HashMap<>();
+    private final Map<String, PendingChanges> pendingChangesByProfileName = new ConcurrentHashMap<>();
+    private final Map<String, String> serverKeyByProfileName = new ConcurrentHashMap<>();
+
+    private void add(Store store, ResourceBucket resourceBucket) {
+        ResourceDetails resourceDetails = resourceBucket.getResourceDetails();
+        String resourceId = InfraResourceUtils.getResourceId(resourceDetails);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> resource = JsonTools.clone(resourceDetails.getResource(), Map.class);
+
+        store.entityManager.persist(new StoredResource(resourceId, resourceDetails.getResourceType(), InfraResourceUtils.getResourceName(resourceDetails),
+                InfraResourceUtils.getOwner(resourceDetails), JsonTools.compactPrint(resource)));
+
+        resource.forEach((propertyName, propertyValue) -> {
+            if (NOT_PROPERTIES.contains(propertyName) || !(propertyValue instanceof String || propertyValue instanceof Number || propertyValue instanceof Boolean)) {
+                return;
+            }
+            String text = propertyValue.toString();
+            if (text.length() <= StoredProperty.MAX_VALUE_LENGTH) {
+                store.entityManager.persist(new StoredProperty(resourceId, propertyName, text));
+            }
+        });
+
+        // Every resource is loaded, so keeping the links to the others gets all of them once
+        if (resourceBucket.getLinksTo() != null) {
+            for (PartialLinkDetails linkTo : resourceBucket.getLinksTo()) {
+                store.entityManager.persist(new StoredLink(resourceId, linkTo.getLinkType(), InfraResourceUtils.getResourceId(linkTo.getOtherResource())));
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        // The next invocation sees that the stores are not at the last transaction id
+        pendingChangesByProfileName.clear();
+
+        storeByProfileName.values().forEach(store -> store.entityManagerFactory.close());
+        storeByProfileName.clear();
+    }
+
+    /**
+     * Count the resources per owner.
+     *
+     * @param profile
+     *            the profile
+     * @param profileType
+     *            "source" or "target" for the messages
+     * @return the count by owner sorted by owner
+     */
+    public Map<String, Long> countByOwner(AbstractProfile profile, String profileType) {
+        return toCountMap(get(profile, profileType).storedResourceRepository.countByOwner());
+    }
+
+    /**
+     * Count the resources per type.
+     *
+     * @param profile
+     *            the profile
+     * @param profileType
+     *            "source" or "target" for the messages
+     * @return the count by type sorted by type
+     */
+    public Map<String, Long> countByResourceType(AbstractProfile profile, String profileType) {
+        return toCountMap(get(profile, profileType).storedResourceRepository.countByResourceType());
+    }
+
+    private Store createStore(String profileName) {
+
+        File directory = new File(profileService.getDirectoryPath() + "store");
+        DirectoryTools.createPath(directory);
+        String url = "jdbc:h2:file:" + new File(directory, profileName).getAbsolutePath() + ";DB_CLOSE_DELAY=-1";
+        logger.info("Opening the local query store {}", url);
+
+        Properties jpaProperties = new Properties();
+        jpaProperties.setProperty("hibernate.hbm2ddl.auto", "update");
+        jpaProperties.setProperty("hibernate.jdbc.batch_size", String.valueOf(batchSize));
+        jpaProperties.setProperty("hibernate.order_inserts", "true");
+
+        LocalContainerEntityManagerFactoryBean entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactoryBean.setPersistenceUnitName("store-" + profileName);
+        entityManagerFactoryBean.setDataSource(new DriverManagerDataSource(url, "sa", ""));
+        entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactoryBean.setPackagesToScan(StoredResource.class.getPackageName());
+        entityManagerFactoryBean.setJpaProperties(jpaProperties);
+        entityManagerFactoryBean.afterPropertiesSet();
+
+        Store store = new Store();
+        store.entityManagerFactory = entityManagerFactoryBean.getObject();
+        store.entityManager = SharedEntityManagerCreator.createSharedEntityManager(store.entityManagerFactory);
+        store.transactionTemplate = new TransactionTemplate(new JpaTransactionManager(store.entityManagerFactory));
+
+        JpaRepositoryFactory repositoryFactory = new JpaRepositoryFactory(store.entityManager);
+        store.storedLinkRepository = repositoryFactory.getRepository(StoredLinkRepository.class);
+        store.storedPropertyRepository = repositoryFactory.getRepository(StoredPropertyRepository.class);
+        store.storedResourceRepository = repositoryFactory.getRepository(StoredResourceRepository.class);
+        store.storedStateRepository = repositoryFactory.getRepository(StoredStateRepository.class);
+        return store;
+    }
+
+    /**
+     * Find the resources.
+     *
+     * @param profile
+     *            the profile
+     * @param profileType
+     *            "source" or "target" for the messages
+     * @param query
+     *            what to search
+     * @return the resources sorted by type and name
+     */
+    public List<StoredResource> find(AbstractProfile profile, String profileType, ResourceStoreQuery query) {
+        Store store = get(profile, profileType);
+        return store.transactionTemplate.execute(status -> store.storedResourceRepository.findAll(toSpecification(query), Sort.by("resourceType", "resourceName")));
+    }
+
+    private synchronized Store get(AbstractProfile profile, String profileType) {
+        Store store = open(profile, profileType);
+        String serverKey = profileService.getServerKey(profile);
+        StoredState state = store.transactionTemplate.execute(status -> store.storedStateRepository.findById(StoredState.ID).orElse(null));
+        boolean upToDate = state != null //
+                && state.getFormatVersion() == FORMAT_VERSION //
+                && serverKey.equals(state.getProfileKey()) //
+                && System.currentTimeMillis() - state.getLoadedAt() < ttlSeconds * 1000L;
+        String txId = state == null ? null : state.getTxId();
+        PendingChanges pendingChanges = pendingChangesByProfileName.remove(profile.getProfileName());
+        if (upToDate && pendingChanges != null) {
+            try {
+                upToDate = update(store, profile, profileType, pendingChanges);
+                txId = pendingChanges.txId;
+            } catch (RuntimeException e) {
+                logger.warn("Could not update the local query store. Filling it again", e);
+                upToDate = false;
+            }
+        }
+        if (upToDate && !StringTools.safeEquals(txId, getLastTxId(serverKey))) {
+            logger.info("The local query store of {} is at transaction {}, but the last one is {}. Filling it again", profile.getProfileName(), txId, getLastTxId(serverKey));
+            upToDate = false;
+        }
+        if (!upToDate) {
+            refresh(store, profile, profileType);
+        }
+        return store;
+    }
+
+    private String getLastTxId(String serverKey) {
+        File file = getTxIdFile(serverKey);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Could not read the last transaction id {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private File getTxIdFile(String serverKey) {
+        // The key is an URL or a path
+        return new File(profileService.getDirectoryPath() + "store", Hashing.sha256().hashString(serverKey, StandardCharsets.UTF_8).toString().substring(0, 16) + ".txid");
+    }
+
+    /**
+     * Keep the changes applied on an Infra API for all the profiles using it. The resources they touched are fetched again the next time their store is used. This is called after each batch of
+     * changes, so it does not open the stores or call the API.
+     *
+     * @param event
+     *            the changes
+     */
+    @EventListener
+    public void onAppliedChanges(AppliedChangesEvent event) {
+
+        ResponseResourceAppliedChanges appliedChanges = event.getAppliedChanges();
+        AuditItemSmallWithPagination auditItems = appliedChanges == null ? null : appliedChanges.getAuditItems();
+        boolean allKnown = auditItems != null && auditItems.getItems() != null && auditItems.getPagination() != null
+                && auditItems.getPagination().getTotalItems() <= auditItems.getItems().size();
+        String txId = appliedChanges == null || appliedChanges.getTxId() == null ? "unknown-" + SecureRandomTools.randomHexString(10) : appliedChanges.getTxId();
+
+        serverKeyByProfileName.forEach((profileName, serverKey) -> {
+            if (!serverKey.equals(event.getServerKey())) {
+                return;
+            }
+            pendingChangesByProfileName.compute(profileName, (name, current) -> {
+                PendingChanges next = current == null ? new PendingChanges() : current;
+                if (allKnown) {
+                    next.auditItems.addAll(auditItems.getItems());
+                } else {
+                    next.unknown = true;
+                }
+                next.txId = txId;
+                return next;
+            });
+        });
+
+        setLastTxId(event.getServerKey(), txId);
+    }
+
+    private synchronized Store open(AbstractProfile profile, String profileType) {
+        if (profile == null) {
+            throw new CliException("No " + profileType + " profile set");
+        }
+        if (profile.getProfileName() == null) {
+            throw new CliException("The " + profileType + " profile must be saved to use the local query store");
+        }
+        serverKeyByProfileName.put(profile.getProfileName(), profileService.getServerKey(profile));
+        return storeByProfileName.computeIfAbsent(profile.getProfileName(), this::createStore);
+    }
+
+    /**
+     * Fill the store of a profile from the Infra API.
+     *
+     * @param profile
+     *            the profile
+     * @param profileType
+     *            "source" or "target" for the messages
+     */
+    public synchronized void refresh(AbstractProfile profile, String profileType) {
+        Store store = open(profile, profileType);
+        pendingChangesByProfileName.remove(profile.getProfileName());
+        refresh(store, profile, profileType);
+    }
+
+    private void refresh(Store store, AbstractProfile profile, String profileType) {
+
+        displayService.display("Filling the local query store of the " + profileType + " profile " + profile.getProfileName());
+        long start = System.currentTimeMillis();
+
+        // The changes applied after this point are pending
+        String serverKey = profileService.getServerKey(profile);
+        String lastTxId = getLastTxId(serverKey);
+
+        store.transactionTemplate.executeWithoutResult(status -> {
+            store.storedStateRepository.deleteAllInBatch();
+            store.storedLinkRepository.deleteAllInBatch();
+            store.storedPropertyRepository.deleteAllInBatch();
+            store.storedResourceRepository.deleteAllInBatch();
+        });
+
+        InfraResourceApiService infraResourceApiService = profileService.getInfraApiService(profile, profileType).getInfraResourceApiService();
+        ResponseResourceTypesDetails allTypes = infraResourceApiService.typeFindAll();
+        if (!allTypes.isSuccess()) {
+            throw new CliException(allTypes.getError());
+        }
+
+        // One transaction per type
+        long[] count = new long[1];
+        allTypes.getItems().forEach(resourceType -> {
+            ResponseResourceBuckets resourceBuckets = infraResourceApiService.resourceFindAllWithDetails(new RequestResourceSearch().setResourceType(resourceType.getResourceType()));
+            if (!resourceBuckets.isSuccess()) {
+                throw new CliException(resourceBuckets.getError());
+            }
+            store.transactionTemplate.executeWithoutResult(status -> {
+                resourceBuckets.getItems().forEach(resourceBucket -> {
+                    add(store, resourceBucket);
+                    if (++count[0] % batchSize == 0) {
+                        store.entityManager.flush();
+                        store.entityManager.clear();
+                    }
+                });
+            });
+        });
+
+        StoredState state = new StoredState();
+        state.setFormatVersion(FORMAT_VERSION);
+        state.setProfileKey(serverKey);
+        state.setLoadedAt(start);
+        state.setResourceCount(count[0]);
+        state.setTxId(lastTxId);
+        store.transactionTemplate.executeWithoutResult(status -> store.storedStateRepository.save(state));
+
+        displayService.display("Stored " + count[0] + " resources in " + TimeConverterTools.convertToTextFromMs(System.currentTimeMillis() - start));
+    }
+
+    private void setLastTxId(String serverKey, String txId) {
+        File file = getTxIdFile(serverKey);
+        DirectoryTools.createPath(file.getParentFile());
+        File tmpFile = null;
+        try {
+            tmpFile = File.createTempFile(file.getName() + ".", ".tmp", file.getParentFile());
+            Files.writeString(tmpFile.toPath(), txId, StandardCharsets.UTF_8);
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save the last transaction id {}", file.getAbsolutePath(), e);
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Replace the resources touched by the changes. The resources that are new, renamed or with the same name as others cannot be found by name, so their whole type is replaced.
+     *
+     * @return false if the store must be filled again instead
+     */
+    private boolean update(Store store, AbstractProfile profile, String profileType, PendingChanges pendingChanges) {
+
+        if (pendingChanges.unknown) {
+            logger.info("Not all the changes are known. Filling the local query store again");
+            return false;
+        }
+
+        Set<String> staleIds = new HashSet<>();
+        Set<String> staleTypes = new HashSet<>();
+        store.transactionTemplate.executeWithoutResult(status -> {
+            for (AuditItemSmall auditItem : pendingChanges.auditItems) {
+                if (auditItem.getType() == null) {
+                    continue;
+                }
+                switch (auditItem.getType()) {
+                case RESOURCE:
+                    for (ResourceDetailsSmall resource : Arrays.asList(auditItem.getResourceFirst(), auditItem.getResourceSecond())) {
+                        if (resource == null) {
+                            continue;
+                        }
+                        List<String> resourceIds = store.storedResourceRepository.findAllIdsByResourceTypeAndResourceName(resource.getResourceType(), resource.getResourceName());
+                        if (resourceIds.size() == 1) {
+                            String resourceId = resourceIds.get(0);
+                            staleIds.add(resourceId);
+                            // The links are stored with the resource they start from
+                            staleIds.addAll(store.storedLinkRepository.findAllFromIdsByToId(resourceId));
+                        } else {
+                            staleTypes.add(resource.getResourceType());
+                        }
+                    }
+                    break;
+                case LINK:
+                case TAG:
+                    for (ResourceDetailsSmall resource : Arrays.asList(auditItem.getResourceFirst(), auditItem.getResourceSecond())) {
+                        if (resource != null) {
+                            staleIds.addAll(store.storedResourceRepository.findAllIdsByResourceTypeAndResourceName(resource.getResourceType(), resource.getResourceName()));
+                        }
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+        });
+        if (staleIds.size() > maxPatchedResources) {
+            logger.info("{} resources changed. Filling the local query store again instead of updating it", staleIds.size());
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        InfraResourceApiService infraResourceApiService = profileService.getInfraApiService(profile, profileType).getInfraResourceApiService();
+        Set<String> addedIds = new HashSet<>();
+        long[] removedCount = new long[1];
+        store.transactionTemplate.executeWithoutResult(status -> {
+
+            // Remove them
+            Set<String> removedIds = new HashSet<>(staleIds);
+            staleTypes.forEach(resourceType -> removedIds.addAll(store.storedResourceRepository.findAllIdsByResourceType(resourceType)));
+            store.storedLinkRepository.deleteAllByFromIdIn(removedIds);
+            store.storedPropertyRepository.deleteAllByResourceIdIn(removedIds);
+            store.storedResourceRepository.deleteAllByIdIn(removedIds);
+            store.entityManager.clear();
+
+            // Get them again ; the missing ones were deleted
+            StreamingWorkers.process(staleIds.iterator(), executionService.getApi(), UPDATE_MAX_PENDING, resourceId -> {
+                ResponseResourceBucket resourceBucket = infraResourceApiService.resourceFindById(resourceId);
+                if (!resourceBucket.isSuccess()) {
+                    throw new CliException(resourceBucket.getError());
+                }
+                return new Tuple2<>(resourceId, resourceBucket.getItem());
+            }, result -> {
+                if (result.getB() == null) {
+                    ++removedCount[0];
+                } else if (addedIds.add(result.getA())) {
+                    add(store, result.getB());
+                }
+            });
+            for (String resourceType : staleTypes) {
+                ResponseResourceBuckets resourceBuckets = infraResourceApiService.resourceFindAllWithDetails(new RequestResourceSearch().setResourceType(resourceType));
+                if (!resourceBuckets.isSuccess()) {
+                    throw new CliException(resourceBuckets.getError());
+                }
+                resourceBuckets.getItems().forEach(resourceBucket -> {
+                    if (addedIds.add(InfraResourceUtils.getResourceId(resourceBucket.getResourceDetails()))) {
+                        add(store, resourceBucket);
+                    }
+                });
+            }
+
+            StoredState state = store.storedStateRepository.findById(StoredState.ID).orElseThrow();
+            store.entityManager.flush();
+            state.setResourceCount(store.storedResourceRepository.count());
+            state.setTxId(pendingChanges.txId);
+            store.storedStateRepository.save(state);
+        });
+
+        displayService.display("Updated the local query store of the " + profileType + " profile " + profile.getProfileName() + ": " + addedIds.size() + " refreshed ; " + removedCount[0]
+                + " removed ; " + staleTypes.size() + " types reloaded in " + TimeConverterTools.convertToTextFromMs(System.currentTimeMillis() - start));
+        return true;
+    }
+
+    private Map<String, Long> toCountMap(List<Object[]> rows) {
+        Map<String, Long> countByKey = new LinkedHashMap<>();
+        rows.forEach(row -> countByKey.put((String) row[0], (Long) row[1]));
+        return countByKey;
+    }
+
+}
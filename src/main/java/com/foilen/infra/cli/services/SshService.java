@@ -11,11 +11,14 @@ package com.foilen.infra.cli.services;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.util.concurrent.CountDownLatch;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.foilen.infra.cli.model.profile.ProfileHasPassword;
 import org.slf4j.event.Level;
@@ -28,23 +31,34 @@ import com.foilen.infra.cli.model.MysqlSyncSide;
 import com.foilen.infra.cli.model.profile.ProfileHasCert;
 import com.foilen.infra.cli.model.profile.ProfileHasHostname;
 import com.foilen.infra.cli.model.profile.ProfileHasUser;
+import com.foilen.infra.cli.services.SshSessionPool.PooledSshSession;
+import com.foilen.infra.cli.services.TransferWatchdogService.Transfer;
 import com.foilen.smalltools.consolerunner.ConsoleRunner;
-import com.foilen.smalltools.iterable.FileLinesIterable;
 import com.foilen.smalltools.jsch.JSchTools;
 import com.foilen.smalltools.jsch.SshLogin;
 import com.foilen.smalltools.shell.ExecResult;
 import com.foilen.smalltools.tools.AbstractBasics;
 import com.foilen.smalltools.tools.CloseableTools;
 import com.foilen.smalltools.tools.DirectoryTools;
-import com.foilen.smalltools.tools.ExecutorsTools;
 import com.foilen.smalltools.tools.SecureRandomTools;
 import com.foilen.smalltools.tools.ThreadTools;
 import com.google.common.base.Strings;
-import com.google.common.collect.EvictingQueue;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.jcraft.jsch.ChannelSftp;
 
 @Component
 public class SshService extends AbstractBasics {
 
+    private static final int ERROR_LINES = 10;
+    private static final int KILL_TIMEOUT_SECONDS = 30;
+    private static final String PID_PREFIX = "infra-cli-pid:";
+    private static final int REMOTE_SIZE_INTERVAL_SECONDS = 5;
+
+    static protected String quoteForShell(String text) {
+        return "'" + text.replace("'", "'\\''") + "'";
+    }
+
     static protected String trimSlashes(String text) {
         if (text == null) {
             text = "";
@@ -66,128 +80,424 @@ public class SshService extends AbstractBasics {
         return text;
     }
 
+    @Autowired
+    private ExecutionService executionService;
     @Autowired
     private ProfileService profileService;
+    @Autowired
+    private SshSessionPool sshSessionPool;
+    @Autowired
+    private TransferWatchdogService transferWatchdogService;
 
     @Autowired
     private UnixUserService unixUserService;
 
+    /**
+     * Get a pooled session on the machine of the side. Must be closed to give it back.
+     *
+     * @param side
+     *            the side
+     * @return the session
+     */
+    public PooledSshSession borrow(MysqlSyncSide side) {
+        return sshSessionPool.borrow(side.getMachineHost(), side.getMachineUsername(), getCredentials(side.getMachineCert(), side.getMachinePassword()), () -> getLogin(side));
+    }
+
+    /**
+     * Get a pooled session as root on a machine of the target profile. Must be closed to give it back.
+     *
+     * @param hostname
+     *            the host
+     * @return the session
+     */
+    public PooledSshSession borrowTarget(String hostname) {
+        return sshSessionPool.borrow(hostname, "root", getTargetRootCredentials(), () -> getTargetRootLogin(hostname));
+    }
+
+    /**
+     * Get a new session on the machine of the side (e.g. for a long-running command that will be killed by disconnecting).
+     *
+     * @param side
+     *            the side
+     * @return the session
+     */
     public JSchTools connect(MysqlSyncSide side) {
-        SshLogin sshLogin = new SshLogin(side.getMachineHost(), side.getMachineUsername()).autoApproveHostKey();
-        if (!Strings.isNullOrEmpty(side.getMachineCert())) {
-            sshLogin.withPrivateKey(side.getMachineCert());
-        } else if (!Strings.isNullOrEmpty(side.getMachinePassword())) {
-            sshLogin.withPassword(side.getMachinePassword());
-        } else {
-            throw new CliException("Machine does not have a password or certificate to connect to it");
-        }
-        JSchTools jsch = new JSchTools().login(sshLogin);
+        JSchTools jsch = new JSchTools().login(getLogin(side));
         return jsch;
     }
 
-    public void executeCommandInFileTarget(String hostname, String command, String stdOutFile) {
+    private void downloadResuming(String hostname, String remoteFile, File file, long expectedBytes) {
 
-        ProfileHasCert targetProfileHasCert = profileService.getTargetAsOrFail(ProfileHasCert.class);
-        ProfileHasPassword targetProfileHasPassword = profileService.getTargetAsOrFail(ProfileHasPassword.class);
-
-        JSchTools jSchTools = new JSchTools();
         AtomicBoolean completed = new AtomicBoolean();
-        EvictingQueue<String> errorLinesQueue = EvictingQueue.create(10);
-        EvictingQueue<Long> progressDeltas = EvictingQueue.create(6); // No progress for 30 seconds (6 checks every 5 seconds)
+        PooledSshSession pooledSshSession = borrowTarget(hostname);
+        JSchTools jSchTools = pooledSshSession.getJSchTools();
+
+        // Kill if no progress
+        Transfer transfer = transferWatchdogService.start(file.getAbsolutePath(), file::length, expectedBytes, () -> {
+            // Do not kill it if it just completed and its session might already be reused
+            pooledSshSession.invalidate();
+            if (completed.compareAndSet(false, true)) {
+                jSchTools.disconnect();
+            }
+        });
+
         try {
+            // Continue after the bytes already in the local file
+            jSchTools.createAndUseSftpChannel(sftp -> {
+                sftp.get(remoteFile, file.getAbsolutePath(), null, ChannelSftp.RESUME);
+            });
+        } catch (RuntimeException e) {
+            pooledSshSession.invalidate();
+            throw e;
+        } finally {
+            completed.set(true);
+            transfer.close();
+            pooledSshSession.close();
+        }
 
-            jSchTools.login(new SshLogin(hostname, "root") //
-                    .withPrivateKey(targetProfileHasCert.getSshCertificateFile()) //
-                    .withPassword(targetProfileHasPassword.getSshPassword()) //
-                    .autoApproveHostKey());
+    }
 
-            // Keep lasts errors lines
-            PipedInputStream errInputStream = new PipedInputStream();
-            OutputStream errOutputStream = new PipedOutputStream(errInputStream);
+    /**
+     * Execute a command on its own channel and save its output in a file. Multiple commands can run at the same time on the same session.
+     *
+     * The transfer is followed by the {@link TransferWatchdogService}. When there is no progress for a while, the command and its children are killed from another channel, which ends its channel
+     * without stopping the other commands running on the session. If the command is still running after {@link #KILL_TIMEOUT_SECONDS}, the session is disconnected and invalidated.
+     *
+     * @param pooledSshSession
+     *            the session (not closed by this method)
+     * @param command
+     *            the command
+     * @param stdOutFile
+     *            the file where to save the output
+     * @param expectedBytes
+     *            the estimated size of the output to show the time left or 0 if unknown
+     */
+    public void executeCommandInFile(PooledSshSession pooledSshSession, String command, String stdOutFile, long expectedBytes) {
 
-            CountDownLatch errCompleted = new CountDownLatch(1);
-            ExecutorsTools.getCachedDaemonThreadPool().submit(() -> {
-                logger.info("Start piping errors");
-                FileLinesIterable errLinesIterable = new FileLinesIterable();
-                errLinesIterable.openStream(errInputStream);
+        AtomicBoolean completed = new AtomicBoolean();
+        AtomicBoolean returned = new AtomicBoolean();
+        AtomicReference<String> remotePid = new AtomicReference<>();
+        LastLinesOutputStream errOutputStream = new LastLinesOutputStream(ERROR_LINES, line -> { // Keep lasts errors lines
+            if (line.startsWith(PID_PREFIX)) {
+                remotePid.compareAndSet(null, line.substring(PID_PREFIX.length()).trim());
+            }
+        });
+        JSchTools jSchTools = pooledSshSession.getJSchTools();
+        Transfer transfer = null;
+        File file = new File(stdOutFile);
+        try (FileOutputStream outOutputStream = new FileOutputStream(file)) {
 
-                while (errLinesIterable.hasNext()) {
-                    String line = errLinesIterable.next();
-                    errorLinesQueue.add(line);
+            // Kill if no progress
+            transfer = transferWatchdogService.start(stdOutFile, file::length, expectedBytes, () -> {
+                // Do not kill it if it just completed
+                if (completed.compareAndSet(false, true)) {
+                    errOutputStream.addLine("No progress. Killing");
+                    CloseableTools.close(outOutputStream);
+                    executionService.getBackground().execute(() -> killChannel(pooledSshSession, remotePid.get(), returned));
                 }
-
-                errCompleted.countDown();
-                logger.info("Completed piping errors");
             });
 
-            File file = new File(stdOutFile);
-            FileOutputStream outOutputStream = new FileOutputStream(file);
+            // Execute with the pid of the shell first in the errors to be able to kill it
+            ExecResult result = jSchTools.executeOutputStreams("echo " + PID_PREFIX + "$$ >&2 ; " + command, outOutputStream, errOutputStream);
+            if (result.getExitCode() != 0) {
+                throw new SshException("There was a problem executing the command. Exit code: " + result.getExitCode(), errOutputStream.getLastLines());
+            }
+        } catch (SshException e) {
+            throw e;
+        } catch (Exception e) {
+            pooledSshSession.invalidate();
+            throw new SshException("Problem executing the command", e, errOutputStream.getLastLines());
+        } finally {
+            completed.set(true);
+            returned.set(true);
+            if (transfer != null) {
+                transfer.close();
+            }
+        }
 
-            // Kill if no progress
-            ExecutorsTools.getCachedDaemonThreadPool().submit(() -> {
+    }
 
-                long lastSize = 0;
+    public void executeCommandInFileTarget(String hostname, String command, String stdOutFile, long expectedBytes) {
 
-                while (!completed.get()) {
-                    ThreadTools.sleep(5000);
-                    if (!completed.get()) {
-                        long currentSize = file.length();
-                        long delta = currentSize - lastSize;
-                        lastSize = currentSize;
-
-                        progressDeltas.add(delta);
-
-                        if (delta == 0) {
-                            boolean notAllZeros = progressDeltas.stream().anyMatch(it -> it != 0);
-                            if (!notAllZeros) {
-                                logger.error("No progress for 30 seconds. Killing");
-                                errorLinesQueue.add("No progress for 30 seconds. Killing");
-                                CloseableTools.close(outOutputStream);
-                                CloseableTools.close(errOutputStream);
-                                jSchTools.disconnect();
-                                break;
-                            }
+        PooledSshSession pooledSshSession;
+        try {
+            pooledSshSession = borrowTarget(hostname);
+        } catch (Exception e) {
+            throw new SshException("Problem executing the command", e, new LinkedList<>());
+        }
+        try {
+            executeCommandInFile(pooledSshSession, command, stdOutFile, expectedBytes);
+        } finally {
+            pooledSshSession.close();
+        }
+
+    }
+
+    /**
+     * Execute a command with its output in a temporary file on the machine, then download that file. When the download fails or stalls, it is retried on a new session and continues after the bytes
+     * already received. At the end, the SHA-256 of the downloaded file is checked and the temporary files are deleted.
+     *
+     * The command runs detached in its own process group (setsid and nohup) with its pid in a file, so it keeps running when the session drops. It is followed by a short command every few seconds
+     * on a pooled session that gives its state and the size of the output. When that fails, it is retried on a new session. The size is followed by the {@link TransferWatchdogService}. When it
+     * does not grow for a while, the command is killed.
+     *
+     * The temporary folder on the machine must have enough space for the whole output.
+     *
+     * @param hostname
+     *            the host
+     * @param command
+     *            the command
+     * @param remoteTempFolder
+     *            the folder on the machine where to keep the output until it is downloaded
+     * @param stdOutFile
+     *            the local file where to save the output
+     * @param expectedBytes
+     *            the estimated size of the output to show the time left or 0 if unknown
+     * @param retries
+     *            the amount of times to follow the command again or to continue a failed download
+     */
+    public void executeCommandInFileTargetResumable(String hostname, String command, String remoteTempFolder, String stdOutFile, long expectedBytes, int retries) {
+
+        String remoteFile = remoteTempFolder + "/" + SecureRandomTools.randomHexString(20) + ".out";
+        String remoteErrFile = remoteFile + ".err";
+        String remoteExitFile = remoteFile + ".exit";
+        String remotePidFile = remoteFile + ".pid";
+        try {
+
+            // Start in the background without being attached to this session
+            String script = "( " + command + " ) > " + remoteFile + " 2> " + remoteErrFile + " ; echo $? > " + remoteExitFile;
+            executeTargetForLines(hostname, "umask 077 ; setsid nohup sh -c " + quoteForShell(script) + " > /dev/null 2>&1 < /dev/null & echo $! > " + remotePidFile, null);
+
+            // Follow it until it exits
+            String stateCommand = "echo size $(stat -c %s " + remoteFile + " 2>/dev/null) ; " //
+                    + "if kill -0 $(cat " + remotePidFile + ") 2>/dev/null ; then echo running ; " //
+                    + "elif [ -f " + remoteExitFile + " ] ; then echo exit $(cat " + remoteExitFile + ") ; " //
+                    + "else echo lost ; fi";
+            AtomicLong remoteBytes = new AtomicLong();
+            AtomicBoolean stalled = new AtomicBoolean();
+            AtomicReference<PooledSshSession> followingSession = new AtomicReference<>();
+            String exitCode = null;
+            Transfer transfer = transferWatchdogService.start(hostname + ":" + remoteFile, remoteBytes::get, expectedBytes, () -> {
+                stalled.set(true);
+                PooledSshSession pooledSshSession = followingSession.get();
+                if (pooledSshSession != null) {
+                    pooledSshSession.invalidate();
+                    pooledSshSession.getJSchTools().disconnect();
+                }
+            });
+            try {
+                int failedAttempts = 0;
+                while (exitCode == null) {
+                    ThreadTools.sleep(REMOTE_SIZE_INTERVAL_SECONDS * 1000L);
+                    if (stalled.get()) {
+                        throw new SshException("No progress. Killing", new LinkedList<>());
+                    }
+
+                    List<String> lines;
+                    try {
+                        lines = executeTargetForLines(hostname, stateCommand, followingSession);
+                        failedAttempts = 0;
+                    } catch (RuntimeException e) {
+                        if (stalled.get()) {
+                            throw new SshException("No progress. Killing", new LinkedList<>());
+                        }
+                        if (++failedAttempts > retries) {
+                            throw new SshException("Problem following the command after " + failedAttempts + " attempts", e, new LinkedList<>());
+                        }
+                        logger.warn("Problem following {} on {} (attempt {}). Trying again on a new session", remoteFile, hostname, failedAttempts, e);
+                        continue;
+                    }
+
+                    for (String line : lines) {
+                        String[] parts = line.trim().split(" ");
+                        if ("size".equals(parts[0]) && parts.length == 2) {
+                            remoteBytes.set(Long.parseLong(parts[1]));
+                        } else if ("exit".equals(parts[0]) && parts.length == 2) {
+                            exitCode = parts[1];
+                        } else if ("lost".equals(parts[0])) {
+                            throw new SshException("The command stopped without giving its exit code", new LinkedList<>());
                         }
                     }
+                }
+            } finally {
+                transfer.close();
+            }
+            if (!"0".equals(exitCode)) {
+                LinkedList<String> lastErrorLines = new LinkedList<>();
+                try {
+                    lastErrorLines.addAll(executeTargetForLines(hostname, "tail -n " + ERROR_LINES + " " + remoteErrFile, null));
+                } catch (Exception e) {
+                    logger.warn("Could not get the errors of the command on {}", hostname, e);
+                }
+                throw new SshException("There was a problem executing the command. Exit code: " + exitCode, lastErrorLines);
+            }
+
+            List<String> sizeAndChecksum = executeTargetForLines(hostname, "stat -c %s " + remoteFile + " && sha256sum " + remoteFile, null);
+            if (sizeAndChecksum.size() != 2) {
+                throw new SshException("Could not get the size and the checksum of the output. Got: " + sizeAndChecksum, new LinkedList<>());
+            }
+            long outputBytes = Long.parseLong(sizeAndChecksum.get(0).trim());
+            String expectedChecksum = sizeAndChecksum.get(1).split(" ")[0];
 
+            // Download
+            File file = new File(stdOutFile);
+            file.delete();
+            for (int attempt = 1;; ++attempt) {
+                try {
+                    downloadResuming(hostname, remoteFile, file, outputBytes);
+                    break;
+                } catch (RuntimeException e) {
+                    if (attempt > retries) {
+                        throw new SshException("Problem downloading the output after " + attempt + " attempts", e, new LinkedList<>());
+                    }
+                    logger.warn("Problem downloading {} from {} (attempt {}). Continuing after {} of {} bytes", remoteFile, hostname, attempt, file.length(), outputBytes, e);
+                    ThreadTools.sleep(5000);
                 }
-            });
+            }
 
-            // Execute
-            ExecResult result = jSchTools.executeOutputStreams(command, outOutputStream, errOutputStream);
-            if (result.getExitCode() != 0) {
-                errCompleted.await();
-                throw new SshException("There was a problem executing the command. Exit code: " + result.getExitCode(), errorLinesQueue);
+            // Check
+            String checksum = Files.asByteSource(file).hash(Hashing.sha256()).toString();
+            if (!checksum.equals(expectedChecksum)) {
+                file.delete();
+                throw new SshException("The downloaded output is corrupted. Expected SHA-256 " + expectedChecksum + " ; got " + checksum, new LinkedList<>());
             }
         } catch (SshException e) {
             throw e;
         } catch (Exception e) {
-            throw new SshException("Problem executing the command", e, errorLinesQueue);
+            throw new SshException("Problem executing the command", e, new LinkedList<>());
         } finally {
-            jSchTools.disconnect();
-            completed.set(true);
+            // Kill the command if it is still running and delete the temporary files
+            try {
+                sshSessionPool.run(hostname, "root", getTargetRootCredentials(), () -> getTargetRootLogin(hostname), jSchTools -> executeInLogger(jSchTools, //
+                        "[ -f " + remoteExitFile + " ] || kill -TERM -$(cat " + remotePidFile + " 2>/dev/null) 2>/dev/null ; " //
+                                + "rm -f " + remoteFile + " " + remoteErrFile + " " + remoteExitFile + " " + remotePidFile,
+                        null));
+            } catch (Exception e) {
+                logger.warn("Could not delete {} on {}", remoteFile, hostname, e);
+            }
         }
 
     }
 
     public void executeCommandInLoggerTarget(String hostname, String command) {
+        sshSessionPool.run(hostname, "root", getTargetRootCredentials(), () -> getTargetRootLogin(hostname), jSchTools -> executeInLogger(jSchTools, command, null));
+    }
 
-        ProfileHasCert targetProfileHasCert = profileService.getTargetAsOrFail(ProfileHasCert.class);
-        ProfileHasPassword targetProfileHasPassword = profileService.getTargetAsOrFail(ProfileHasPassword.class);
+    /**
+     * Execute a short command on a pooled session as root on a machine of the target profile and get its output.
+     *
+     * @param hostname
+     *            the host
+     * @param command
+     *            the command
+     * @param currentSession
+     *            (optional) receives the session while the command runs (e.g. to disconnect it if it hangs)
+     * @return the last lines of the output
+     */
+    private List<String> executeTargetForLines(String hostname, String command, AtomicReference<PooledSshSession> currentSession) {
+        LastLinesOutputStream outOutputStream = new LastLinesOutputStream(ERROR_LINES);
+        LastLinesOutputStream errOutputStream = new LastLinesOutputStream(ERROR_LINES); // Keep lasts errors lines
+        ExecResult result;
+        PooledSshSession pooledSshSession = borrowTarget(hostname);
+        try {
+            if (currentSession != null) {
+                currentSession.set(pooledSshSession);
+            }
+            result = pooledSshSession.getJSchTools().executeOutputStreams(command, outOutputStream, errOutputStream);
+        } catch (RuntimeException e) {
+            pooledSshSession.invalidate();
+            throw e;
+        } finally {
+            if (currentSession != null) {
+                currentSession.set(null);
+            }
+            outOutputStream.close();
+            errOutputStream.close();
+            pooledSshSession.close();
+        }
+        if (result.getExitCode() != 0) {
+            throw new SshException("There was a problem executing the command. Exit code: " + result.getExitCode(), errOutputStream.getLastLines());
+        }
+        return new ArrayList<>(outOutputStream.getLastLines());
+    }
 
-        JSchTools jSchTools = new JSchTools();
+    /**
+     * Execute a command with its output in the logger, line by line.
+     *
+     * @param jSchTools
+     *            the session
+     * @param command
+     *            the command
+     * @param lastErrorLines
+     *            receives the last error lines when the command is completed (e.g. to explain a failure) ; can be null
+     * @return the result
+     */
+    public ExecResult executeInLogger(JSchTools jSchTools, String command, Collection<String> lastErrorLines) {
+        LastLinesOutputStream outOutputStream = new LastLinesOutputStream(0, line -> logger.info("[OUT] {}", line));
+        LastLinesOutputStream errOutputStream = new LastLinesOutputStream(ERROR_LINES, line -> logger.info("[ERR] {}", line));
         try {
+            return jSchTools.executeOutputStreams(command, outOutputStream, errOutputStream);
+        } finally {
+            outOutputStream.close();
+            errOutputStream.close();
+            if (lastErrorLines != null) {
+                lastErrorLines.addAll(errOutputStream.getLastLines());
+            }
+        }
+    }
 
-            jSchTools.login(new SshLogin(hostname, "root") //
-                    .withPrivateKey(targetProfileHasCert.getSshCertificateFile()) //
-                    .withPassword(targetProfileHasPassword.getSshPassword()) //
-                    .autoApproveHostKey());
+    private String getCredentials(String privateKey, String password) {
+        return privateKey + "\n" + password;
+    }
 
-            jSchTools.executeInLogger(command);
-        } finally {
-            jSchTools.disconnect();
+    private SshLogin getLogin(MysqlSyncSide side) {
+        SshLogin sshLogin = new SshLogin(side.getMachineHost(), side.getMachineUsername()).autoApproveHostKey();
+        if (!Strings.isNullOrEmpty(side.getMachineCert())) {
+            sshLogin.withPrivateKey(side.getMachineCert());
+        } else if (!Strings.isNullOrEmpty(side.getMachinePassword())) {
+            sshLogin.withPassword(side.getMachinePassword());
+        } else {
+            throw new CliException("Machine does not have a password or certificate to connect to it");
         }
+        return sshLogin;
+    }
+
+    private String getTargetRootCredentials() {
+        return getCredentials(profileService.getTargetAsOrFail(ProfileHasCert.class).getSshCertificateFile(), profileService.getTargetAsOrFail(ProfileHasPassword.class).getSshPassword());
+    }
+
+    private SshLogin getTargetRootLogin(String hostname) {
+        ProfileHasCert targetProfileHasCert = profileService.getTargetAsOrFail(ProfileHasCert.class);
+        ProfileHasPassword targetProfileHasPassword = profileService.getTargetAsOrFail(ProfileHasPassword.class);
+        return new SshLogin(hostname, "root") //
+                .withPrivateKey(targetProfileHasCert.getSshCertificateFile()) //
+                .withPassword(targetProfileHasPassword.getSshPassword()) //
+                .autoApproveHostKey();
+    }
 
+    /**
+     * Kill a command running on a channel of a session and its children. When it cannot, the session is disconnected.
+     */
+    private void killChannel(PooledSshSession pooledSshSession, String remotePid, AtomicBoolean returned) {
+
+        // Disconnect if not returned soon
+        executionService.getScheduler().schedule(() -> {
+            if (!returned.get()) {
+                logger.warn("The stalled command is still running. Disconnecting its session");
+                pooledSshSession.invalidate();
+                pooledSshSession.getJSchTools().disconnect();
+            }
+        }, KILL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        if (remotePid == null || !remotePid.chars().allMatch(Character::isDigit)) {
+            logger.warn("The pid of the stalled command is not known. Waiting for its session to be disconnected");
+            return;
+        }
+        try {
+            executeInLogger(pooledSshSession.getJSchTools(), "pkill -TERM -P " + remotePid + " ; kill -TERM " + remotePid, null);
+        } catch (Exception e) {
+            logger.warn("Could not kill the stalled command {}. Waiting for its session to be disconnected", remotePid, e);
+        }
     }
 
     /**
@@ -266,11 +576,12 @@ public class SshService extends AbstractBasics {
             waitCanLogin(sourceHostname, sourceUsername, password, 2 * 60);
 
             String tmpKeyfile = "/tmp/" + SecureRandomTools.randomHexString(10);
-            JSchTools jSchTools = new JSchTools();
+            SshLogin sourceLogin = new SshLogin(sourceHostname, sourceUsername).withPassword(password).autoApproveHostKey();
+            PooledSshSession sourceSession = sshSessionPool.borrow(sourceHostname, sourceUsername, getCredentials(null, password), () -> sourceLogin);
+            JSchTools jSchTools = sourceSession.getJSchTools();
             try {
                 // Send target cert
                 logger.info("Send target cert to source");
-                jSchTools.login(new SshLogin(sourceHostname, sourceUsername).withPassword(password).autoApproveHostKey());
                 jSchTools.createAndUseSftpChannel(consumer -> {
                     // Create
                     consumer.put(tmpKeyfile).close();
@@ -289,45 +600,52 @@ public class SshService extends AbstractBasics {
                 command.append("/home/").append(sourceUsername).append("/").append(subFolder).append("/ ").append(targetHostname).append(":/home/").append(targetUsername).append("/").append(subFolder)
                         .append("/");
                 logger.info("Run command: {}", command.toString());
-                ExecResult execResult = jSchTools.executeInLogger(command.toString());
+                ExecResult execResult = executeInLogger(jSchTools, command.toString(), null);
                 if (execResult.getExitCode() != 0) {
                     logger.error("There was a problem executing the rsync command. Exit code: {}", execResult.getExitCode());
                     throw new CliException("There was a problem executing the rsync command");
                 }
 
+            } catch (RuntimeException e) {
+                sourceSession.invalidate();
+                throw e;
             } finally {
-
                 try {
                     logger.info("Delete cert");
                     jSchTools.createAndUseSftpChannel(consumer -> {
                         consumer.rm(tmpKeyfile);
                     });
                 } finally {
-                    jSchTools.disconnect();
+                    sourceSession.close();
                 }
             }
 
             // Chown target
+            SshLogin targetLogin = new SshLogin(targetHostname, targetCertUsername) //
+                    .withPrivateKey(targetProfileHasCert.getSshCertificateFile()) //
+                    .withPassword(targetProfileHasPassword.getSshPassword()) //
+                    .autoApproveHostKey();
+            PooledSshSession targetSession = sshSessionPool.borrow(targetHostname, targetCertUsername,
+                    getCredentials(targetProfileHasCert.getSshCertificateFile(), targetProfileHasPassword.getSshPassword()), () -> targetLogin);
+            jSchTools = targetSession.getJSchTools();
             try {
-                // Send source cert
                 logger.info("chown on target");
-                jSchTools.login(new SshLogin(targetHostname, targetCertUsername)
-                        .withPrivateKey(targetProfileHasCert.getSshCertificateFile())
-                        .withPassword(targetProfileHasPassword.getSshPassword())
-                        .autoApproveHostKey());
 
                 StringBuilder command = new StringBuilder();
                 command.append("/bin/chown -R ");
                 command.append(targetUsername).append(":").append(targetUsername);
                 command.append(" /home/").append(targetUsername).append("/");
                 logger.info("Run command: {}", command.toString());
-                ExecResult execResult = jSchTools.executeInLogger(command.toString());
+                ExecResult execResult = executeInLogger(jSchTools, command.toString(), null);
                 if (execResult.getExitCode() != 0) {
                     logger.error("There was a problem executing the chown command. Exit code: {}", execResult.getExitCode());
                     throw new CliException("There was a problem executing the chown command");
                 }
+            } catch (RuntimeException e) {
+                targetSession.invalidate();
+                throw e;
             } finally {
-                jSchTools.disconnect();
+                targetSession.close();
             }
 
         } else if (!targetHasCert) {
@@ -338,11 +656,12 @@ public class SshService extends AbstractBasics {
             waitCanLogin(targetHostname, targetUsername, password, 2 * 60);
 
             String tmpKeyfile = "/tmp/" + SecureRandomTools.randomHexString(10);
-            JSchTools jSchTools = new JSchTools();
+            SshLogin targetLogin = new SshLogin(targetHostname, targetUsername).withPassword(password).autoApproveHostKey();
+            PooledSshSession targetSession = sshSessionPool.borrow(targetHostname, targetUsername, getCredentials(null, password), () -> targetLogin);
+            JSchTools jSchTools = targetSession.getJSchTools();
             try {
                 // Send source cert
                 logger.info("Send source cert to target");
-                jSchTools.login(new SshLogin(targetHostname, targetUsername).withPassword(password).autoApproveHostKey());
                 jSchTools.createAndUseSftpChannel(consumer -> {
                     // Create
                     consumer.put(tmpKeyfile).close();
@@ -361,12 +680,15 @@ public class SshService extends AbstractBasics {
                 command.append(sourceHostname).append(":/home/").append(sourceUsername).append("/").append(subFolder).append("/ /home/").append(targetUsername).append("/").append(subFolder)
                         .append("/");
                 logger.info("Run command: {}", command.toString());
-                ExecResult execResult = jSchTools.executeInLogger(command.toString());
+                ExecResult execResult = executeInLogger(jSchTools, command.toString(), null);
                 if (execResult.getExitCode() != 0) {
                     logger.error("There was a problem executing the rsync command. Exit code: {}", execResult.getExitCode());
                     throw new CliException("There was a problem executing the rsync command");
                 }
 
+            } catch (RuntimeException e) {
+                targetSession.invalidate();
+                throw e;
             } finally {
                 try {
                     logger.info("Delete cert");
@@ -374,7 +696,7 @@ public class SshService extends AbstractBasics {
                         consumer.rm(tmpKeyfile);
                     });
                 } finally {
-                    jSchTools.disconnect();
+                    targetSession.close();
                 }
             }
 
@@ -383,14 +705,16 @@ public class SshService extends AbstractBasics {
             // Both has certs ; Log on source and push to target using cert
             logger.info("Both has certs ; Log on source and push to target using cert");
             String tmpKeyfile = "/tmp/" + SecureRandomTools.randomHexString(10);
-            JSchTools jSchTools = new JSchTools();
+            SshLogin sourceLogin = new SshLogin(sourceHostname, sourceCertUsername) //
+                    .withPrivateKey(sourceProfileHasCert.getSshCertificateFile()) //
+                    .withPassword(sourceProfileHasPassword.getSshPassword()) //
+                    .autoApproveHostKey();
+            PooledSshSession sourceSession = sshSessionPool.borrow(sourceHostname, sourceCertUsername,
+                    getCredentials(sourceProfileHasCert.getSshCertificateFile(), sourceProfileHasPassword.getSshPassword()), () -> sourceLogin);
+            JSchTools jSchTools = sourceSession.getJSchTools();
             try {
                 // Send source cert
                 logger.info("Send target cert to source");
-                jSchTools.login(new SshLogin(sourceHostname, sourceCertUsername)
-                        .withPrivateKey(sourceProfileHasCert.getSshCertificateFile())
-                        .withPassword(sourceProfileHasPassword.getSshPassword())
-                        .autoApproveHostKey());
                 jSchTools.createAndUseSftpChannel(consumer -> {
                     // Create
                     consumer.put(tmpKeyfile).close();
@@ -409,12 +733,15 @@ public class SshService extends AbstractBasics {
                 command.append("/home/").append(sourceUsername).append("/").append(subFolder).append("/ ").append(targetHostname).append(":/home/").append(targetUsername).append("/").append(subFolder)
                         .append("/");
                 logger.info("Run command: {}", command.toString());
-                ExecResult execResult = jSchTools.executeInLogger(command.toString());
+                ExecResult execResult = executeInLogger(jSchTools, command.toString(), null);
                 if (execResult.getExitCode() != 0) {
                     logger.error("There was a problem executing the rsync command. Exit code: {}", execResult.getExitCode());
                     throw new CliException("There was a problem executing the rsync command");
                 }
 
+            } catch (RuntimeException e) {
+                sourceSession.invalidate();
+                throw e;
             } finally {
                 try {
                     logger.info("Delete cert");
@@ -422,31 +749,36 @@ public class SshService extends AbstractBasics {
                         consumer.rm(tmpKeyfile);
                     });
                 } finally {
-                    jSchTools.disconnect();
+                    sourceSession.close();
                 }
             }
 
             // Chown target
+            SshLogin targetLogin = new SshLogin(targetHostname, targetCertUsername) //
+                    .withPrivateKey(targetProfileHasCert.getSshCertificateFile()) //
+                    .withPassword(targetProfileHasPassword.getSshPassword()) //
+                    .autoApproveHostKey();
+            PooledSshSession targetSession = sshSessionPool.borrow(targetHostname, targetCertUsername,
+                    getCredentials(targetProfileHasCert.getSshCertificateFile(), targetProfileHasPassword.getSshPassword()), () -> targetLogin);
+            jSchTools = targetSession.getJSchTools();
             try {
-                // Send source cert
                 logger.info("chown on target");
-                jSchTools.login(new SshLogin(targetHostname, targetCertUsername)
-                        .withPrivateKey(targetProfileHasCert.getSshCertificateFile())
-                        .withPassword(targetProfileHasPassword.getSshPassword())
-                        .autoApproveHostKey());
 
                 StringBuilder command = new StringBuilder();
                 command.append("/bin/chown -R ");
                 command.append(targetUsername).append(":").append(targetUsername);
                 command.append(" /home/").append(targetUsername).append("/");
                 logger.info("Run command: {}", command.toString());
-                ExecResult execResult = jSchTools.executeInLogger(command.toString());
+                ExecResult execResult = executeInLogger(jSchTools, command.toString(), null);
                 if (execResult.getExitCode() != 0) {
                     logger.error("There was a problem executing the chown command. Exit code: {}", execResult.getExitCode());
                     throw new CliException("There was a problem executing the chown command");
                 }
+            } catch (RuntimeException e) {
+                targetSession.invalidate();
+                throw e;
             } finally {
-                jSchTools.disconnect();
+                targetSession.close();
             }
 
         }
@@ -531,25 +863,11 @@ public class SshService extends AbstractBasics {
     }
 
     public void waitUserIsPresent(String hostname, String username) {
-
-        ProfileHasCert targetProfileHasCert = profileService.getTargetAsOrFail(ProfileHasCert.class);
-        ProfileHasPassword targetProfileHasPassword = profileService.getTargetAsOrFail(ProfileHasPassword.class);
-
-        JSchTools jSchTools = new JSchTools();
-        try {
-
-            jSchTools.login(new SshLogin(hostname, "root") //
-                    .withPrivateKey(targetProfileHasCert.getSshCertificateFile()) //
-                    .withPassword(targetProfileHasPassword.getSshPassword()) //
-                    .autoApproveHostKey());
-
-            jSchTools.executeInLogger("while(! grep '^" + username + ":' /etc/passwd); do\n" //
+        sshSessionPool.run(hostname, "root", getTargetRootCredentials(), () -> getTargetRootLogin(hostname), jSchTools -> {
+            executeInLogger(jSchTools, "while(! grep '^" + username + ":' /etc/passwd); do\n" //
                     + "sleep 1s;\n" //
-                    + "done");
-        } finally {
-            jSchTools.disconnect();
-        }
-
+                    + "done", null);
+        });
     }
 
 }
@@ -0,0 +1,272 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.foilen.smalltools.jsch.JSchTools;
+import com.foilen.smalltools.jsch.SshLogin;
+import com.foilen.smalltools.shell.ExecResult;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Keeps the logged in SSH sessions per user@host and credentials to reuse them instead of doing the key exchange and the authentication for each command.
+ *
+ * A session is used by one task at a time. When the task is done, the session is kept for the next one unless it failed. The sessions not used for a while are disconnected and the ones that were
+ * idle for some time are checked with a simple command before being given again.
+ */
+@Component
+public class SshSessionPool extends AbstractBasics {
+
+    /**
+     * A session given to a task. Closing it gives it back to the pool.
+     */
+    public class PooledSshSession implements AutoCloseable {
+
+        private final String key;
+        private final JSchTools jSchTools;
+        private long lastUsed = System.currentTimeMillis();
+        private volatile boolean invalid;
+        // Guarded by the pool
+        private boolean closed;
+
+        private PooledSshSession(String key, JSchTools jSchTools) {
+            this.key = key;
+            this.jSchTools = jSchTools;
+        }
+
+        @Override
+        public void close() {
+            synchronized (SshSessionPool.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            giveBack(this);
+        }
+
+        public JSchTools getJSchTools() {
+            return jSchTools;
+        }
+
+        /**
+         * Tell that the session must not be reused (e.g. it was disconnected to stop a command or a command failed in an unknown state).
+         */
+        public void invalidate() {
+            invalid = true;
+        }
+
+    }
+
+    private static String getKey(String hostname, String username, String credentials) {
+        // Only a part of the hash to not show the credentials in the logs and the report
+        return username + "@" + hostname + "/" + Hashing.sha256().hashString(String.valueOf(credentials), StandardCharsets.UTF_8).toString().substring(0, 8);
+    }
+
+    @Value("${infra.ssh.pool.enabled:true}")
+    private boolean enabled;
+    @Value("${infra.ssh.pool.idleSeconds:120}")
+    private long idleSeconds;
+    @Value("${infra.ssh.pool.healthCheckAfterSeconds:30}")
+    private long healthCheckAfterSeconds;
+    @Value("${infra.ssh.pool.maxIdlePerKey:2}")
+    private int maxIdlePerKey;
+
+    private final Map<String, Deque<PooledSshSession>> idleByKey = new HashMap<>();
+    private long logins;
+    private long reuses;
+
+    /**
+     * Get a logged in session. Must be closed to give it back.
+     *
+     * @param hostname
+     *            the host
+     * @param username
+     *            the user
+     * @param credentials
+     *            what identifies the credentials (e.g. the certificate file and the password) to never give a session logged in with other ones
+     * @param sshLoginSupplier
+     *            gives the login details when a new session is needed
+     * @return the session
+     */
+    public PooledSshSession borrow(String hostname, String username, String credentials, Supplier<SshLogin> sshLoginSupplier) {
+
+        String key = getKey(hostname, username, credentials);
+        if (enabled) {
+            PooledSshSession pooledSshSession;
+            while ((pooledSshSession = takeIdle(key)) != null) {
+                if (isHealthy(pooledSshSession)) {
+                    synchronized (this) {
+                        pooledSshSession.closed = false;
+                        ++reuses;
+                    }
+                    return pooledSshSession;
+                }
+                logger.info("The SSH session {} is not working anymore. Disconnecting", key);
+                pooledSshSession.jSchTools.disconnect();
+            }
+        }
+
+        logger.debug("Login SSH {}", key);
+        JSchTools jSchTools = new JSchTools().login(sshLoginSupplier.get());
+        synchronized (this) {
+            ++logins;
+        }
+        return new PooledSshSession(key, jSchTools);
+    }
+
+    /**
+     * Run an action with a session. The session is not reused if the action fails.
+     *
+     * @param hostname
+     *            the host
+     * @param username
+     *            the user
+     * @param credentials
+     *            what identifies the credentials
+     * @param sshLoginSupplier
+     *            gives the login details when a new session is needed
+     * @param action
+     *            the action
+     * @param <T>
+     *            the type of result
+     * @return the result of the action
+     */
+    public <T> T call(String hostname, String username, String credentials, Supplier<SshLogin> sshLoginSupplier, Function<JSchTools, T> action) {
+        try (PooledSshSession pooledSshSession = borrow(hostname, username, credentials, sshLoginSupplier)) {
+            try {
+                return action.apply(pooledSshSession.getJSchTools());
+            } catch (RuntimeException e) {
+                pooledSshSession.invalidate();
+                throw e;
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        idleByKey.values().forEach(idle -> idle.forEach(it -> it.jSchTools.disconnect()));
+        idleByKey.clear();
+    }
+
+    private synchronized void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<Deque<PooledSshSession>> idleIterator = idleByKey.values().iterator();
+        while (idleIterator.hasNext()) {
+            Deque<PooledSshSession> idle = idleIterator.next();
+            // The oldest are at the end
+            while (!idle.isEmpty() && now - idle.peekLast().lastUsed > idleSeconds * 1000L) {
+                PooledSshSession pooledSshSession = idle.pollLast();
+                logger.debug("Disconnecting the idle SSH session {}", pooledSshSession.key);
+                pooledSshSession.jSchTools.disconnect();
+            }
+            if (idle.isEmpty()) {
+                idleIterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the state of the pool.
+     *
+     * @return the lines
+     */
+    public synchronized List<String> getReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add("SSH sessions: " + logins + " logins ; " + reuses + " reuses");
+        Map<String, Integer> idleCountByKey = new TreeMap<>();
+        idleByKey.forEach((key, idle) -> idleCountByKey.put(key, idle.size()));
+        lines.add("Idle SSH sessions: " + idleCountByKey);
+        return lines;
+    }
+
+    private void giveBack(PooledSshSession pooledSshSession) {
+        if (!enabled || pooledSshSession.invalid) {
+            pooledSshSession.jSchTools.disconnect();
+            return;
+        }
+
+        pooledSshSession.lastUsed = System.currentTimeMillis();
+        PooledSshSession toDisconnect = null;
+        synchronized (this) {
+            Deque<PooledSshSession> idle = idleByKey.computeIfAbsent(pooledSshSession.key, k -> new ArrayDeque<>());
+            idle.addFirst(pooledSshSession);
+            if (idle.size() > maxIdlePerKey) {
+                toDisconnect = idle.pollLast();
+            }
+        }
+        if (toDisconnect != null) {
+            toDisconnect.jSchTools.disconnect();
+        }
+        evictIdle();
+    }
+
+    private boolean isHealthy(PooledSshSession pooledSshSession) {
+        if (System.currentTimeMillis() - pooledSshSession.lastUsed < healthCheckAfterSeconds * 1000L) {
+            return true;
+        }
+        try {
+            ExecResult execResult = pooledSshSession.jSchTools.executeOutputStreams("true", ByteStreams.nullOutputStream(), ByteStreams.nullOutputStream());
+            return execResult.getExitCode() == 0;
+        } catch (Exception e) {
+            logger.debug("The health check of the SSH session {} failed", pooledSshSession.key, e);
+            return false;
+        }
+    }
+
+    /**
+     * Run an action with a session. The session is not reused if the action fails.
+     *
+     * @param hostname
+     *            the host
+     * @param username
+     *            the user
+     * @param credentials
+     *            what identifies the credentials
+     * @param sshLoginSupplier
+     *            gives the login details when a new session is needed
+     * @param action
+     *            the action
+     */
+    public void run(String hostname, String username, String credentials, Supplier<SshLogin> sshLoginSupplier, Consumer<JSchTools> action) {
+        call(hostname, username, credentials, sshLoginSupplier, jSchTools -> {
+            action.accept(jSchTools);
+            return null;
+        });
+    }
+
+    private PooledSshSession takeIdle(String key) {
+        evictIdle();
+        synchronized (this) {
+            Deque<PooledSshSession> idle = idleByKey.get(key);
+            return idle == null ? null : idle.pollFirst();
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.foilen.infra.cli.CliException;
+
+/**
+ * Processes items on an executor while never having more than a fixed amount of pending items. The results are given to the collector as soon as they are ready, one at a time and on the calling
+ * thread, so nothing is kept once it is collected.
+ */
+public final class StreamingWorkers {
+
+    private static final Object NO_RESULT = new Object();
+
+    @SuppressWarnings("unchecked")
+    private static <R> void collect(BlockingQueue<Object> done, Consumer<R> collector) {
+        Object result;
+        try {
+            result = done.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CliException("Interrupted while processing the items", e);
+        }
+        if (result != NO_RESULT) {
+            collector.accept((R) result);
+        }
+    }
+
+    /**
+     * Process all the items and wait for the end.
+     *
+     * @param items
+     *            the items to process. Will be consumed only when there is room in the queue
+     * @param executor
+     *            where to do the work. The amount of items processed at the same time is the smallest of its threads and maxPending
+     * @param maxPending
+     *            the maximum amount of items being processed or waiting to be processed
+     * @param work
+     *            the work to do on an item. Can return null to skip it
+     * @param collector
+     *            receives the results. Always called on the calling thread, so it can safely use the same executor
+     * @param <T>
+     *            the type of items
+     * @param <R>
+     *            the type of results
+     */
+    public static <T, R> void process(Iterator<T> items, Executor executor, int maxPending, Function<T, R> work, Consumer<R> collector) {
+
+        BlockingQueue<Object> done = new LinkedBlockingQueue<>();
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        int pending = 0;
+        while (firstError.get() == null && items.hasNext()) {
+            if (pending >= maxPending) {
+                --pending;
+                collect(done, collector);
+            }
+
+            T item = items.next();
+            ++pending;
+            executor.execute(() -> {
+                Object result = NO_RESULT;
+                try {
+                    R itemResult = work.apply(item);
+                    if (itemResult != null) {
+                        result = itemResult;
+                    }
+                } catch (Throwable e) {
+                    firstError.compareAndSet(null, e);
+                } finally {
+                    done.add(result);
+                }
+            });
+        }
+
+        // Wait for the end
+        while (pending > 0) {
+            --pending;
+            collect(done, collector);
+        }
+
+        Throwable error = firstError.get();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error != null) {
+            throw new CliException("Problem while processing the items", error);
+        }
+
+    }
+
+    private StreamingWorkers() {
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.SpaceConverterTools;
+import com.foilen.smalltools.tools.TimeConverterTools;
+
+/**
+ * Follows all the transfers in progress (e.g. the archives copied from the machines) with a single periodic check instead of a polling task per transfer.
+ *
+ * Each check measures how many bytes each transfer got to give its speed and, when the final size is estimated, the time left. A transfer that did not progress for a while is stopped by its stall
+ * action. The progress of all the transfers is logged together.
+ */
+@Component
+public class TransferWatchdogService extends AbstractBasics {
+
+    /**
+     * A transfer being followed. Closing it stops following it.
+     */
+    public class Transfer implements AutoCloseable {
+
+        private final String name;
+        private final LongSupplier bytesSupplier;
+        private final long expectedBytes;
+        private final Runnable onStall;
+
+        private final long startTime = System.currentTimeMillis();
+        private final long startBytes;
+        // Samples [time, bytes] of the last RATE_WINDOW_MS
+        private final Deque<long[]> samples = new ArrayDeque<>();
+        private long bytes;
+        private long lastProgressTime = startTime;
+        private long bytesPerSecond;
+        private boolean stalled;
+
+        private Transfer(String name, LongSupplier bytesSupplier, long expectedBytes, Runnable onStall) {
+            this.name = name;
+            this.bytesSupplier = bytesSupplier;
+            this.expectedBytes = expectedBytes;
+            this.onStall = onStall;
+            // A resumed transfer already has some bytes
+            startBytes = bytesSupplier.getAsLong();
+            bytes = startBytes;
+            samples.add(new long[] { startTime, startBytes });
+        }
+
+        /**
+         * Take a sample.
+         *
+         * @param now
+         *            the time of the check
+         * @return true if it just stalled
+         */
+        private synchronized boolean check(long now) {
+            long currentBytes = bytesSupplier.getAsLong();
+            if (currentBytes != bytes) {
+                bytes = currentBytes;
+                lastProgressTime = now;
+            }
+
+            samples.add(new long[] { now, currentBytes });
+            while (samples.size() > 2 && samples.peekFirst()[0] < now - RATE_WINDOW_MS) {
+                samples.removeFirst();
+            }
+            long[] oldest = samples.peekFirst();
+            long elapsedMs = now - oldest[0];
+            bytesPerSecond = elapsedMs == 0 ? 0 : (currentBytes - oldest[1]) * 1000 / elapsedMs;
+
+            if (!stalled && onStall != null && now - lastProgressTime >= stallSeconds * 1000L) {
+                stalled = true;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+            if (transfers.remove(this)) {
+                synchronized (this) {
+                    bytes = bytesSupplier.getAsLong();
+                }
+            }
+        }
+
+        /**
+         * The speed since the start.
+         *
+         * @return the bytes per second
+         */
+        public synchronized long getAverageBytesPerSecond() {
+            long elapsedMs = System.currentTimeMillis() - startTime;
+            return elapsedMs == 0 ? 0 : (bytes - startBytes) * 1000 / elapsedMs;
+        }
+
+        /**
+         * The amount of bytes at the last check or when closed.
+         *
+         * @return the bytes
+         */
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * The speed in the last seconds.
+         *
+         * @return the bytes per second
+         */
+        public synchronized long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * The time left if the expected size is known and it is progressing.
+         *
+         * @return the time left in ms or -1 if unknown
+         */
+        public synchronized long getEtaMs() {
+            if (expectedBytes <= 0 || bytesPerSecond <= 0) {
+                return -1;
+            }
+            return Math.max(0, expectedBytes - bytes) * 1000 / bytesPerSecond;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized boolean isStalled() {
+            return stalled;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(name).append(" ; ").append(SpaceConverterTools.convertToBiggestBUnit(getBytes()));
+            if (expectedBytes > 0) {
+                sb.append(" of ~").append(SpaceConverterTools.convertToBiggestBUnit(expectedBytes));
+            }
+            sb.append(" ; ").append(SpaceConverterTools.convertToBiggestBUnit(getBytesPerSecond())).append("/s");
+            long etaMs = getEtaMs();
+            if (etaMs >= 0) {
+                sb.append(" ; ETA ").append(TimeConverterTools.convertToTextFromMs(etaMs));
+            }
+            return sb.toString();
+        }
+
+    }
+
+    private static final long RATE_WINDOW_MS = 30000;
+
+    @Autowired
+    private ExecutionService executionService;
+
+    @Value("${infra.transfers.checkSeconds:5}")
+    private int checkSeconds;
+    @Value("${infra.transfers.stallSeconds:30}")
+    private int stallSeconds;
+    @Value("${infra.transfers.progressSeconds:10}")
+    private int progressSeconds;
+
+    private final Set<Transfer> transfers = ConcurrentHashMap.newKeySet();
+    private long nextProgressTime;
+
+    private void check() {
+        try {
+            if (transfers.isEmpty()) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            for (Transfer transfer : transfers) {
+                if (transfer.check(now)) {
+                    logger.error("No progress for {} seconds on {}. Killing", stallSeconds, transfer.getName());
+                    transfer.onStall.run();
+                }
+            }
+
+            // Show the progress
+            if (now >= nextProgressTime) {
+                nextProgressTime = now + progressSeconds * 1000L;
+                long totalBytesPerSecond = transfers.stream().mapToLong(Transfer::getBytesPerSecond).sum();
+                logger.info("{} transfers in progress ; {}/s", transfers.size(), SpaceConverterTools.convertToBiggestBUnit(totalBytesPerSecond));
+                transfers.forEach(transfer -> logger.info("  {}", transfer));
+            }
+        } catch (Exception e) {
+            // Never stop the periodic check
+            logger.error("Problem checking the transfers", e);
+        }
+    }
+
+    /**
+     * Get the state of the transfers in progress.
+     *
+     * @return the lines
+     */
+    public List<String> getReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Transfers in progress: " + transfers.size());
+        transfers.forEach(transfer -> lines.add(transfer.toString()));
+        return lines;
+    }
+
+    @PostConstruct
+    public void init() {
+        executionService.getScheduler().scheduleWithFixedDelay(this::check, checkSeconds, checkSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Start following a transfer. Must be closed when the transfer is completed.
+     *
+     * @param name
+     *            the name in the progress (e.g. the destination file)
+     * @param bytesSupplier
+     *            gives the amount of bytes transferred so far (e.g. the size of the destination file) ; called by the watchdog thread
+     * @param expectedBytes
+     *            the estimated final size to give the time left or 0 if unknown
+     * @param onStall
+     *            what to do when there is no progress for a while (called once by the watchdog thread) ; can be null to only follow the progress
+     * @return the transfer
+     */
+    public Transfer start(String name, LongSupplier bytesSupplier, long expectedBytes, Runnable onStall) {
+        Transfer transfer = new Transfer(name, bytesSupplier, expectedBytes, onStall);
+        transfers.add(transfer);
+        return transfer;
+    }
+
+}
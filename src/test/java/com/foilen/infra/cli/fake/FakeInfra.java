@@ -0,0 +1,232 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.fake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import com.foilen.infra.plugin.v1.model.resource.LinkTypeConstants;
+import com.foilen.infra.resource.application.Application;
+import com.foilen.infra.resource.dns.DnsEntry;
+import com.foilen.infra.resource.domain.Domain;
+import com.foilen.infra.resource.machine.Machine;
+import com.foilen.infra.resource.unixuser.UnixUser;
+import com.foilen.infra.resource.website.Website;
+import com.foilen.smalltools.tools.JsonTools;
+
+/**
+ * An in-memory infrastructure with the resources as the Infra UI sends them (maps with the internalId, the resourceName and the meta). Use {@link #generate(int, int, int, int)} to create a synthetic
+ * one.
+ */
+public class FakeInfra {
+
+    private static final String META_UI_OWNER = "UI_OWNER";
+    private static final int OWNERS = 10;
+
+    /**
+     * Generate a synthetic infrastructure where each machine has unix users, each unix user has applications and each application has websites, all with their usual links. Each website has its
+     * domain and DNS entry. 1 resource out of 100 has no owner.
+     *
+     * The amount of resources is machines * (1 + unixUsersPerMachine * (1 + applicationsPerUnixUser * (1 + websitesPerApplication * 3))).
+     *
+     * @param machines
+     *            the amount of machines
+     * @param unixUsersPerMachine
+     *            the amount of unix users on each machine
+     * @param applicationsPerUnixUser
+     *            the amount of applications run by each unix user
+     * @param websitesPerApplication
+     *            the amount of websites pointing to each application
+     * @return the infra
+     */
+    public static FakeInfra generate(int machines, int unixUsersPerMachine, int applicationsPerUnixUser, int websitesPerApplication) {
+        FakeInfra fakeInfra = new FakeInfra();
+        long unixUserId = 70000;
+        for (int m = 0; m < machines; ++m) {
+            String machineName = "m" + m + ".example.com";
+            String machineId = fakeInfra.add(Machine.RESOURCE_TYPE, machineName, map("name", machineName, "publicIp", "10.0." + (m / 250) + "." + (m % 250)));
+
+            for (int u = 0; u < unixUsersPerMachine; ++u) {
+                String unixUserName = "user" + m + "x" + u;
+                String unixUserId1 = fakeInfra.add(UnixUser.RESOURCE_TYPE, unixUserName, map("name", unixUserName, "id", unixUserId++, "homeFolder", "/home/" + unixUserName));
+                fakeInfra.addLink(unixUserId1, LinkTypeConstants.INSTALLED_ON, machineId);
+
+                for (int a = 0; a < applicationsPerUnixUser; ++a) {
+                    String applicationName = unixUserName + "_app" + a;
+                    String applicationId = fakeInfra.add(Application.RESOURCE_TYPE, applicationName, map("name", applicationName));
+                    fakeInfra.addLink(applicationId, LinkTypeConstants.RUN_AS, unixUserId1);
+                    fakeInfra.addLink(applicationId, LinkTypeConstants.INSTALLED_ON, machineId);
+
+                    for (int w = 0; w < websitesPerApplication; ++w) {
+                        String domainName = "w" + w + "." + applicationName.replace('_', '-') + ".example.com";
+                        String websiteId = fakeInfra.add(Website.RESOURCE_TYPE, domainName, map("name", domainName, "domainNames", Collections.singletonList(domainName)));
+                        fakeInfra.addLink(websiteId, LinkTypeConstants.POINTS_TO, applicationId);
+                        fakeInfra.addLink(websiteId, LinkTypeConstants.INSTALLED_ON, machineId);
+
+                        String domainId = fakeInfra.add(Domain.RESOURCE_TYPE, domainName, map("name", domainName));
+                        fakeInfra.addLink(domainId, LinkTypeConstants.MANAGES, websiteId);
+
+                        String dnsEntryName = domainName + " A";
+                        String dnsEntryId = fakeInfra.add(DnsEntry.RESOURCE_TYPE, dnsEntryName, map("name", domainName, "type", "A", "details", "10.0.0.1"));
+                        fakeInfra.addLink(websiteId, LinkTypeConstants.MANAGES, dnsEntryId);
+                    }
+                }
+            }
+        }
+        return fakeInfra;
+    }
+
+    private static Map<String, Object> map(Object... keysAndValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    private long nextId = 1;
+
+    private final Map<String, String> resourceTypeById = new LinkedHashMap<>();
+    private final Map<String, Map<String, Object>> resourceById = new HashMap<>();
+    private final Map<String, Map<String, String>> idByNameByType = new HashMap<>();
+
+    // id -> [link type, other id]
+    private final Map<String, List<String[]>> linksToById = new HashMap<>();
+    private final Map<String, List<String[]>> linksFromById = new HashMap<>();
+
+    /**
+     * Add a resource.
+     *
+     * @param resourceType
+     *            the type
+     * @param resourceName
+     *            the name that is unique per type
+     * @param resource
+     *            the properties of the resource
+     * @return the id
+     */
+    public synchronized String add(String resourceType, String resourceName, Map<String, Object> resource) {
+        String id = String.valueOf(nextId++);
+        resource.put("internalId", id);
+        resource.put("resourceName", resourceName);
+        if (nextId % 100 != 0) {
+            resource.put("meta", map(META_UI_OWNER, "owner" + (nextId % OWNERS)));
+        }
+        resourceTypeById.put(id, resourceType);
+        resourceById.put(id, resource);
+        idByNameByType.computeIfAbsent(resourceType, k -> new HashMap<>()).put(resourceName, id);
+        return id;
+    }
+
+    public synchronized void addLink(String fromId, String linkType, String toId) {
+        linksToById.computeIfAbsent(fromId, k -> new ArrayList<>()).add(new String[] { linkType, toId });
+        linksFromById.computeIfAbsent(toId, k -> new ArrayList<>()).add(new String[] { linkType, fromId });
+    }
+
+    /**
+     * Get the bucket as the Infra UI sends it.
+     *
+     * @param id
+     *            the id
+     * @param withLinks
+     *            false to only have the resource
+     * @return the bucket or null if it does not exist
+     */
+    public synchronized Map<String, Object> findBucket(String id, boolean withLinks) {
+        if (!resourceById.containsKey(id)) {
+            return null;
+        }
+        Map<String, Object> bucket = map("resourceDetails", getResourceDetails(id));
+        if (withLinks) {
+            bucket.put("linksTo", getPartialLinks(linksToById, id));
+            bucket.put("linksFrom", getPartialLinks(linksFromById, id));
+            bucket.put("tags", Collections.emptyList());
+        }
+        return bucket;
+    }
+
+    public synchronized String findId(String resourceType, String resourceName) {
+        return idByNameByType.getOrDefault(resourceType, Collections.emptyMap()).get(resourceName);
+    }
+
+    public synchronized List<String> findIds() {
+        return new ArrayList<>(resourceTypeById.keySet());
+    }
+
+    public synchronized List<String> findIdsByOwner(String owner) {
+        return resourceTypeById.keySet().stream() //
+                .filter(id -> owner == null || Objects.equals(owner, getOwner(id))) //
+                .collect(Collectors.toList());
+    }
+
+    public synchronized List<String> findIdsByType(String resourceType) {
+        return new ArrayList<>(idByNameByType.getOrDefault(resourceType, Collections.emptyMap()).values());
+    }
+
+    public synchronized List<String> findIdsWithoutOwner() {
+        return resourceTypeById.keySet().stream() //
+                .filter(id -> getOwner(id) == null) //
+                .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private String getOwner(String id) {
+        Map<String, String> meta = (Map<String, String>) resourceById.get(id).get("meta");
+        return meta == null ? null : meta.get(META_UI_OWNER);
+    }
+
+    private List<Map<String, Object>> getPartialLinks(Map<String, List<String[]>> linksById, String id) {
+        return linksById.getOrDefault(id, Collections.emptyList()).stream() //
+                .map(link -> map("linkType", link[0], "otherResource", getResourceDetails(link[1]))) //
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, Object> getResourceDetails(String id) {
+        // Each response has its own copy like when it comes from the network
+        return map("resourceType", resourceTypeById.get(id), "resource", JsonTools.clone(resourceById.get(id)));
+    }
+
+    public synchronized List<String> getResourceTypes() {
+        return idByNameByType.keySet().stream().sorted().collect(Collectors.toList());
+    }
+
+    public synchronized void removeLink(String fromId, String linkType, String toId) {
+        linksToById.getOrDefault(fromId, new ArrayList<>()).removeIf(link -> Arrays.equals(link, new String[] { linkType, toId }));
+        linksFromById.getOrDefault(toId, new ArrayList<>()).removeIf(link -> Arrays.equals(link, new String[] { linkType, fromId }));
+    }
+
+    public synchronized int size() {
+        return resourceById.size();
+    }
+
+    /**
+     * Replace the properties of the resource. The id and the name stay the same.
+     *
+     * @param id
+     *            the id
+     * @param resource
+     *            the new properties
+     */
+    public synchronized void update(String id, Map<String, Object> resource) {
+        Map<String, Object> updated = new LinkedHashMap<>(resource);
+        Map<String, Object> existing = resourceById.get(id);
+        updated.put("internalId", id);
+        updated.put("resourceName", existing.get("resourceName"));
+        resourceById.put(id, updated);
+    }
+
+}
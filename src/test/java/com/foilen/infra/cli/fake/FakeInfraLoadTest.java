@@ -0,0 +1,175 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.fake;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.foilen.infra.api.model.resource.ResourceBucket;
+import com.foilen.infra.api.model.resource.ResourceDetails;
+import com.foilen.infra.api.request.RequestChanges;
+import com.foilen.infra.api.request.RequestResourceToUpdate;
+import com.foilen.infra.api.response.ResponseResourceAppliedChanges;
+import com.foilen.infra.api.service.InfraApiService;
+import com.foilen.infra.api.service.InfraResourceApiService;
+import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.model.ResourceGraph;
+import com.foilen.infra.cli.model.profile.ApiProfile;
+import com.foilen.infra.cli.services.AppliedChangesEvent;
+import com.foilen.infra.cli.services.ChangesNotifyingInfraResourceApiHandler;
+import com.foilen.infra.cli.services.CoalescingInfraResourceApiHandler;
+import com.foilen.infra.cli.services.ConsoleDisplayService;
+import com.foilen.infra.cli.services.ExecutionService;
+import com.foilen.infra.cli.services.InfraApiProxyTools;
+import com.foilen.infra.cli.services.InfraResourceUtils;
+import com.foilen.infra.cli.services.ProfileService;
+import com.foilen.infra.cli.services.ResourceGraphCache;
+import com.foilen.infra.cli.services.ResourceGraphSnapshotService;
+import com.foilen.infra.cli.services.ResourcePrefetcher;
+import com.foilen.infra.plugin.v1.model.resource.LinkTypeConstants;
+import com.foilen.infra.resource.application.Application;
+import com.foilen.infra.resource.website.Website;
+
+/**
+ * Runs the services the commands use (the cache of the resources, the prefetcher) on a synthetic infrastructure served by {@link FakeInfraResourceApiHandler}. There is no HTTP, so this measures
+ * the work done by the CLI, not the network. The size is small by default; to find where it breaks down, run with more machines. E.g. -DfakeInfra.machines=220 gives about 10k resources and
+ * -DfakeInfra.latencyMs=20 adds a delay to each call.
+ */
+public class FakeInfraLoadTest {
+
+    private ExecutionService executionService;
+    private FakeInfra fakeInfra;
+    private InfraResourceApiService infraResourceApiService;
+    private ResourceGraphCache resourceGraphCache;
+
+    @After
+    public void destroy() {
+        executionService.shutdown();
+    }
+
+    @Before
+    public void init() {
+        int machines = Integer.getInteger("fakeInfra.machines", 5);
+        long latencyMs = Long.getLong("fakeInfra.latencyMs", 0L);
+        fakeInfra = FakeInfra.generate(machines, 3, 2, 2);
+        InfraApiService infraApiService = InfraApiProxyTools.wrapResourceApiService(FakeInfraResourceApiHandler.createInfraApiService(fakeInfra, latencyMs),
+                it -> ChangesNotifyingInfraResourceApiHandler.wrap(CoalescingInfraResourceApiHandler.wrap(it, 5000), "fake", //
+                        event -> resourceGraphCache.onAppliedChanges((AppliedChangesEvent) event)));
+        infraResourceApiService = infraApiService.getInfraResourceApiService();
+
+        executionService = new ExecutionService();
+        ReflectionTestUtils.setField(executionService, "apiThreads", 10);
+        ReflectionTestUtils.setField(executionService, "httpCheckThreads", 1);
+        ReflectionTestUtils.setField(executionService, "sshThreads", 1);
+        ReflectionTestUtils.setField(executionService, "apiPerServer", 10);
+        ReflectionTestUtils.setField(executionService, "sshPerHost", 1);
+        executionService.init();
+
+        ApiProfile profile = new ApiProfile();
+        profile.setProfileName("fake");
+        ProfileService profileService = Mockito.mock(ProfileService.class);
+        Mockito.when(profileService.getTarget()).thenReturn(profile);
+        Mockito.when(profileService.getInfraApiService(profile, "target")).thenReturn(infraApiService);
+        Mockito.when(profileService.getServerKey(profile)).thenReturn("fake");
+
+        resourceGraphCache = new ResourceGraphCache();
+        ReflectionTestUtils.setField(resourceGraphCache, "displayService", new ConsoleDisplayService());
+        ReflectionTestUtils.setField(resourceGraphCache, "executionService", executionService);
+        ReflectionTestUtils.setField(resourceGraphCache, "profileService", profileService);
+        ReflectionTestUtils.setField(resourceGraphCache, "resourceGraphSnapshotService", new ResourceGraphSnapshotService());
+        ReflectionTestUtils.setField(resourceGraphCache, "ttlSeconds", 300L);
+        ReflectionTestUtils.setField(resourceGraphCache, "loadThreads", 5);
+        ReflectionTestUtils.setField(resourceGraphCache, "maxPatchedResources", 500);
+    }
+
+    private void printDuration(String action, long start) {
+        System.out.println(action + " of " + fakeInfra.size() + " resources took " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    @Test
+    public void testApplyChangesRefreshesTheGraph() {
+        ResourceGraph graph = resourceGraphCache.getTarget();
+        ResourceBucket website = graph.findAllByType(Website.RESOURCE_TYPE).get(0);
+        String websiteId = InfraResourceUtils.getResourceId(website.getResourceDetails());
+        String applicationId = InfraResourceUtils.getResourceId(graph.findLinkedTo(websiteId, LinkTypeConstants.POINTS_TO).get(0).getResourceDetails());
+
+        ResourceDetails resourceDetails = infraResourceApiService.resourceFindById(websiteId).getItem().getResourceDetails();
+        InfraResourceUtils.setOwner(resourceDetails, "newOwner");
+        RequestChanges changes = new RequestChanges();
+        changes.getResourcesToUpdate().add(new RequestResourceToUpdate(resourceDetails, resourceDetails));
+        long start = System.currentTimeMillis();
+        ResponseResourceAppliedChanges appliedChanges = infraResourceApiService.applyChanges(changes);
+        Assert.assertTrue(appliedChanges.isSuccess());
+        ResourceGraph refreshedGraph = resourceGraphCache.getTarget();
+        printDuration("Refreshing the graph", start);
+
+        // The changed resource and the copy in the links of its neighbors are updated without reloading everything
+        Assert.assertEquals(graph.getLoadedAt(), refreshedGraph.getLoadedAt());
+        Assert.assertEquals("newOwner", InfraResourceUtils.getOwner(refreshedGraph.findById(websiteId).getResourceDetails()));
+        List<String> ownersInLinks = refreshedGraph.findById(applicationId).getLinksFrom().stream() //
+                .filter(it -> websiteId.equals(InfraResourceUtils.getResourceId(it.getOtherResource()))) //
+                .map(it -> InfraResourceUtils.getOwner(it.getOtherResource())) //
+                .distinct() //
+                .collect(Collectors.toList());
+        Assert.assertEquals(List.of("newOwner"), ownersInLinks);
+    }
+
+    @Test
+    public void testFindByIdGivesACopyToEachCaller() {
+        String resourceId = fakeInfra.findIds().get(0);
+        ResourceDetails first = infraResourceApiService.resourceFindById(resourceId).getItem().getResourceDetails();
+        InfraResourceUtils.setOwner(first, "changedByTheFirstCaller");
+
+        // The second call is given the kept result
+        ResourceDetails second = infraResourceApiService.resourceFindById(resourceId).getItem().getResourceDetails();
+        Assert.assertNotSame(first, second);
+        Assert.assertNotEquals("changedByTheFirstCaller", InfraResourceUtils.getOwner(second));
+    }
+
+    @Test
+    public void testLoadGraph() {
+        long start = System.currentTimeMillis();
+        ResourceGraph graph = resourceGraphCache.getTarget();
+        printDuration("Loading the graph", start);
+
+        Assert.assertEquals(fakeInfra.size(), graph.size());
+        Assert.assertSame(graph, resourceGraphCache.getTarget());
+        ResourceBucket website = graph.findAllByType(Website.RESOURCE_TYPE).get(0);
+        List<ResourceBucket> applications = graph.findLinkedTo(InfraResourceUtils.getResourceId(website.getResourceDetails()), LinkTypeConstants.POINTS_TO);
+        Assert.assertEquals(1, applications.size());
+        Assert.assertEquals(Application.RESOURCE_TYPE, applications.get(0).getResourceDetails().getResourceType());
+    }
+
+    @Test
+    public void testPrefetch() {
+        List<String> ids = fakeInfra.findIds();
+
+        long start = System.currentTimeMillis();
+        ResourcePrefetcher prefetcher = new ResourcePrefetcher(infraResourceApiService, executionService.getApi(), 100);
+        prefetcher.fetch(ids);
+        prefetcher.fetch(List.of("unknown"));
+        printDuration("Prefetching", start);
+
+        ids.forEach(id -> Assert.assertEquals(id, InfraResourceUtils.getResourceId(prefetcher.get(id, "resource").getResourceDetails())));
+        try {
+            prefetcher.get("unknown", "resource");
+            Assert.fail("A missing resource must fail when it is needed");
+        } catch (CliException e) {
+        }
+    }
+
+}
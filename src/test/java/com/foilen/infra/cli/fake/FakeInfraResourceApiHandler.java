@@ -0,0 +1,245 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.fake;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.foilen.infra.api.service.InfraApiService;
+import com.foilen.infra.api.service.InfraResourceApiService;
+import com.foilen.infra.cli.services.InfraApiProxyTools;
+import com.foilen.smalltools.tools.JsonTools;
+import com.foilen.smalltools.tools.ThreadTools;
+
+/**
+ * An in-process {@link InfraResourceApiService} that serves a {@link FakeInfra}. The responses are built as JSON maps and converted to the API classes, so each call pays a deserialization like the
+ * real client, but there is no HTTP: the connections, the transfer and the server are not part of what it measures.
+ *
+ * Only the methods used by the CLI are supported. The applied changes report their audit items with the resources named by type and name.
+ */
+public class FakeInfraResourceApiHandler implements InvocationHandler {
+
+    public static final int ITEMS_PER_PAGE = 100;
+
+    public static InfraApiService createInfraApiService(FakeInfra fakeInfra, long latencyMs) {
+        InfraResourceApiService infraResourceApiService = InfraApiProxyTools.proxy(InfraResourceApiService.class, new FakeInfraResourceApiHandler(fakeInfra, latencyMs));
+        return InfraApiProxyTools.proxy(InfraApiService.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "getInfraResourceApiService":
+                return infraResourceApiService;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Fake Infra";
+            }
+            throw new UnsupportedOperationException("The fake infra does not support " + method.getName());
+        });
+    }
+
+    private static Map<String, Object> pagination(int page, int totalItems) {
+        int totalPages = Math.max(1, (totalItems + ITEMS_PER_PAGE - 1) / ITEMS_PER_PAGE);
+        Map<String, Object> pagination = new LinkedHashMap<>();
+        pagination.put("currentPageUi", page);
+        pagination.put("totalPages", totalPages);
+        pagination.put("itemsPerPage", ITEMS_PER_PAGE);
+        pagination.put("totalItems", totalItems);
+        pagination.put("firstPage", page <= 1);
+        pagination.put("lastPage", page >= totalPages);
+        return pagination;
+    }
+
+    private final FakeInfra fakeInfra;
+    private final long latencyMs;
+
+    private final AtomicLong nextTxId = new AtomicLong(1);
+
+    public FakeInfraResourceApiHandler(FakeInfra fakeInfra, long latencyMs) {
+        this.fakeInfra = fakeInfra;
+        this.latencyMs = latencyMs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> applyChanges(Map<String, Object> changes) {
+
+        List<Map<String, Object>> items = new ArrayList<>();
+
+        for (Map<String, Object> resourceToUpdate : (List<Map<String, Object>>) changes.getOrDefault("resourcesToUpdate", Collections.emptyList())) {
+            // The existing resource then the updated one
+            List<Map<String, Object>> resourcesDetails = findResourcesDetails(resourceToUpdate);
+            String id = findId(resourcesDetails.get(0));
+            if (id == null) {
+                throw new IllegalArgumentException("Unknown resource " + JsonTools.compactPrint(resourcesDetails.get(0)));
+            }
+            fakeInfra.update(id, (Map<String, Object>) resourcesDetails.get(resourcesDetails.size() - 1).get("resource"));
+            items.add(auditItem("RESOURCE", null, id, null));
+        }
+
+        for (Map<String, Object> link : (List<Map<String, Object>>) changes.getOrDefault("linksToAdd", Collections.emptyList())) {
+            List<Map<String, Object>> resourcesDetails = findResourcesDetails(link);
+            String fromId = findId(resourcesDetails.get(0));
+            String toId = findId(resourcesDetails.get(1));
+            fakeInfra.addLink(fromId, (String) link.get("linkType"), toId);
+            items.add(auditItem("LINK", (String) link.get("linkType"), fromId, toId));
+        }
+        for (Map<String, Object> link : (List<Map<String, Object>>) changes.getOrDefault("linksToDelete", Collections.emptyList())) {
+            List<Map<String, Object>> resourcesDetails = findResourcesDetails(link);
+            String fromId = findId(resourcesDetails.get(0));
+            String toId = findId(resourcesDetails.get(1));
+            fakeInfra.removeLink(fromId, (String) link.get("linkType"), toId);
+            items.add(auditItem("LINK", (String) link.get("linkType"), fromId, toId));
+        }
+
+        Map<String, Object> auditItems = new LinkedHashMap<>();
+        auditItems.put("items", items);
+        auditItems.put("pagination", pagination(1, items.size()));
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("txId", String.valueOf(nextTxId.getAndIncrement()));
+        response.put("auditItems", auditItems);
+        return response;
+    }
+
+    /**
+     * An audit item naming the resources by type and name like the Infra API does.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> auditItem(String type, String linkType, String firstId, String secondId) {
+        Map<String, Object> auditItem = new LinkedHashMap<>();
+        auditItem.put("type", type);
+        auditItem.put("linkType", linkType);
+        for (String[] side : new String[][] { { "resourceFirst", firstId }, { "resourceSecond", secondId } }) {
+            if (side[1] != null) {
+                Map<String, Object> resourceDetails = (Map<String, Object>) fakeInfra.findBucket(side[1], false).get("resourceDetails");
+                Map<String, Object> resourceDetailsSmall = new LinkedHashMap<>();
+                resourceDetailsSmall.put("resourceType", resourceDetails.get("resourceType"));
+                resourceDetailsSmall.put("resourceName", ((Map<String, Object>) resourceDetails.get("resource")).get("resourceName"));
+                auditItem.put(side[0], resourceDetailsSmall);
+            }
+        }
+        return auditItem;
+    }
+
+    private List<Map<String, Object>> buckets(List<String> ids, boolean withLinks) {
+        return ids.stream() //
+                .map(id -> fakeInfra.findBucket(id, withLinks)) //
+                .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private String findId(Map<String, Object> resourceDetails) {
+        Map<String, Object> resource = (Map<String, Object>) resourceDetails.get("resource");
+        String id = (String) resource.get("internalId");
+        if (id != null) {
+            return id;
+        }
+        return fakeInfra.findId((String) resourceDetails.get("resourceType"), (String) resource.get("resourceName"));
+    }
+
+    /**
+     * Find the resources details in the properties of a request item (like the "from" and "to" of a link) in their declaration order.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> findResourcesDetails(Map<String, Object> item) {
+        List<Map<String, Object>> resourcesDetails = new ArrayList<>();
+        for (Object value : item.values()) {
+            if (value instanceof Map && ((Map<String, Object>) value).containsKey("resource")) {
+                resourcesDetails.add((Map<String, Object>) value);
+            }
+        }
+        return resourcesDetails;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> findIdsBySearch(Object requestResourceSearch) {
+        Map<String, Object> search = JsonTools.clone(requestResourceSearch, Map.class);
+        String resourceType = (String) search.get("resourceType");
+        Map<String, Object> properties = (Map<String, Object>) search.get("properties");
+        List<String> ids = fakeInfra.findIdsByType(resourceType);
+        if (properties == null || properties.isEmpty()) {
+            return ids;
+        }
+        return ids.stream() //
+                .filter(id -> {
+                    Map<String, Object> resource = (Map<String, Object>) ((Map<String, Object>) fakeInfra.findBucket(id, false).get("resourceDetails")).get("resource");
+                    return properties.entrySet().stream().allMatch(p -> String.valueOf(p.getValue()).equals(String.valueOf(resource.get(p.getKey()))));
+                }) //
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        switch (method.getName()) {
+        case "equals":
+            return proxy == args[0];
+        case "hashCode":
+            return System.identityHashCode(proxy);
+        case "toString":
+            return "Fake Infra Resource";
+        }
+
+        if (latencyMs > 0) {
+            ThreadTools.sleep(latencyMs);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        switch (method.getName()) {
+        case "applyChanges":
+            response = applyChanges(JsonTools.clone(args[0], Map.class));
+            break;
+        case "resourceFindAll": {
+            int page = (Integer) args[0];
+            List<String> ids = fakeInfra.findIdsByOwner((String) args[1]);
+            int from = Math.min(ids.size(), (page - 1) * ITEMS_PER_PAGE);
+            int to = Math.min(ids.size(), from + ITEMS_PER_PAGE);
+            response.put("items", buckets(ids.subList(from, to), (Boolean) args[2]));
+            response.put("pagination", pagination(page, ids.size()));
+            break;
+        }
+        case "resourceFindAllWithDetails":
+            response.put("items", buckets(findIdsBySearch(args[0]), true));
+            break;
+        case "resourceFindAllWithoutOwner":
+            response.put("items", buckets(fakeInfra.findIdsWithoutOwner(), false));
+            break;
+        case "resourceFindById":
+            response.put("item", fakeInfra.findBucket((String) args[0], true));
+            break;
+        case "resourceFindOne": {
+            List<String> ids = findIdsBySearch(args[0]);
+            response.put("item", ids.isEmpty() ? null : fakeInfra.findBucket(ids.get(0), true));
+            break;
+        }
+        case "resourceFindOneByPk": {
+            String id = findId(JsonTools.clone(args[0], Map.class));
+            response.put("item", id == null ? null : fakeInfra.findBucket(id, true));
+            break;
+        }
+        case "typeFindAll":
+            response.put("items", fakeInfra.getResourceTypes().stream() //
+                    .map(resourceType -> Collections.singletonMap("resourceType", resourceType)) //
+                    .collect(Collectors.toList()));
+            break;
+        default:
+            throw new UnsupportedOperationException("The fake infra does not support " + method.getName());
+        }
+
+        return JsonTools.clone(response, method.getReturnType());
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.foilen.infra.api.model.resource.ResourceBucket;
+import com.foilen.infra.cli.CliException;
+import com.foilen.infra.cli.services.InfraResourceUtils;
+import com.foilen.smalltools.tools.JsonTools;
+
+public class ResourceGraphTest {
+
+    private static ResourceBucket bucket(String id, String resourceType, String resourceName) {
+        return JsonTools.readFromString("{\"resourceDetails\":{\"resourceType\":\"" + resourceType + "\",\"resource\":{\"internalId\":\"" + id + "\",\"resourceName\":\"" + resourceName
+                + "\"}},\"linksTo\":[],\"linksFrom\":[],\"tags\":[]}", ResourceBucket.class);
+    }
+
+    private static List<String> ids(List<ResourceBucket> resourceBuckets) {
+        return resourceBuckets.stream() //
+                .map(it -> InfraResourceUtils.getResourceId(it.getResourceDetails())) //
+                .sorted() //
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testDuplicateNames() {
+        ResourceGraph graph = new ResourceGraph("test", Arrays.asList( //
+                bucket("1", "DnsEntry", "www.example.com / A"), //
+                bucket("2", "DnsEntry", "www.example.com / A"), //
+                bucket("3", "Machine", "m1.example.com") //
+        ));
+
+        Assert.assertEquals(Arrays.asList("1", "2"), ids(graph.findAllByName("DnsEntry", "www.example.com / A")));
+        Assert.assertTrue(graph.findAllByName("DnsEntry", "unknown").isEmpty());
+
+        Assert.assertEquals("3", InfraResourceUtils.getResourceId(graph.findOneByName("Machine", "m1.example.com").getResourceDetails()));
+        Assert.assertNull(graph.findOneByName("Machine", "unknown"));
+        try {
+            graph.findOneByName("DnsEntry", "www.example.com / A");
+            Assert.fail("Must not pick one of the resources with the same name");
+        } catch (CliException e) {
+        }
+
+        // Patching by id keeps the other one
+        ResourceGraph patched = graph.patch(Arrays.asList(bucket("2", "DnsEntry", "www.example.com / A")), Arrays.asList("1"), Arrays.asList());
+        Assert.assertEquals(Arrays.asList("2"), ids(patched.findAllByName("DnsEntry", "www.example.com / A")));
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveBatchSizeTest {
+
+    @Test
+    public void testGrowAndShrink() {
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(10, 1, 30, 5, 1000);
+        Assert.assertEquals(10, batchSize.getSize());
+
+        // Fast
+        batchSize.onSuccess(100);
+        Assert.assertEquals(15, batchSize.getSize());
+        batchSize.onSuccess(1000);
+        Assert.assertEquals(20, batchSize.getSize());
+
+        // Slow
+        batchSize.onSuccess(1001);
+        Assert.assertEquals(10, batchSize.getSize());
+
+        // Failed
+        batchSize.onFailure();
+        Assert.assertEquals(5, batchSize.getSize());
+
+        Assert.assertEquals(5, batchSize.getSmallestSize());
+        Assert.assertEquals(20, batchSize.getLargestSize());
+    }
+
+    @Test
+    public void testLimits() {
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(100, 2, 30, 5, 1000);
+        Assert.assertEquals(30, batchSize.getSize());
+
+        batchSize.onSuccess(10);
+        Assert.assertEquals(30, batchSize.getSize());
+
+        for (int i = 0; i < 10; ++i) {
+            batchSize.onFailure();
+        }
+        Assert.assertEquals(2, batchSize.getSize());
+    }
+
+}
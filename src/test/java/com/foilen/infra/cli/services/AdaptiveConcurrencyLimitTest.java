@@ -0,0 +1,77 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private void callsWithAllInFlight(AdaptiveConcurrencyLimit limit, int count, long latencyMs) {
+        for (int i = 0; i < count; ++i) {
+            int inFlight = limit.getLimit();
+            for (int j = 0; j < inFlight; ++j) {
+                limit.acquire();
+            }
+            for (int j = 0; j < inFlight; ++j) {
+                limit.onSuccess(latencyMs);
+            }
+        }
+    }
+
+    @Test
+    public void testGrowAndShrink() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(5, 1, 50);
+        Assert.assertEquals(5, limit.getLimit());
+
+        // Same latency
+        callsWithAllInFlight(limit, 2, 100);
+        Assert.assertEquals(7, limit.getLimit());
+        Assert.assertEquals(100, limit.getLongLatencyMs());
+
+        // Much slower
+        callsWithAllInFlight(limit, 1, 1000);
+        Assert.assertEquals(4, limit.getLimit());
+
+        // Failed
+        limit.acquire();
+        limit.onFailure();
+        Assert.assertEquals(2, limit.getLimit());
+        Assert.assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    public void testLimits() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(100, 2, 30);
+        Assert.assertEquals(30, limit.getLimit());
+
+        callsWithAllInFlight(limit, 10, 100);
+        Assert.assertEquals(30, limit.getLimit());
+
+        for (int i = 0; i < 10; ++i) {
+            limit.acquire();
+            limit.onFailure();
+        }
+        Assert.assertEquals(2, limit.getLimit());
+        Assert.assertEquals(2, limit.getSmallestLimit());
+        Assert.assertEquals(30, limit.getLargestLimit());
+    }
+
+    @Test
+    public void testNoGrowthWhenMostlyIdle() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 50);
+        for (int i = 0; i < 100; ++i) {
+            limit.acquire();
+            limit.onSuccess(100);
+        }
+        Assert.assertEquals(10, limit.getLimit());
+    }
+
+}
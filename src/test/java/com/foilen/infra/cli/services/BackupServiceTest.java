@@ -0,0 +1,111 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import com.foilen.infra.cli.SshException;
+import com.foilen.infra.cli.commands.model.BackupResult;
+import com.foilen.infra.cli.commands.model.BackupResults;
+import com.foilen.infra.cli.fake.FakeInfra;
+import com.foilen.infra.cli.fake.FakeInfraResourceApiHandler;
+import com.foilen.infra.cli.services.SshSessionPool.PooledSshSession;
+import com.foilen.smalltools.tools.FileTools;
+
+public class BackupServiceTest {
+
+    private static final String MACHINE_NAME = "m0.example.com";
+    private static final String STALLED_USER = "user0x1";
+
+    private BackupService backupService;
+    private ExecutionService executionService;
+    private SshService sshService;
+    private PooledSshSession pooledSshSession;
+    private File backupFolder;
+
+    @After
+    public void destroy() {
+        executionService.shutdown();
+        FileSystemUtils.deleteRecursively(backupFolder);
+    }
+
+    @Before
+    public void init() throws Exception {
+        FakeInfra fakeInfra = FakeInfra.generate(1, 4, 0, 0);
+        ProfileService profileService = Mockito.mock(ProfileService.class);
+        Mockito.when(profileService.getTargetInfraApiService()).thenReturn(FakeInfraResourceApiHandler.createInfraApiService(fakeInfra, 0));
+
+        executionService = new ExecutionService();
+        ReflectionTestUtils.setField(executionService, "apiThreads", 1);
+        ReflectionTestUtils.setField(executionService, "httpCheckThreads", 1);
+        ReflectionTestUtils.setField(executionService, "sshThreads", 4);
+        ReflectionTestUtils.setField(executionService, "apiPerServer", 1);
+        ReflectionTestUtils.setField(executionService, "sshPerHost", 1);
+        ReflectionTestUtils.setField(executionService, "httpCheckPerHost", 1);
+        executionService.init();
+
+        ExceptionService exceptionService = new ExceptionService();
+        ReflectionTestUtils.setField(exceptionService, "displayService", new ConsoleDisplayService());
+
+        // The stalled user is killed by the watchdog while the others are archived on the same session
+        pooledSshSession = Mockito.mock(PooledSshSession.class);
+        sshService = Mockito.mock(SshService.class);
+        Mockito.when(sshService.borrowTarget(MACHINE_NAME)).thenReturn(pooledSshSession);
+        Mockito.doAnswer(invocation -> {
+            String command = invocation.getArgument(1);
+            if (command.endsWith("/" + STALLED_USER)) {
+                Thread.sleep(200);
+                LinkedList<String> lastErrorLines = new LinkedList<>();
+                lastErrorLines.add("No progress. Killing");
+                throw new SshException("Problem executing the command", lastErrorLines);
+            }
+            FileTools.writeFile(command, (String) invocation.getArgument(2));
+            return null;
+        }).when(sshService).executeCommandInFile(Mockito.eq(pooledSshSession), Mockito.anyString(), Mockito.anyString(), Mockito.anyLong());
+
+        backupService = new BackupService();
+        ReflectionTestUtils.setField(backupService, "exceptionService", exceptionService);
+        ReflectionTestUtils.setField(backupService, "executionService", executionService);
+        ReflectionTestUtils.setField(backupService, "profileService", profileService);
+        ReflectionTestUtils.setField(backupService, "sshService", sshService);
+        ReflectionTestUtils.setField(backupService, "parallelChannels", 4);
+
+        backupFolder = Files.createTempDirectory("backup").toFile();
+    }
+
+    @Test
+    public void testOneStalledUserDoesNotFailTheOthers() {
+        BackupResults results = backupService.backupDirectArchive(backupFolder.getAbsolutePath(), "20260101", MACHINE_NAME);
+
+        Assert.assertTrue(results.isCompleted());
+        List<String> failedUsers = results.getResults().stream().filter(it -> !it.isSuccess()).map(BackupResult::getUnixUserName).collect(Collectors.toList());
+        Assert.assertEquals(List.of(STALLED_USER), failedUsers);
+        Assert.assertEquals(3, results.getResults().stream().filter(BackupResult::isSuccess).count());
+
+        // One session shared by all the users and kept after the stalled one
+        Mockito.verify(sshService, Mockito.times(1)).borrowTarget(MACHINE_NAME);
+        Mockito.verify(sshService, Mockito.never()).executeCommandInFileTarget(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.anyLong());
+        Mockito.verify(pooledSshSession, Mockito.never()).invalidate();
+        Mockito.verify(pooledSshSession, Mockito.times(1)).close();
+    }
+
+}
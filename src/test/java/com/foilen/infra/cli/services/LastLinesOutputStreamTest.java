@@ -0,0 +1,52 @@
+/*
+    Foilen Infra CLI
+    https://github.com/foilen/foilen-infra-cli
+    Copyright (c) 2018-2022 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.cli.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LastLinesOutputStreamTest {
+
+    @Test
+    public void testKeepsTheLastLines() {
+        List<String> allLines = new ArrayList<>();
+        LastLinesOutputStream outputStream = new LastLinesOutputStream(3, allLines::add);
+
+        byte[] bytes = "one\ntwo\r\nthr".getBytes(StandardCharsets.UTF_8);
+        outputStream.write(bytes, 0, bytes.length);
+        Assert.assertEquals(Arrays.asList("one", "two", "thr"), new ArrayList<>(outputStream.getLastLines()));
+
+        // The line being written is included
+        bytes = "ee\nfour\nfive".getBytes(StandardCharsets.UTF_8);
+        outputStream.write(bytes, 0, bytes.length);
+        Assert.assertEquals(Arrays.asList("three", "four", "five"), new ArrayList<>(outputStream.getLastLines()));
+        Assert.assertEquals(Arrays.asList("one", "two", "three", "four"), allLines);
+
+        outputStream.close();
+        Assert.assertEquals(Arrays.asList("three", "four", "five"), new ArrayList<>(outputStream.getLastLines()));
+        Assert.assertEquals(Arrays.asList("one", "two", "three", "four", "five"), allLines);
+    }
+
+    @Test
+    public void testTruncatesLongLines() {
+        LastLinesOutputStream outputStream = new LastLinesOutputStream(1);
+        for (int i = 0; i < LastLinesOutputStream.MAX_LINE_LENGTH + 10; ++i) {
+            outputStream.write('a');
+        }
+        outputStream.write('\n');
+        Assert.assertEquals(LastLinesOutputStream.MAX_LINE_LENGTH, outputStream.getLastLines().peek().length());
+    }
+
+}
@@ -14,6 +14,12 @@ import org.junit.Test;
 
 public class SshServiceTest {
 
+    @Test
+    public void testQuoteForShell() {
+        Assert.assertEquals("'tar -zc /home/a'", SshService.quoteForShell("tar -zc /home/a"));
+        Assert.assertEquals("'echo '\\''a b'\\'' $?'", SshService.quoteForShell("echo 'a b' $?"));
+    }
+
     @Test
     public void testTrimSlashes() {
         Assert.assertEquals("", SshService.trimSlashes(null));